@@ -0,0 +1,13 @@
+package ru.iu3.backend.repositories;
+
+/**
+ * Художник для чтения. Страна выбирается тем же запросом через left join, а в JSON
+ * выводится вложенным объектом, как и у сущности Artist
+ */
+public record ArtistView(long id, String name, String age, CountryView country) {
+
+    // Для выражения select new ... в JPQL: вложенный new там не поддерживается
+    public ArtistView(long id, String name, String age, Long countryId, String countryName) {
+        this(id, name, age, countryId == null ? null : new CountryView(countryId, countryName));
+    }
+}
@@ -0,0 +1,7 @@
+package ru.iu3.backend.repositories;
+
+/**
+ * Страна для чтения: только выводимые колонки, без отслеживания контекстом персистентности
+ */
+public record CountryView(long id, String name) {
+}
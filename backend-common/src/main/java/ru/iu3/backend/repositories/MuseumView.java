@@ -0,0 +1,7 @@
+package ru.iu3.backend.repositories;
+
+/**
+ * Музей для чтения: только выводимые колонки, без отслеживания контекстом персистентности
+ */
+public record MuseumView(long id, String name, String location) {
+}
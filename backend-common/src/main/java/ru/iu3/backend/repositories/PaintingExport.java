@@ -0,0 +1,7 @@
+package ru.iu3.backend.repositories;
+
+/**
+ * Строка выгрузки картин: вместо вложенных объектов только ссылки на художника и музей
+ */
+public record PaintingExport(long id, String name, Integer year, Long artistId, Long museumId) {
+}
@@ -0,0 +1,7 @@
+package ru.iu3.backend.repositories;
+
+/**
+ * Картина для чтения: только выводимые колонки, без отслеживания контекстом персистентности
+ */
+public record PaintingView(long id, String name, Integer year) {
+}
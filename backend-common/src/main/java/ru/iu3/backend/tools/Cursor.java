@@ -0,0 +1,57 @@
+package ru.iu3.backend.tools;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Курсор для постраничного вывода "по ключу": последняя выданная пара (name, id).
+ * Клиенту отдаётся в непрозрачном виде (base64url), следующая страница начинается строго после неё.
+ */
+public class Cursor {
+    // Наибольший размер страницы: больше за один запрос не выбираем ни в одном списке
+    public static final int MAX_LIMIT = 1000;
+
+    public final String name;
+    public final long id;
+
+    public Cursor(String name, long id) {
+        this.name = name;
+        this.id = id;
+    }
+
+    public static String encode(String name, long id) {
+        String raw = id + ":" + name;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Разбирает курсор из параметра after
+     *
+     * @param after - значение параметра; пустая строка означает первую страницу
+     * @return - курсор или null для первой страницы
+     * @throws DataValidationException - если курсор испорчен
+     */
+    public static Cursor decode(String after) throws DataValidationException {
+        if (after == null || after.isEmpty()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(after), StandardCharsets.UTF_8);
+            int colon = raw.indexOf(':');
+            return new Cursor(raw.substring(colon + 1), Long.parseLong(raw.substring(0, colon)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+            throw new DataValidationException("Некорректный курсор");
+        }
+    }
+
+    /**
+     * Проверяет размер страницы
+     *
+     * @throws DataValidationException - если он меньше 1 или больше MAX_LIMIT
+     */
+    public static void checkLimit(int limit) throws DataValidationException {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new DataValidationException("Некорректный размер страницы");
+        }
+    }
+}
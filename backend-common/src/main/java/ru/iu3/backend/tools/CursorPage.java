@@ -0,0 +1,37 @@
+package ru.iu3.backend.tools;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Страница при выводе по курсору. В отличие от Page не содержит общего количества,
+ * вместо номера следующей страницы - курсор next (null, если дальше ничего нет)
+ *
+ * @param <T> - тип элементов
+ */
+public class CursorPage<T> {
+    public final List<T> content;
+    public final String next;
+    public final boolean last;
+
+    private CursorPage(List<T> content, String next) {
+        this.content = content;
+        this.next = next;
+        this.last = next == null;
+    }
+
+    /**
+     * Собирает страницу из выборки, запрошенной с запасом в одну строку
+     *
+     * @param rows   - до limit + 1 строк
+     * @param limit  - размер страницы
+     * @param cursor - как получить курсор из элемента
+     */
+    public static <T> CursorPage<T> of(List<T> rows, int limit, Function<T, String> cursor) {
+        if (rows.size() <= limit) {
+            return new CursorPage<>(rows, null);
+        }
+        List<T> content = rows.subList(0, limit);
+        return new CursorPage<>(content, cursor.apply(content.get(limit - 1)));
+    }
+}
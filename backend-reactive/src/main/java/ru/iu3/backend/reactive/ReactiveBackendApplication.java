@@ -0,0 +1,16 @@
+package ru.iu3.backend.reactive;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+/**
+ * Каталог только для чтения на WebFlux и R2DBC: те же GET-маршруты, что у backend, без блокирующих
+ * потоков запросов и пула JDBC. Запускается рядом с backend на той же базе
+ */
+@SpringBootApplication
+public class ReactiveBackendApplication {
+
+    public static void main(String[] args) {
+        SpringApplication.run(ReactiveBackendApplication.class, args);
+    }
+}
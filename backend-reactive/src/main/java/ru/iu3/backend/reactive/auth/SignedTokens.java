@@ -0,0 +1,128 @@
+package ru.iu3.backend.reactive.auth;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.CredentialsExpiredException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * Проверка подписанных токенов backend (режим private.token-mode=signed), формат тот же:
+ * base64url(userId:issuedAt:expiresAt:login) + "." + base64url(HMAC-SHA256).
+ * Ключ должен совпадать с private.signed-token.secret backend, поэтому здесь он обязателен.
+ * Здесь проверяются только подпись и срок; отзывы backend пишет в revoked_tokens и revoked_users,
+ * их смотрит TokenAuthenticationManager.
+ * Как и в backend, части токена принимаются только в написании issue (base64url без '='): другое написание
+ * той же подписи не совпало бы со строкой в revoked_tokens и обходило бы отзыв
+ */
+@Component
+public class SignedTokens {
+
+    public static class Claims {
+        public final long userId;
+        public final String login;
+        public final long issuedAt;
+        // Подпись в каноническом base64url (без '=') - ключ в revoked_tokens
+        public final String signature;
+
+        Claims(long userId, String login, long issuedAt, String signature) {
+            this.userId = userId;
+            this.login = login;
+            this.issuedAt = issuedAt;
+            this.signature = signature;
+        }
+    }
+
+    @Value("${private.token-mode:session}")
+    private String tokenMode;
+
+    @Value("${private.signed-token.secret:}")
+    private String secret;
+
+    private SecretKeySpec key;
+
+    private final ThreadLocal<Mac> mac = ThreadLocal.withInitial(() -> {
+        try {
+            Mac m = Mac.getInstance("HmacSHA256");
+            m.init(key);
+            return m;
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    });
+
+    @PostConstruct
+    void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        if (secret == null || secret.isEmpty()) {
+            throw new IllegalStateException("private.signed-token.secret must match the backend secret");
+        }
+        key = new SecretKeySpec(Base64.getDecoder().decode(secret), "HmacSHA256");
+    }
+
+    public boolean isEnabled() {
+        return "signed".equalsIgnoreCase(tokenMode);
+    }
+
+    /**
+     * Проверяет подпись и срок действия токена
+     *
+     * @return - данные токена
+     * @throws BadCredentialsException     - подпись не сходится или токен испорчен
+     * @throws CredentialsExpiredException - срок действия токена истёк
+     */
+    public Claims verify(String token) {
+        int dot = token == null ? -1 : token.indexOf('.');
+        if (dot <= 0) {
+            throw new BadCredentialsException("malformed token");
+        }
+        byte[] p = decodeCanonical(token.substring(0, dot));
+        byte[] signature = decodeCanonical(token.substring(dot + 1));
+        if (!MessageDigest.isEqual(mac.get().doFinal(p), signature)) {
+            throw new BadCredentialsException("bad token signature");
+        }
+
+        String[] parts = new String(p, StandardCharsets.UTF_8).split(":", 4);
+        if (parts.length != 4) {
+            throw new BadCredentialsException("malformed token");
+        }
+        long userId;
+        long issuedAt;
+        long expiresAt;
+        try {
+            userId = Long.parseLong(parts[0]);
+            issuedAt = Long.parseLong(parts[1]);
+            expiresAt = Long.parseLong(parts[2]);
+        } catch (NumberFormatException ex) {
+            throw new BadCredentialsException("malformed token");
+        }
+        if (System.currentTimeMillis() >= expiresAt) {
+            throw new CredentialsExpiredException("session is expired");
+        }
+        return new Claims(userId, parts[3], issuedAt,
+                Base64.getUrlEncoder().withoutPadding().encodeToString(signature));
+    }
+
+    // Декодирует часть токена и проверяет, что она записана ровно так, как её кодирует backend
+    private static byte[] decodeCanonical(String part) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(part);
+        } catch (IllegalArgumentException ex) {
+            throw new BadCredentialsException("malformed token");
+        }
+        if (!Base64.getUrlEncoder().withoutPadding().encodeToString(bytes).equals(part)) {
+            throw new BadCredentialsException("malformed token");
+        }
+        return bytes;
+    }
+}
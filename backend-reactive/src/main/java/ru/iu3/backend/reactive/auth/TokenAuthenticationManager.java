@@ -0,0 +1,163 @@
+package ru.iu3.backend.reactive.auth;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.CredentialsExpiredException;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.crypto.codec.Hex;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Проверка токенов backend без блокировок. В режиме session сессия ищется в той же таблице
+ * sessions по SHA-256 токена; проверенный токен помнится private.session-check-ttl секунд,
+ * чтобы поток запросов с одним токеном не превращался в поток select к sessions.
+ * Активность сессии продлевается в БД не чаще раза в минуту: точнее таймауту в минутах не нужно.
+ * В режиме signed подпись проверяется локально, а отзыв - по таблицам revoked_tokens и revoked_users,
+ * которые ведёт RevocationList backend; ответ "не отозван" помнится так же private.session-check-ttl секунд,
+ * так что выход в backend доходит сюда не позже чем через это время.
+ * Открывает и закрывает сессии и отзывает токены только backend
+ */
+@Component
+public class TokenAuthenticationManager implements ReactiveAuthenticationManager {
+
+    private static final String FIND = "select s.id, s.activity, u.login from sessions s "
+            + "join users u on u.id = s.userid where s.tokenhash = :hash";
+    private static final String TOUCH = "update sessions set activity = :activity "
+            + "where id = :id and activity < :activity";
+    private static final String REVOKED = "select exists(select 1 from revoked_tokens where signature = :signature) "
+            + "or exists(select 1 from revoked_users where userid = :userid and issued_before >= :issued) as revoked";
+
+    private static class Checked {
+        final long sessionId;
+        final String login;
+        final long checkedAt;
+        volatile LocalDateTime activity;
+
+        Checked(long sessionId, String login, LocalDateTime activity, long checkedAt) {
+            this.sessionId = sessionId;
+            this.login = login;
+            this.activity = activity;
+            this.checkedAt = checkedAt;
+        }
+    }
+
+    @Autowired
+    DatabaseClient databaseClient;
+
+    @Autowired
+    SignedTokens signedTokens;
+
+    @Value("${private.session-timeout}")
+    private int sessionTimeout;
+
+    @Value("${private.session-check-ttl:10}")
+    private int checkTtl;
+
+    private final ConcurrentHashMap<String, Checked> checked = new ConcurrentHashMap<>();
+
+    // подпись токена (Claims.signature, как в revoked_tokens) -> момент последней проверки на отзыв
+    private final ConcurrentHashMap<String, Long> notRevoked = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<MessageDigest> sha256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    });
+
+    @Override
+    public Mono<Authentication> authenticate(Authentication authentication) {
+        String token = String.valueOf(authentication.getCredentials());
+        if (token.isEmpty()) {
+            return Mono.error(new BadCredentialsException("no token"));
+        }
+        long now = System.currentTimeMillis();
+        if (signedTokens.isEnabled()) {
+            return Mono.fromCallable(() -> signedTokens.verify(token))
+                    .flatMap(claims -> notRevoked(claims, now).thenReturn(authenticated(token, claims.login)));
+        }
+
+        Checked c = checked.get(token);
+        if (c != null && now - c.checkedAt < checkTtl * 1000L) {
+            return touch(c).thenReturn(authenticated(token, c.login));
+        }
+        if (c != null) {
+            checked.remove(token, c);
+        }
+        String hash = hash(token);
+        return databaseClient.sql(FIND)
+                .bind("hash", hash)
+                .map((row, meta) -> new Checked(row.get("id", Long.class), row.get("login", String.class),
+                        row.get("activity", LocalDateTime.class), now))
+                .one()
+                .switchIfEmpty(Mono.error(() -> new BadCredentialsException("user is not found :(")))
+                .flatMap(s -> {
+                    if (!LocalDateTime.now().isBefore(s.activity.plusMinutes(sessionTimeout))) {
+                        // Удалит такую сессию backend при очередной чистке
+                        return Mono.error(new CredentialsExpiredException("session is expired"));
+                    }
+                    if (checked.size() > 100_000) {
+                        checked.clear();
+                    }
+                    checked.put(token, s);
+                    return touch(s).thenReturn(authenticated(token, s.login));
+                });
+    }
+
+    private Mono<Void> notRevoked(SignedTokens.Claims claims, long now) {
+        Long checkedAt = notRevoked.get(claims.signature);
+        if (checkedAt != null && now - checkedAt < checkTtl * 1000L) {
+            return Mono.empty();
+        }
+        return databaseClient.sql(REVOKED)
+                .bind("signature", claims.signature)
+                .bind("userid", claims.userId)
+                .bind("issued", claims.issuedAt)
+                .map((row, meta) -> row.get("revoked", Boolean.class))
+                .one()
+                .flatMap(revoked -> {
+                    if (Boolean.TRUE.equals(revoked)) {
+                        notRevoked.remove(claims.signature);
+                        return Mono.error(new CredentialsExpiredException("token is revoked"));
+                    }
+                    if (notRevoked.size() > 100_000) {
+                        notRevoked.clear();
+                    }
+                    notRevoked.put(claims.signature, now);
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> touch(Checked c) {
+        LocalDateTime now = LocalDateTime.now();
+        if (now.isBefore(c.activity.plusMinutes(1))) {
+            return Mono.empty();
+        }
+        c.activity = now;
+        return databaseClient.sql(TOUCH)
+                .bind("activity", now)
+                .bind("id", c.sessionId)
+                .then();
+    }
+
+    private static Authentication authenticated(String token, String login) {
+        return new UsernamePasswordAuthenticationToken(login, token, AuthorityUtils.createAuthorityList("USER"));
+    }
+
+    private static String hash(String token) {
+        return new String(Hex.encode(sha256.get().digest(token.getBytes(StandardCharsets.UTF_8))));
+    }
+}
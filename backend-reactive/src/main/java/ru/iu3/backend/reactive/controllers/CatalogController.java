@@ -0,0 +1,251 @@
+package ru.iu3.backend.reactive.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.iu3.backend.reactive.repositories.CatalogRepository;
+import ru.iu3.backend.repositories.ArtistView;
+import ru.iu3.backend.repositories.CountryView;
+import ru.iu3.backend.repositories.MuseumView;
+import ru.iu3.backend.repositories.PaintingExport;
+import ru.iu3.backend.repositories.PaintingView;
+import ru.iu3.backend.tools.Cursor;
+import ru.iu3.backend.tools.CursorPage;
+import ru.iu3.backend.tools.DataValidationException;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * GET-маршруты каталога backend (страны, художники, музеи, картины) с теми же параметрами
+ * и тем же JSON: страница по номеру с общим количеством, без него (count=false), по курсору (after),
+ * запись по id, выгрузка NDJSON и картины музея или художника. Изменение данных, пользователи,
+ * поиск, статистика и ETag остаются в backend
+ */
+@CrossOrigin(origins = "http://localhost:3000")
+@RestController
+@RequestMapping("api/v1")
+public class CatalogController {
+    private static final String NDJSON = "application/x-ndjson";
+    private static final Sort BY_NAME = Sort.by(Sort.Direction.ASC, "name", "id");
+
+    @Autowired
+    CatalogRepository catalogRepository;
+
+    @GetMapping("/countries")
+    public Mono<Page<CountryView>> getCountries(@RequestParam("page") int page, @RequestParam("limit") int limit) {
+        return page(catalogRepository.countries(), page, limit);
+    }
+
+    @GetMapping(value = "/countries", params = {"count=false", "!after"})
+    public Mono<Slice<CountryView>> getCountriesSlice(@RequestParam("page") int page,
+                                                      @RequestParam("limit") int limit) {
+        return slice(catalogRepository.countries(), page, limit);
+    }
+
+    @GetMapping(value = "/countries", params = "after")
+    public Mono<CursorPage<CountryView>> getCountriesAfter(@RequestParam("after") String after,
+                                                           @RequestParam("limit") int limit) {
+        return after(catalogRepository.countries(), after, limit, c -> Cursor.encode(c.name(), c.id()));
+    }
+
+    @GetMapping(value = "/countries/export", produces = NDJSON)
+    public Flux<CountryView> exportCountries() {
+        return catalogRepository.countries().export();
+    }
+
+    @GetMapping("/countries/{id}")
+    public Mono<CountryView> getCountry(@PathVariable("id") long id) {
+        return found(catalogRepository.countries().byId(id), "Not founding");
+    }
+
+    @GetMapping("/artists")
+    public Mono<Page<ArtistView>> getArtists(@RequestParam("page") int page, @RequestParam("limit") int limit) {
+        return page(catalogRepository.artists(), page, limit);
+    }
+
+    @GetMapping(value = "/artists", params = {"count=false", "!after"})
+    public Mono<Slice<ArtistView>> getArtistsSlice(@RequestParam("page") int page, @RequestParam("limit") int limit) {
+        return slice(catalogRepository.artists(), page, limit);
+    }
+
+    @GetMapping(value = "/artists", params = "after")
+    public Mono<CursorPage<ArtistView>> getArtistsAfter(@RequestParam("after") String after,
+                                                        @RequestParam("limit") int limit) {
+        return after(catalogRepository.artists(), after, limit, a -> Cursor.encode(a.name(), a.id()));
+    }
+
+    @GetMapping(value = "/artists/export", produces = NDJSON)
+    public Flux<ArtistView> exportArtists() {
+        return catalogRepository.artists().export();
+    }
+
+    @GetMapping("/artists/{id}")
+    public Mono<ArtistView> getArtist(@PathVariable("id") long id) {
+        return found(catalogRepository.artists().byId(id), "Художник с таким индексом не найден");
+    }
+
+    @GetMapping("/artists/{id}/paintings")
+    public Mono<Page<PaintingView>> getArtistPaintings(@PathVariable("id") long id,
+                                                       @RequestParam(value = "page", defaultValue = "0") int page,
+                                                       @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        return page(catalogRepository.paintingsOfArtist(id), page, limit);
+    }
+
+    @GetMapping(value = "/artists/{id}/paintings", params = {"count=false", "!after"})
+    public Mono<Slice<PaintingView>> getArtistPaintingsSlice(
+            @PathVariable("id") long id,
+            @RequestParam(value = "page", defaultValue = "0") int page,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        return slice(catalogRepository.paintingsOfArtist(id), page, limit);
+    }
+
+    @GetMapping(value = "/artists/{id}/paintings", params = "after")
+    public Mono<CursorPage<PaintingView>> getArtistPaintingsAfter(
+            @PathVariable("id") long id,
+            @RequestParam("after") String after,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        return after(catalogRepository.paintingsOfArtist(id), after, limit, p -> Cursor.encode(p.name(), p.id()));
+    }
+
+    @GetMapping("/museums")
+    public Mono<Page<MuseumView>> getMuseums(@RequestParam("page") int page, @RequestParam("limit") int limit) {
+        return page(catalogRepository.museums(), page, limit);
+    }
+
+    @GetMapping(value = "/museums", params = {"count=false", "!after"})
+    public Mono<Slice<MuseumView>> getMuseumsSlice(@RequestParam("page") int page, @RequestParam("limit") int limit) {
+        return slice(catalogRepository.museums(), page, limit);
+    }
+
+    @GetMapping(value = "/museums", params = "after")
+    public Mono<CursorPage<MuseumView>> getMuseumsAfter(@RequestParam("after") String after,
+                                                        @RequestParam("limit") int limit) {
+        return after(catalogRepository.museums(), after, limit, m -> Cursor.encode(m.name(), m.id()));
+    }
+
+    @GetMapping(value = "/museums/export", produces = NDJSON)
+    public Flux<MuseumView> exportMuseums() {
+        return catalogRepository.museums().export();
+    }
+
+    @GetMapping("/museums/{id}")
+    public Mono<MuseumView> getMuseum(@PathVariable("id") long id) {
+        return found(catalogRepository.museums().byId(id), "Музей не найден");
+    }
+
+    @GetMapping("/museums/{id}/paintings")
+    public Mono<Page<PaintingView>> getMuseumPaintings(@PathVariable("id") long id,
+                                                       @RequestParam(value = "page", defaultValue = "0") int page,
+                                                       @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        return page(catalogRepository.paintingsOfMuseum(id), page, limit);
+    }
+
+    @GetMapping(value = "/museums/{id}/paintings", params = {"count=false", "!after"})
+    public Mono<Slice<PaintingView>> getMuseumPaintingsSlice(
+            @PathVariable("id") long id,
+            @RequestParam(value = "page", defaultValue = "0") int page,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        return slice(catalogRepository.paintingsOfMuseum(id), page, limit);
+    }
+
+    @GetMapping(value = "/museums/{id}/paintings", params = "after")
+    public Mono<CursorPage<PaintingView>> getMuseumPaintingsAfter(
+            @PathVariable("id") long id,
+            @RequestParam("after") String after,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        return after(catalogRepository.paintingsOfMuseum(id), after, limit, p -> Cursor.encode(p.name(), p.id()));
+    }
+
+    @GetMapping("/paintings")
+    public Mono<Page<PaintingView>> getPaintings(@RequestParam("page") int page, @RequestParam("limit") int limit) {
+        return page(catalogRepository.paintings(), page, limit);
+    }
+
+    @GetMapping(value = "/paintings", params = {"count=false", "!after"})
+    public Mono<Slice<PaintingView>> getPaintingsSlice(@RequestParam("page") int page,
+                                                       @RequestParam("limit") int limit) {
+        return slice(catalogRepository.paintings(), page, limit);
+    }
+
+    @GetMapping(value = "/paintings", params = "after")
+    public Mono<CursorPage<PaintingView>> getPaintingsAfter(@RequestParam("after") String after,
+                                                            @RequestParam("limit") int limit) {
+        return after(catalogRepository.paintings(), after, limit, p -> Cursor.encode(p.name(), p.id()));
+    }
+
+    @GetMapping(value = "/paintings/export", produces = NDJSON)
+    public Flux<PaintingExport> exportPaintings() {
+        return catalogRepository.exportPaintings();
+    }
+
+    @GetMapping("/paintings/{id}")
+    public Mono<PaintingView> getPainting(@PathVariable("id") long id) {
+        return found(catalogRepository.paintings().byId(id), "Картина не была найдена");
+    }
+
+    // Страница и общее количество запрашиваются одновременно
+    private static <T> Mono<Page<T>> page(CatalogRepository.Table<T> table, int page, int limit) {
+        Pageable pageable = pageable(page, limit);
+        return Mono.zip(table.page(pageable.getOffset(), limit).collectList(), table.count())
+                .map(t -> new PageImpl<>(t.getT1(), pageable, t.getT2()));
+    }
+
+    // Строка сверх страницы говорит, есть ли следующая, без подсчёта
+    private static <T> Mono<Slice<T>> slice(CatalogRepository.Table<T> table, int page, int limit) {
+        Pageable pageable = pageable(page, limit);
+        return table.page(pageable.getOffset(), limit + 1).collectList()
+                .map(rows -> rows.size() > limit
+                        ? new SliceImpl<>(rows.subList(0, limit), pageable, true)
+                        : new SliceImpl<>(rows, pageable, false));
+    }
+
+    private static <T> Mono<CursorPage<T>> after(CatalogRepository.Table<T> table, String after, int limit,
+                                                 Function<T, String> cursor) {
+        checkLimit(limit);
+        Cursor from;
+        try {
+            from = Cursor.decode(after);
+        } catch (DataValidationException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+        return table.after(from, limit + 1).collectList()
+                .map(rows -> CursorPage.of(rows, limit, cursor));
+    }
+
+    private static <T> Mono<T> found(Mono<T> row, String message) {
+        return row.switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, message)));
+    }
+
+    private static Pageable pageable(int page, int limit) {
+        checkLimit(limit);
+        if (page < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Некорректный номер страницы");
+        }
+        return PageRequest.of(page, limit, BY_NAME);
+    }
+
+    // Проверки общие с backend, там DataValidationException отдаётся как 400, здесь - так же
+    private static void checkLimit(int limit) {
+        try {
+            Cursor.checkLimit(limit);
+        } catch (DataValidationException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package ru.iu3.backend.reactive.repositories;
+
+import io.r2dbc.spi.Row;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.iu3.backend.repositories.ArtistView;
+import ru.iu3.backend.repositories.CountryView;
+import ru.iu3.backend.repositories.MuseumView;
+import ru.iu3.backend.repositories.PaintingExport;
+import ru.iu3.backend.repositories.PaintingView;
+import ru.iu3.backend.tools.Cursor;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Чтение каталога через R2DBC. Запросы написаны явно и выбирают только выводимые колонки,
+ * порядок списков - name, id, как у backend, и обслуживается теми же индексами (name, id),
+ * (museumid, name, id), (artistid, name, id). Строки отдаются потоком по мере чтения,
+ * поэтому медленный клиент выгрузки притормаживает чтение из БД, а не копит строки в памяти
+ */
+@Repository
+public class CatalogRepository {
+
+    // Сколько строк выгрузки драйвер запрашивает у сервера за раз
+    private static final int EXPORT_FETCH_SIZE = 500;
+
+    /**
+     * Одна таблица (или картины одного музея, художника): страница по номеру, по курсору,
+     * запись по id, выгрузка и общее количество
+     *
+     * @param <T> - тип строки
+     */
+    public class Table<T> {
+        private final String select;
+        private final String alias;
+        private final String owner;
+        private final long ownerId;
+        private final Function<Row, T> mapper;
+        private Mono<Long> count;
+
+        /**
+         * @param select - select ... from ... без where и order by
+         * @param alias  - псевдоним основной таблицы в select
+         * @param owner  - условие на владельца с параметром :owner, null - вся таблица
+         */
+        Table(String select, String alias, String owner, long ownerId, Function<Row, T> mapper) {
+            this.select = select;
+            this.alias = alias;
+            this.owner = owner;
+            this.ownerId = ownerId;
+            this.mapper = mapper;
+        }
+
+        public Flux<T> page(long offset, int limit) {
+            return query(null, " order by " + alias + ".name, " + alias + ".id limit :limit offset :offset")
+                    .bind("limit", limit)
+                    .bind("offset", offset)
+                    .map((row, meta) -> mapper.apply(row))
+                    .all();
+        }
+
+        /**
+         * Страница по курсору, с начала списка, если cursor == null
+         */
+        public Flux<T> after(Cursor cursor, int limit) {
+            String order = " order by " + alias + ".name, " + alias + ".id limit :limit";
+            DatabaseClient.GenericExecuteSpec spec = cursor == null
+                    ? query(null, order)
+                    : query("(" + alias + ".name, " + alias + ".id) > (:name, :id)", order)
+                    .bind("name", cursor.name)
+                    .bind("id", cursor.id);
+            return spec.bind("limit", limit)
+                    .map((row, meta) -> mapper.apply(row))
+                    .all();
+        }
+
+        public Mono<T> byId(long id) {
+            return query(alias + ".id = :id", "")
+                    .bind("id", id)
+                    .map((row, meta) -> mapper.apply(row))
+                    .one();
+        }
+
+        public Flux<T> export() {
+            return query(null, " order by " + alias + ".id")
+                    .filter(s -> s.fetchSize(EXPORT_FETCH_SIZE))
+                    .map((row, meta) -> mapper.apply(row))
+                    .all();
+        }
+
+        /**
+         * Общее количество строк. Для целых таблиц - из памяти, обновляется раз в private.count-ttl секунд
+         */
+        public Mono<Long> count() {
+            if (count != null) {
+                return count;
+            }
+            return countQuery();
+        }
+
+        /**
+         * Картины одного владельца: та же выборка с условием на внешний ключ
+         */
+        Table<T> of(String condition, long ownerId) {
+            return new Table<>(select, alias, condition, ownerId, mapper);
+        }
+
+        private DatabaseClient.GenericExecuteSpec bindOwner(DatabaseClient.GenericExecuteSpec spec) {
+            return owner == null ? spec : spec.bind("owner", ownerId);
+        }
+
+        private Table<T> cached() {
+            count = countQuery().cache(Duration.ofSeconds(countTtl));
+            return this;
+        }
+
+        private Mono<Long> countQuery() {
+            String from = select.substring(select.indexOf(" from "));
+            String sql = "select count(*)" + from + (owner == null ? "" : " where " + owner);
+            return bindOwner(databaseClient.sql(sql))
+                    .map((row, meta) -> row.get(0, Long.class))
+                    .one();
+        }
+
+        private DatabaseClient.GenericExecuteSpec query(String condition, String tail) {
+            StringBuilder sql = new StringBuilder(select);
+            if (owner != null || condition != null) {
+                sql.append(" where ");
+                if (owner != null) {
+                    sql.append(owner);
+                    if (condition != null) {
+                        sql.append(" and ");
+                    }
+                }
+                if (condition != null) {
+                    sql.append(condition);
+                }
+            }
+            sql.append(tail);
+            return bindOwner(databaseClient.sql(sql.toString()));
+        }
+    }
+
+    @Autowired
+    DatabaseClient databaseClient;
+
+    @Value("${private.count-ttl:5}")
+    private int countTtl;
+
+    private Table<CountryView> countries;
+    private Table<ArtistView> artists;
+    private Table<MuseumView> museums;
+    private Table<PaintingView> paintings;
+
+    @PostConstruct
+    void init() {
+        countries = new Table<>("select c.id, c.name from countries c", "c",
+                null, 0, row -> new CountryView(row.get("id", Long.class), row.get("name", String.class))).cached();
+        // Страна выбирается тем же запросом и выводится вложенным объектом, как в backend
+        artists = new Table<>("select a.id, a.name, a.age, c.id as countryid, c.name as countryname "
+                + "from artists a left join countries c on c.id = a.country", "a", null, 0, row -> {
+            Long countryId = row.get("countryid", Long.class);
+            return new ArtistView(row.get("id", Long.class), row.get("name", String.class),
+                    row.get("age", String.class),
+                    countryId == null ? null : new CountryView(countryId, row.get("countryname", String.class)));
+        }).cached();
+        museums = new Table<>("select m.id, m.name, m.location from museums m", "m", null, 0,
+                row -> new MuseumView(row.get("id", Long.class), row.get("name", String.class),
+                        row.get("location", String.class))).cached();
+        paintings = new Table<>("select p.id, p.name, p.year from paintings p", "p", null, 0,
+                row -> new PaintingView(row.get("id", Long.class), row.get("name", String.class),
+                        row.get("year", Integer.class))).cached();
+    }
+
+    public Table<CountryView> countries() {
+        return countries;
+    }
+
+    public Table<ArtistView> artists() {
+        return artists;
+    }
+
+    public Table<MuseumView> museums() {
+        return museums;
+    }
+
+    public Table<PaintingView> paintings() {
+        return paintings;
+    }
+
+    public Table<PaintingView> paintingsOfMuseum(long museumId) {
+        return paintings.of("p.museumid = :owner", museumId);
+    }
+
+    public Table<PaintingView> paintingsOfArtist(long artistId) {
+        return paintings.of("p.artistid = :owner", artistId);
+    }
+
+    /**
+     * Выгрузка картин со ссылками на художника и музей, как /paintings/export в backend
+     */
+    public Flux<PaintingExport> exportPaintings() {
+        return databaseClient.sql("select p.id, p.name, p.year, p.artistid, p.museumid from paintings p order by p.id")
+                .filter(s -> s.fetchSize(EXPORT_FETCH_SIZE))
+                .map((row, meta) -> new PaintingExport(row.get("id", Long.class), row.get("name", String.class),
+                        row.get("year", Integer.class), row.get("artistid", Long.class),
+                        row.get("museumid", Long.class)))
+                .all();
+    }
+}
@@ -0,0 +1,108 @@
+package ru.iu3.backend.reactive.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность одних и тех же GET-маршрутов у backend (servlet, JDBC) и у этого модуля
+ * (WebFlux, R2DBC) при большом числе одновременных клиентов. Оба сервера запускаются заранее
+ * на одной базе с данными; адреса и токен задаются свойствами:
+ * -Dbenchmark.servlet=http://localhost:8081 -Dbenchmark.reactive=http://localhost:8082
+ * -Dbenchmark.token=... (токен входа в backend, годится для обоих).
+ * Кэши ответов и ETag в backend работают как обычно, поэтому маршруты по курсору и по id,
+ * которые ими не покрываются, показательнее первой страницы
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(200)
+@Fork(1)
+public class GetRoutesBenchmark {
+
+    @Param({"servlet", "reactive"})
+    public String target;
+
+    // Диапазон id картин для запросов по id
+    @Param({"100000"})
+    public int paintings;
+
+    private HttpClient client;
+    private String base;
+    private String token;
+
+    @Setup
+    public void setup() {
+        base = "servlet".equals(target)
+                ? System.getProperty("benchmark.servlet", "http://localhost:8081")
+                : System.getProperty("benchmark.reactive", "http://localhost:8082");
+        token = System.getProperty("benchmark.token", "");
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    @Benchmark
+    public int paintingsPage() throws IOException, InterruptedException {
+        return get("/api/v1/paintings?page=" + ThreadLocalRandom.current().nextInt(100) + "&limit=50");
+    }
+
+    @Benchmark
+    public int paintingsAfter() throws IOException, InterruptedException {
+        return get("/api/v1/paintings?after=&limit=50");
+    }
+
+    @Benchmark
+    public int paintingById() throws IOException, InterruptedException {
+        return get("/api/v1/paintings/" + (1 + ThreadLocalRandom.current().nextInt(paintings)));
+    }
+
+    @Benchmark
+    public int museumPaintings() throws IOException, InterruptedException {
+        return get("/api/v1/museums/" + (1 + ThreadLocalRandom.current().nextInt(100))
+                + "/paintings?count=false&limit=50");
+    }
+
+    private int get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(base + path))
+                .header("Authorization", "Bearer " + token)
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200 && response.statusCode() != 400) {
+            throw new IllegalStateException(path + ": " + response.statusCode());
+        }
+        return response.body().length;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(GetRoutesBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
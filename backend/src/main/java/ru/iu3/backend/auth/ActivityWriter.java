@@ -0,0 +1,91 @@
+package ru.iu3.backend.auth;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Отложенная запись активности сессий.
+ * Вместо UPDATE на каждый запрос запоминаем последнюю активность каждой сессии
+ * и периодически сбрасываем всё одним пакетным запросом.
+ */
+@Component
+public class ActivityWriter {
+    // Более свежую отметку (например, выставленную при входе) не перетираем
+    private static final String UPDATE_SQL =
+            "update sessions set activity = ? where id = ? and activity < ?";
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    private final ConcurrentHashMap<Long, LocalDateTime> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Запоминает активность сессии. Если уже есть более поздняя отметка - она остаётся
+     */
+    public void record(long sessionId, LocalDateTime activity) {
+        pending.merge(sessionId, activity, (a, b) -> a.isAfter(b) ? a : b);
+    }
+
+    /**
+     * Ещё не записанная в БД активность сессии
+     *
+     * @return - отметка времени или null, если ничего не ждёт записи
+     */
+    public LocalDateTime pendingActivity(long sessionId) {
+        return pending.get(sessionId);
+    }
+
+    public void forget(long sessionId) {
+        pending.remove(sessionId);
+    }
+
+    /**
+     * Сбрасывает накопленную активность в таблицу sessions одним пакетом
+     *
+     * @return - количество обновлённых сессий
+     */
+    @Scheduled(fixedDelayString = "${private.activity-flush-interval:5000}")
+    public synchronized int flush() {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        List<Object[]> batch = new ArrayList<>();
+        for (Map.Entry<Long, LocalDateTime> e : pending.entrySet()) {
+            // Удаляем только если значение не успело смениться, иначе новая отметка уйдёт в следующий раз
+            if (pending.remove(e.getKey(), e.getValue())) {
+                Timestamp ts = Timestamp.valueOf(e.getValue());
+                batch.add(new Object[]{ts, e.getKey(), ts});
+            }
+        }
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_SQL, batch);
+        } catch (RuntimeException ex) {
+            // Не теряем отметки: вернём их обратно, запишем при следующем сбросе
+            for (Object[] row : batch) {
+                record((Long) row[1], ((Timestamp) row[0]).toLocalDateTime());
+            }
+            throw ex;
+        }
+        return batch.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+}
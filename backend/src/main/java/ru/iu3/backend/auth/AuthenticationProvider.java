@@ -1,29 +1,25 @@
 package ru.iu3.backend.auth;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.authentication.dao.AbstractUserDetailsAuthenticationProvider;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.web.authentication.www.NonceExpiredException;
 import org.springframework.stereotype.Component;
-
-import ru.iu3.backend.repositories.UserRepository;
-
-import java.time.LocalDateTime;
-import java.util.Optional;
+import ru.iu3.backend.tools.Metrics;
 
 @Component
 public class AuthenticationProvider extends AbstractUserDetailsAuthenticationProvider {
     @Autowired
-    UserRepository userRepository;
+    SessionStore sessionStore;
 
-    @Value("${private.session-timeout}")
-    private int sessionTimeout;
+    @Autowired
+    SignedTokenService signedTokenService;
+
+    @Autowired
+    Metrics metrics;
 
     @Override
     protected void additionalAuthenticationChecks(UserDetails userDetails,
@@ -33,29 +29,28 @@ public class AuthenticationProvider extends AbstractUserDetailsAuthenticationPro
     @Override
     protected UserDetails retrieveUser(String userName,
                                        UsernamePasswordAuthenticationToken usernamePasswordAuthenticationToken) throws AuthenticationException {
-        Object token = usernamePasswordAuthenticationToken.getCredentials();
-        Optional<ru.iu3.backend.models.User> uu = userRepository.findByToken(String.valueOf(token));
-        if (!uu.isPresent())
-            throw new UsernameNotFoundException("user is not found :(");
-        ru.iu3.backend.models.User u = uu.get();
-
-        boolean timeout = true;
-        LocalDateTime dt  = LocalDateTime.now();
-        if (u.activity != null) {
-            LocalDateTime nt = u.activity.plusMinutes(sessionTimeout);
-            if (dt.isBefore(nt)) timeout = false;
-        }
-
-        if (timeout) {
-            u.token = null;
-            userRepository.save(u);
-            throw new NonceExpiredException("session is expired");
-        } else {
-            u.activity = dt;
-            userRepository.save(u);
+        String token = String.valueOf(usernamePasswordAuthenticationToken.getCredentials());
+        String login;
+        String password;
+        boolean signed = signedTokenService.isEnabled();
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            if (signed) {
+                // Пароль в подписанном токене не передаётся, а дальше он и не проверяется
+                login = signedTokenService.verify(token).login;
+                password = "";
+            } else {
+                SessionCache.Entry e = sessionStore.authenticate(token);
+                login = e.login;
+                password = e.password;
+            }
+            ok = true;
+        } finally {
+            metrics.recordAuthentication(signed ? "signed" : "session", ok, System.nanoTime() - start);
         }
 
-        UserDetails user = new User(u.login, u.password,
+        UserDetails user = new User(login, password,
                 true,
                 true,
                 true,
@@ -63,6 +58,4 @@ public class AuthenticationProvider extends AbstractUserDetailsAuthenticationPro
                 AuthorityUtils.createAuthorityList("USER"));
         return user;
     }
-
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,182 @@
+package ru.iu3.backend.auth;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ограничитель попыток входа. Для каждого логина и каждого адреса клиента держим
+ * "ведро с жетонами": попытка забирает жетон, жетоны восполняются с постоянной скоростью.
+ * Удачный вход жетоны возвращает, так что ограничиваются только попытки с неверным паролем.
+ * Вёдра разложены по полосам (stripes) со своей блокировкой, каждая полоса - LRU ограниченного размера,
+ * так что память не растёт при переборе случайных логинов.
+ */
+@Component
+public class LoginAttemptLimiter {
+    private static final int STRIPES = 64;
+
+    private static class Bucket {
+        double tokens;
+        long refilled;
+
+        Bucket(double tokens, long refilled) {
+            this.tokens = tokens;
+            this.refilled = refilled;
+        }
+    }
+
+    /**
+     * Набор вёдер одного вида (по логину или по адресу)
+     */
+    private class Buckets {
+        private final int capacity;
+        private final double tokensPerNano;
+        private final LinkedHashMap<String, Bucket>[] stripes;
+
+        @SuppressWarnings("unchecked")
+        Buckets(int capacity, int perMinute, int maxEntries) {
+            this.capacity = capacity;
+            this.tokensPerNano = perMinute / 60e9;
+            this.stripes = new LinkedHashMap[STRIPES];
+            int perStripe = Math.max(1, maxEntries / STRIPES);
+            for (int i = 0; i < STRIPES; ++i) {
+                stripes[i] = new LinkedHashMap<String, Bucket>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+                        if (size() > perStripe) {
+                            evictions.increment();
+                            return true;
+                        }
+                        return false;
+                    }
+                };
+            }
+        }
+
+        boolean tryAcquire(String key, long now) {
+            LinkedHashMap<String, Bucket> stripe = stripes[(key.hashCode() & 0x7fffffff) % STRIPES];
+            synchronized (stripe) {
+                Bucket b = stripe.get(key);
+                if (b == null) {
+                    stripe.put(key, new Bucket(capacity - 1, now));
+                    return true;
+                }
+                b.tokens = Math.min(capacity, b.tokens + (now - b.refilled) * tokensPerNano);
+                b.refilled = now;
+                if (b.tokens >= 1) {
+                    b.tokens -= 1;
+                    return true;
+                }
+                return false;
+            }
+        }
+
+        void refund(String key) {
+            LinkedHashMap<String, Bucket> stripe = stripes[(key.hashCode() & 0x7fffffff) % STRIPES];
+            synchronized (stripe) {
+                Bucket b = stripe.get(key);
+                if (b != null) {
+                    b.tokens = Math.min(capacity, b.tokens + 1);
+                }
+            }
+        }
+
+        int size() {
+            int size = 0;
+            for (LinkedHashMap<String, Bucket> stripe : stripes) {
+                synchronized (stripe) {
+                    size += stripe.size();
+                }
+            }
+            return size;
+        }
+    }
+
+    @Value("${private.login-limit.login.capacity:5}")
+    private int loginCapacity;
+
+    @Value("${private.login-limit.login.per-minute:5}")
+    private int loginPerMinute;
+
+    @Value("${private.login-limit.address.capacity:20}")
+    private int addressCapacity;
+
+    @Value("${private.login-limit.address.per-minute:30}")
+    private int addressPerMinute;
+
+    @Value("${private.login-limit.max-entries:100000}")
+    private int maxEntries;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder rejectedByLogin = new LongAdder();
+    private final LongAdder rejectedByAddress = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private Buckets byLogin;
+    private Buckets byAddress;
+
+    @PostConstruct
+    void init() {
+        byLogin = new Buckets(loginCapacity, loginPerMinute, maxEntries);
+        byAddress = new Buckets(addressCapacity, addressPerMinute, maxEntries);
+    }
+
+    /**
+     * Решает, пропускать ли попытку входа
+     *
+     * @param login   - логин из запроса
+     * @param address - адрес клиента
+     * @return - true, если попытку можно обрабатывать
+     */
+    public boolean tryAcquire(String login, String address) {
+        long now = System.nanoTime();
+        if (address != null && !byAddress.tryAcquire(address, now)) {
+            rejectedByAddress.increment();
+            return false;
+        }
+        if (login != null && !byLogin.tryAcquire(login, now)) {
+            // До проверки пароля такая попытка не дошла, жетон адреса ей не нужен
+            if (address != null) {
+                byAddress.refund(address);
+            }
+            rejectedByLogin.increment();
+            return false;
+        }
+        admitted.increment();
+        return true;
+    }
+
+    /**
+     * Возвращает жетоны попытки, в которой пароль подошёл
+     *
+     * @param login   - логин из запроса
+     * @param address - адрес клиента
+     */
+    public void succeeded(String login, String address) {
+        if (address != null) {
+            byAddress.refund(address);
+        }
+        if (login != null) {
+            byLogin.refund(login);
+        }
+        succeeded.increment();
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("admitted", admitted.sum());
+        stats.put("succeeded", succeeded.sum());
+        stats.put("rejectedByLogin", rejectedByLogin.sum());
+        stats.put("rejectedByAddress", rejectedByAddress.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("logins", byLogin.size());
+        stats.put("addresses", byAddress.size());
+        return stats;
+    }
+}
@@ -0,0 +1,157 @@
+package ru.iu3.backend.auth;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Список отозванных подписанных токенов.
+ * Фильтр Блума отвечает "точно не отозван" без обращения к хэш-таблице, а точное множество
+ * убирает его ложные срабатывания. Записи живут, пока не истечёт срок самого токена,
+ * после чего фильтр периодически перестраивается.
+ * Ключом служит подпись токена: это HMAC, поэтому его байты уже равномерно распределены
+ * и годятся как хэши для фильтра. В множестве и в таблице revoked_tokens подпись хранится в каноническом
+ * виде (base64url без '=', как её выдаёт SignedTokenService.issue), строка вычисляется из байт подписи,
+ * а не берётся из присланного токена.
+ * Отзывы хранятся и в таблицах revoked_tokens и revoked_users (schema.sql): при старте и при каждой
+ * чистке список перечитывается из БД, так что перезапуск с тем же private.signed-token.secret не оживляет
+ * отозванные токены, а отзывы с других узлов доходят не позже чем через private.session-purge-interval.
+ */
+@Component
+public class RevocationList {
+    private static final int HASHES = 4;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Value("${private.signed-token.revocation-bits:1048576}")
+    private int bits;
+
+    private volatile AtomicLongArray filter;
+
+    // подпись токена -> момент истечения токена
+    private volatile ConcurrentHashMap<String, Long> revoked = new ConcurrentHashMap<>();
+
+    // id пользователя -> все токены, выданные не позже этого момента, недействительны
+    private volatile ConcurrentHashMap<Long, Long> revokedUsers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        if (bits < 64) {
+            throw new IllegalStateException("private.signed-token.revocation-bits должно быть не меньше 64: " + bits);
+        }
+        reload(System.currentTimeMillis());
+    }
+
+    public synchronized void revoke(byte[] mac, long expiresAt) {
+        String signature = key(mac);
+        try {
+            jdbcTemplate.update("insert into revoked_tokens (signature, expires_at) values (?, ?)",
+                    signature, expiresAt);
+        } catch (DuplicateKeyException ex) {
+            // Тот же токен уже отозван параллельным запросом
+        }
+        revoked.put(signature, expiresAt);
+        add(filter, mac);
+    }
+
+    /**
+     * Отзывает все токены пользователя, выданные до текущего момента
+     */
+    public synchronized void revokeUser(long userId, long issuedBefore) {
+        if (jdbcTemplate.update("update revoked_users set issued_before = ? where userid = ? and issued_before < ?",
+                issuedBefore, userId, issuedBefore) == 0) {
+            try {
+                jdbcTemplate.update("insert into revoked_users (userid, issued_before) values (?, ?)",
+                        userId, issuedBefore);
+            } catch (DuplicateKeyException ex) {
+                // Запись уже есть и не меньше нашей
+            }
+        }
+        revokedUsers.merge(userId, issuedBefore, Math::max);
+    }
+
+    public boolean isRevoked(byte[] mac, long userId, long issuedAt) {
+        Long cutoff = revokedUsers.get(userId);
+        if (cutoff != null && issuedAt <= cutoff) {
+            return true;
+        }
+        return mightContain(filter, mac) && revoked.containsKey(key(mac));
+    }
+
+    private static String key(byte[] mac) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(mac);
+    }
+
+    /**
+     * Удаляет из БД записи об истёкших токенах и перечитывает список, перестраивая фильтр
+     *
+     * @param lifetimeMillis - время жизни токена, по прошествии которого отзыв пользователя теряет смысл
+     */
+    public synchronized void purge(long now, long lifetimeMillis) {
+        jdbcTemplate.update("delete from revoked_tokens where expires_at <= ?", now);
+        jdbcTemplate.update("delete from revoked_users where issued_before <= ?", now - lifetimeMillis);
+        reload(now);
+    }
+
+    // Новые таблицы и фильтр подменяются целиком, проверки до подмены идут по прежним
+    private synchronized void reload(long now) {
+        // Строки, записанные до перехода на канонический вид, приводятся к нему здесь
+        ConcurrentHashMap<String, Long> tokens = new ConcurrentHashMap<>();
+        jdbcTemplate.query("select signature, expires_at from revoked_tokens where expires_at > ?",
+                rs -> {
+                    tokens.merge(key(Base64.getUrlDecoder().decode(rs.getString(1))), rs.getLong(2), Math::max);
+                }, now);
+        ConcurrentHashMap<Long, Long> users = new ConcurrentHashMap<>();
+        jdbcTemplate.query("select userid, issued_before from revoked_users",
+                rs -> {
+                    users.put(rs.getLong(1), rs.getLong(2));
+                });
+
+        AtomicLongArray rebuilt = new AtomicLongArray((bits + 63) / 64);
+        for (String signature : tokens.keySet()) {
+            add(rebuilt, Base64.getUrlDecoder().decode(signature));
+        }
+        filter = rebuilt;
+        revoked = tokens;
+        revokedUsers = users;
+    }
+
+    public int size() {
+        return revoked.size();
+    }
+
+    private static void add(AtomicLongArray f, byte[] mac) {
+        ByteBuffer buf = ByteBuffer.wrap(mac);
+        long m = f.length() * 64L;
+        for (int i = 0; i < HASHES; ++i) {
+            long bit = (buf.getInt(i * 4) & 0xffffffffL) % m;
+            int word = (int) (bit >>> 6);
+            long mask = 1L << (bit & 63);
+            long prev;
+            do {
+                prev = f.get(word);
+            } while ((prev & mask) == 0 && !f.compareAndSet(word, prev, prev | mask));
+        }
+    }
+
+    private static boolean mightContain(AtomicLongArray f, byte[] mac) {
+        ByteBuffer buf = ByteBuffer.wrap(mac);
+        long m = f.length() * 64L;
+        for (int i = 0; i < HASHES; ++i) {
+            long bit = (buf.getInt(i * 4) & 0xffffffffL) % m;
+            if ((f.get((int) (bit >>> 6)) & (1L << (bit & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,180 @@
+package ru.iu3.backend.auth;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Кэш сессий в памяти: токен -> сведения о пользователе.
+ * Позволяет аутентифицировать запрос без обращения к БД. Размер ограничен,
+ * запись живёт, пока с момента последней активности не прошло session-timeout минут.
+ * При переполнении записи вытесняются по кругу (clock), поиск по токену при этом блокировок не берёт.
+ */
+@Component
+public class SessionCache {
+
+    /**
+     * Запись кэша. Активность обновляется на каждом запросе, остальное неизменно
+     */
+    public static class Entry {
+        public final String token;
+        public final long sessionId;
+        public final long userId;
+        public final String login;
+        public final String password;
+        volatile LocalDateTime activity;
+
+        Entry(String token, long sessionId, long userId, String login, String password, LocalDateTime activity) {
+            this.token = token;
+            this.sessionId = sessionId;
+            this.userId = userId;
+            this.login = login;
+            this.password = password;
+            this.activity = activity;
+        }
+
+        public LocalDateTime getActivity() {
+            return activity;
+        }
+    }
+
+    // Запись и её активность на момент постановки в очередь вытеснения
+    private record Queued(Entry entry, LocalDateTime activity) {
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    // Очередь вытеснения; узлы удалённых и заменённых записей остаются в ней, пока до них не дойдёт очередь
+    private final ConcurrentLinkedQueue<Queued> order = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @Value("${private.session-timeout}")
+    private int sessionTimeout;
+
+    @Value("${private.session-cache.max-size:10000}")
+    private int maxSize;
+
+    /**
+     * Ищет сессию по токену. Истёкшая запись удаляется и считается промахом
+     *
+     * @param token - токен из заголовка Authorization
+     * @return - запись или null, если в кэше её нет
+     */
+    public Entry get(String token) {
+        Entry e = entries.get(token);
+        if (e == null) {
+            misses.increment();
+            return null;
+        }
+        if (isExpired(e, LocalDateTime.now())) {
+            entries.remove(token, e);
+            evictions.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return e;
+    }
+
+    public Entry put(String token, long sessionId, long userId, String login, String password,
+                     LocalDateTime activity) {
+        Entry e = new Entry(token, sessionId, userId, login, password, activity);
+        entries.put(token, e);
+        enqueue(e);
+        while (entries.size() > maxSize || queued.get() > 2 * maxSize) {
+            if (!evictOne()) {
+                break;
+            }
+        }
+        return e;
+    }
+
+    public void touch(Entry e, LocalDateTime activity) {
+        e.activity = activity;
+    }
+
+    public Entry invalidate(String token) {
+        return token != null ? entries.remove(token) : null;
+    }
+
+    /**
+     * Удаляет запись, только если по токену всё ещё лежит именно она
+     */
+    public boolean invalidate(Entry e) {
+        return entries.remove(e.token, e);
+    }
+
+    /**
+     * Удаляет все сессии пользователя (например, при удалении самого пользователя)
+     */
+    public void invalidateUser(long userId) {
+        entries.values().removeIf(e -> e.userId == userId);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public boolean isExpired(Entry e, LocalDateTime now) {
+        return e.activity == null || !now.isBefore(e.activity.plusMinutes(sessionTimeout));
+    }
+
+    private void enqueue(Entry e) {
+        order.add(new Queued(e, e.activity));
+        queued.incrementAndGet();
+    }
+
+    /**
+     * Освобождает место без полного прохода. Берётся запись из головы очереди: истёкшая удаляется,
+     * активная с момента постановки в очередь получает второй шанс и уходит в хвост (не больше одного
+     * круга), иначе удаляется она. Узлы уже удалённых записей отбрасываются, поэтому на одну вставку
+     * в среднем приходится O(1) работы, а очередь не длиннее 2 * maxSize
+     *
+     * @return - false, если очередь пуста
+     */
+    private boolean evictOne() {
+        LocalDateTime now = LocalDateTime.now();
+        for (int chances = queued.get(); ; --chances) {
+            Queued q = order.poll();
+            if (q == null) {
+                return false;
+            }
+            queued.decrementAndGet();
+            Entry e = q.entry;
+            if (entries.get(e.token) != e) {
+                return true;
+            }
+            if (chances > 0 && !isExpired(e, now) && (q.activity == null || e.activity.isAfter(q.activity))) {
+                enqueue(e);
+                continue;
+            }
+            if (entries.remove(e.token, e)) {
+                evictions.increment();
+            }
+            return true;
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        long h = hits.sum();
+        long m = misses.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("size", entries.size());
+        stats.put("maxSize", maxSize);
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("evictions", evictions.sum());
+        stats.put("hitRatio", h + m == 0 ? 0.0 : (double) h / (h + m));
+        return stats;
+    }
+}
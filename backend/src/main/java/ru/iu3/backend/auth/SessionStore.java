@@ -0,0 +1,200 @@
+package ru.iu3.backend.auth;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.codec.Hex;
+import org.springframework.security.web.authentication.www.NonceExpiredException;
+import org.springframework.stereotype.Component;
+import ru.iu3.backend.models.User;
+import ru.iu3.backend.models.UserSession;
+import ru.iu3.backend.repositories.SessionRepository;
+import ru.iu3.backend.tools.HierarchicalTimingWheel;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Хранилище сессий. Сессии лежат в отдельной таблице sessions (по хэшу токена),
+ * у пользователя их может быть несколько. Активные сессии держатся в SessionCache,
+ * а истечение отслеживается колесом таймеров и удаляется из БД пачками.
+ */
+@Component
+public class SessionStore {
+    // Сколько id отправлять в одном delete ... where id in (...)
+    private static final int DELETE_CHUNK = 1000;
+
+    // Хэш токена считается на каждый промах кэша, MessageDigest переиспользуется в пределах потока
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    });
+
+    @Autowired
+    SessionRepository sessionRepository;
+
+    @Autowired
+    SessionCache sessionCache;
+
+    @Autowired
+    ActivityWriter activityWriter;
+
+    @Value("${private.session-timeout}")
+    private int sessionTimeout;
+
+    private final HierarchicalTimingWheel<SessionCache.Entry> wheel =
+            new HierarchicalTimingWheel<>(1000, 64, 4, System.currentTimeMillis());
+
+    /**
+     * Открывает новую сессию пользователя
+     *
+     * @param user - пользователь, прошедший проверку пароля
+     * @return - токен, который нужно передавать в заголовке Authorization
+     */
+    public String open(User user) {
+        String token = UUID.randomUUID().toString();
+        LocalDateTime now = LocalDateTime.now();
+
+        UserSession s = new UserSession();
+        s.tokenHash = hash(token);
+        s.user = user;
+        s.created = now;
+        s.activity = now;
+        s = sessionRepository.save(s);
+
+        schedule(sessionCache.put(token, s.id, user.id, user.login, user.password, now));
+        return token;
+    }
+
+    /**
+     * Находит сессию по токену и продлевает её
+     *
+     * @param token - токен из заголовка
+     * @return - сведения о сессии
+     * @throws UsernameNotFoundException - если такой сессии нет
+     * @throws NonceExpiredException     - если сессия истекла
+     */
+    public SessionCache.Entry authenticate(String token) {
+        LocalDateTime dt = LocalDateTime.now();
+
+        SessionCache.Entry e = sessionCache.get(token);
+        if (e != null) {
+            sessionCache.touch(e, dt);
+            activityWriter.record(e.sessionId, dt);
+            return e;
+        }
+
+        Optional<UserSession> ss = sessionRepository.findByTokenHash(hash(token));
+        if (!ss.isPresent())
+            throw new UsernameNotFoundException("user is not found :(");
+        UserSession s = ss.get();
+
+        // Последняя активность могла ещё не дойти до БД
+        LocalDateTime activity = s.activity;
+        LocalDateTime pending = activityWriter.pendingActivity(s.id);
+        if (pending != null && pending.isAfter(activity)) {
+            activity = pending;
+        }
+
+        if (!dt.isBefore(activity.plusMinutes(sessionTimeout))) {
+            activityWriter.forget(s.id);
+            sessionRepository.deleteById(s.id);
+            throw new NonceExpiredException("session is expired");
+        }
+
+        activityWriter.record(s.id, dt);
+        e = sessionCache.put(token, s.id, s.user.id, s.user.login, s.user.password, dt);
+        schedule(e);
+        return e;
+    }
+
+    /**
+     * Закрывает сессию (выход пользователя)
+     *
+     * @return - true, если сессия существовала
+     */
+    public boolean close(String token) {
+        SessionCache.Entry e = sessionCache.invalidate(token);
+        if (e != null) {
+            activityWriter.forget(e.sessionId);
+        }
+        return sessionRepository.deleteByTokenHash(hash(token)) > 0;
+    }
+
+    /**
+     * Забывает закэшированные сессии пользователя, например после смены логина или пароля.
+     * Сами сессии в БД остаются и при следующем запросе будут прочитаны заново
+     */
+    public void evictUser(long userId) {
+        sessionCache.invalidateUser(userId);
+    }
+
+    /**
+     * Проворачивает колесо таймеров и удаляет истёкшие сессии одним запросом на пачку.
+     * Сессия, которой успели воспользоваться, просто ставится на новый срок
+     */
+    @Scheduled(fixedDelayString = "${private.session-sweep-interval:1000}")
+    public void sweep() {
+        List<SessionCache.Entry> due = wheel.advance(System.currentTimeMillis());
+        if (due.isEmpty()) {
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> expired = new ArrayList<>();
+        for (SessionCache.Entry e : due) {
+            LocalDateTime activity = e.activity;
+            LocalDateTime pending = activityWriter.pendingActivity(e.sessionId);
+            if (pending != null && pending.isAfter(activity)) {
+                activity = pending;
+            }
+            if (now.isBefore(activity.plusMinutes(sessionTimeout))) {
+                schedule(e);
+            } else {
+                sessionCache.invalidate(e);
+                expired.add(e.sessionId);
+            }
+        }
+        deleteExpired(expired, now.minusMinutes(sessionTimeout));
+    }
+
+    /**
+     * Подчищает сессии, которых нет в колесе таймеров (оставшиеся после перезапуска и т.п.)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${private.session-purge-interval:600000}",
+            initialDelayString = "${private.session-purge-interval:600000}")
+    public void purge() {
+        activityWriter.flush();
+        sessionRepository.deleteAllExpired(LocalDateTime.now().minusMinutes(sessionTimeout));
+    }
+
+    private void deleteExpired(List<Long> ids, LocalDateTime cutoff) {
+        for (int i = 0; i < ids.size(); i += DELETE_CHUNK) {
+            sessionRepository.deleteExpired(ids.subList(i, Math.min(ids.size(), i + DELETE_CHUNK)), cutoff);
+        }
+    }
+
+    private void schedule(SessionCache.Entry e) {
+        long deadline = e.activity.plusMinutes(sessionTimeout)
+                .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        wheel.schedule(e, deadline);
+    }
+
+    static String hash(String token) {
+        return new String(Hex.encode(SHA256.get().digest(token.getBytes(StandardCharsets.UTF_8))));
+    }
+}
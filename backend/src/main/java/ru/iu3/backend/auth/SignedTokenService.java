@@ -0,0 +1,181 @@
+package ru.iu3.backend.auth;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.web.authentication.www.NonceExpiredException;
+import org.springframework.stereotype.Component;
+import ru.iu3.backend.models.User;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Подписанные токены без состояния (режим private.token-mode=signed).
+ * Токен - это base64url(userId:issuedAt:expiresAt:login) + "." + base64url(HMAC-SHA256),
+ * поэтому проверка идёт только на процессоре, без таблиц users/sessions.
+ * Выход из системы заносит токен в RevocationList до истечения его срока.
+ * Части токена принимаются только в том написании, в каком их выдаёт issue (base64url без '='):
+ * иначе, дописав '=' или поменяв неиспользуемые младшие биты последнего символа, можно было бы
+ * получить другую строку с той же подписью и обойти отзыв.
+ */
+@Component
+public class SignedTokenService {
+
+    /**
+     * Содержимое проверенного токена
+     */
+    public static class Claims {
+        public final long userId;
+        public final String login;
+        public final long issuedAt;
+        public final long expiresAt;
+
+        Claims(long userId, String login, long issuedAt, long expiresAt) {
+            this.userId = userId;
+            this.login = login;
+            this.issuedAt = issuedAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    @Autowired
+    RevocationList revocationList;
+
+    @Value("${private.token-mode:session}")
+    private String tokenMode;
+
+    // Ключ в base64. Если не задан, генерируется при старте (годится только для одного узла)
+    @Value("${private.signed-token.secret:}")
+    private String secret;
+
+    // Время жизни токена в минутах
+    @Value("${private.signed-token.lifetime:60}")
+    private int lifetime;
+
+    private SecretKeySpec key;
+
+    private final ThreadLocal<Mac> mac = ThreadLocal.withInitial(() -> {
+        try {
+            Mac m = Mac.getInstance("HmacSHA256");
+            m.init(key);
+            return m;
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    });
+
+    @PostConstruct
+    void init() {
+        byte[] k;
+        if (secret == null || secret.isEmpty()) {
+            k = new byte[32];
+            new SecureRandom().nextBytes(k);
+        } else {
+            k = Base64.getDecoder().decode(secret);
+        }
+        key = new SecretKeySpec(k, "HmacSHA256");
+    }
+
+    public boolean isEnabled() {
+        return "signed".equalsIgnoreCase(tokenMode);
+    }
+
+    public String issue(User user) {
+        long now = System.currentTimeMillis();
+        String payload = user.id + ":" + now + ":" + (now + lifetime * 60_000L) + ":" + user.login;
+        byte[] p = payload.getBytes(StandardCharsets.UTF_8);
+        Base64.Encoder enc = Base64.getUrlEncoder().withoutPadding();
+        return enc.encodeToString(p) + "." + enc.encodeToString(mac.get().doFinal(p));
+    }
+
+    /**
+     * Проверяет подпись, срок действия и отзыв токена
+     *
+     * @throws BadCredentialsException - подпись не сходится или токен отозван
+     * @throws NonceExpiredException   - срок действия токена истёк
+     */
+    public Claims verify(String token) {
+        int dot = token == null ? -1 : token.indexOf('.');
+        if (dot <= 0) {
+            throw new BadCredentialsException("malformed token");
+        }
+        byte[] p = decodeCanonical(token.substring(0, dot));
+        byte[] signature = decodeCanonical(token.substring(dot + 1));
+        if (!MessageDigest.isEqual(mac.get().doFinal(p), signature)) {
+            throw new BadCredentialsException("bad token signature");
+        }
+
+        Claims c = parse(new String(p, StandardCharsets.UTF_8));
+        if (System.currentTimeMillis() >= c.expiresAt) {
+            throw new NonceExpiredException("session is expired");
+        }
+        if (revocationList.isRevoked(signature, c.userId, c.issuedAt)) {
+            throw new BadCredentialsException("token is revoked");
+        }
+        return c;
+    }
+
+    /**
+     * Отзывает токен (выход пользователя)
+     *
+     * @return - true, если токен был действителен
+     */
+    public boolean revoke(String token) {
+        Claims c;
+        try {
+            c = verify(token);
+        } catch (RuntimeException ex) {
+            return false;
+        }
+        String signature = token.substring(token.indexOf('.') + 1);
+        revocationList.revoke(Base64.getUrlDecoder().decode(signature), c.expiresAt);
+        return true;
+    }
+
+    /**
+     * Отзывает все выданные пользователю токены (удаление пользователя, смена пароля)
+     */
+    public void revokeUser(long userId) {
+        revocationList.revokeUser(userId, System.currentTimeMillis());
+    }
+
+    @Scheduled(fixedDelayString = "${private.session-purge-interval:600000}")
+    public void purge() {
+        revocationList.purge(System.currentTimeMillis(), lifetime * 60_000L);
+    }
+
+    // Декодирует часть токена и проверяет, что она записана ровно так, как её закодировал бы issue
+    private static byte[] decodeCanonical(String part) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(part);
+        } catch (IllegalArgumentException ex) {
+            throw new BadCredentialsException("malformed token");
+        }
+        if (!Base64.getUrlEncoder().withoutPadding().encodeToString(bytes).equals(part)) {
+            throw new BadCredentialsException("malformed token");
+        }
+        return bytes;
+    }
+
+    private static Claims parse(String payload) {
+        String[] parts = payload.split(":", 4);
+        if (parts.length != 4) {
+            throw new BadCredentialsException("malformed token");
+        }
+        try {
+            return new Claims(Long.parseLong(parts[0]), parts[3],
+                    Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+        } catch (NumberFormatException ex) {
+            throw new BadCredentialsException("malformed token");
+        }
+    }
+}
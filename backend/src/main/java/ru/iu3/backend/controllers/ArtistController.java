@@ -2,21 +2,49 @@ package ru.iu3.backend.controllers;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.server.ResponseStatusException;
 import ru.iu3.backend.models.Artist;
+import ru.iu3.backend.models.Country;
+import ru.iu3.backend.models.Painting;
 import ru.iu3.backend.repositories.ArtistRepository;
+import ru.iu3.backend.repositories.ArtistView;
+import ru.iu3.backend.repositories.CountryRepository;
+import ru.iu3.backend.repositories.PaintingRepository;
+import ru.iu3.backend.repositories.PaintingView;
+import ru.iu3.backend.tools.BulkDeleter;
+import ru.iu3.backend.tools.BulkImporter;
+import ru.iu3.backend.tools.CatalogStatistics;
+import ru.iu3.backend.tools.Cursor;
+import ru.iu3.backend.tools.CursorPage;
 import ru.iu3.backend.tools.DataValidationException;
+import ru.iu3.backend.tools.EntityCounters;
+import ru.iu3.backend.tools.NdjsonExporter;
+import ru.iu3.backend.tools.ReferenceCache;
+import ru.iu3.backend.tools.ResponseCache;
+import ru.iu3.backend.tools.SearchIndex;
+import ru.iu3.backend.tools.TableVersions;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @CrossOrigin(origins = "http://localhost:3000")
 @RestController
@@ -25,15 +53,243 @@ public class ArtistController {
     @Autowired
     ArtistRepository artistRepository;
 
+    @Autowired
+    EntityCounters entityCounters;
+
+    @Autowired
+    NdjsonExporter ndjsonExporter;
+
+    @Autowired
+    CountryRepository countryRepository;
+
+    @Autowired
+    BulkImporter bulkImporter;
+
+    @Autowired
+    BulkDeleter bulkDeleter;
+
+    @Autowired
+    PaintingRepository paintingRepository;
+
+    @Autowired
+    ReferenceCache referenceCache;
+
+    @Autowired
+    TableVersions tableVersions;
+
+    @Autowired
+    ResponseCache responseCache;
+
+    @Autowired
+    SearchIndex searchIndex;
+
+    @Autowired
+    CatalogStatistics catalogStatistics;
+
+    private static final Sort PAINTINGS_ORDER = Sort.by(Sort.Direction.ASC, "name", "id");
+
     @GetMapping("/artists")
-    public Page getAllArtists(@RequestParam("page") int page, @RequestParam("limit") int limit) {
-        return artistRepository.findAll(
-                PageRequest.of(page, limit, Sort.by(Sort.Direction.ASC, "name")));
+    public ResponseEntity<byte[]> getAllArtists(@RequestParam("page") int page, @RequestParam("limit") int limit,
+                                                ServletWebRequest request) {
+        if (tableVersions.notModified(request, Artist.class, Country.class)) {
+            return null;
+        }
+        // Готовый JSON из кэша, пока таблицы не менялись
+        String key = "artists?page=" + page + "&limit=" + limit;
+        return responseCache.get(request, key, tableVersions.tag(Artist.class, Country.class), () -> {
+            Pageable pageable = PageRequest.of(page, limit, Sort.by(Sort.Direction.ASC, "name"));
+            // Общее количество берём из счётчика, а не отдельным select count(*)
+            Slice<ArtistView> slice = artistRepository.findAllViews(pageable);
+            return new PageImpl<>(slice.getContent(), pageable, entityCounters.get(Artist.class));
+        });
+    }
+
+    /**
+     * Список художников без общего количества (count=false): только содержимое страницы и признак,
+     * есть ли следующая
+     *
+     * @param page  - номер страницы
+     * @param limit - размер страницы
+     * @return - срез списка
+     */
+    @GetMapping(value = "/artists", params = {"count=false", "!after"})
+    public ResponseEntity<byte[]> getArtistsSlice(@RequestParam("page") int page, @RequestParam("limit") int limit,
+                                                  ServletWebRequest request) {
+        if (tableVersions.notModified(request, Artist.class, Country.class)) {
+            return null;
+        }
+        String key = "artists?count=false&page=" + page + "&limit=" + limit;
+        return responseCache.get(request, key, tableVersions.tag(Artist.class, Country.class),
+                () -> artistRepository.findAllViews(PageRequest.of(page, limit, Sort.by(Sort.Direction.ASC, "name"))));
+    }
+
+    /**
+     * Список художников по курсору: страница начинается сразу после пары (name, id) из after,
+     * поэтому глубокие страницы обходятся так же дёшево, как первая
+     *
+     * @param after - курсор из поля next предыдущей страницы, пустой - с начала списка
+     * @param limit - размер страницы
+     * @return - страница и курсор следующей
+     */
+    @GetMapping(value = "/artists", params = "after")
+    public CursorPage<ArtistView> getArtistsAfter(@RequestParam("after") String after,
+                                                  @RequestParam("limit") int limit,
+                                                  ServletWebRequest request)
+            throws DataValidationException {
+        if (tableVersions.notModified(request, Artist.class, Country.class)) {
+            return null;
+        }
+        Cursor.checkLimit(limit);
+        Cursor cursor = Cursor.decode(after);
+        Pageable rowsWanted = PageRequest.of(0, limit + 1);
+        List<ArtistView> rows = cursor == null
+                ? artistRepository.findFirstViewsByKey(rowsWanted)
+                : artistRepository.findViewsAfterKey(cursor.name, cursor.id, rowsWanted);
+        return CursorPage.of(rows, limit, a -> Cursor.encode(a.name(), a.id()));
+    }
+
+    /**
+     * Выгрузка всех художников одним ответом в формате NDJSON, вместо обхода по страницам
+     */
+    @GetMapping("/artists/export")
+    public void exportArtists(HttpServletResponse response) {
+        ndjsonExporter.export(response, "artists", artistRepository::streamExport);
+    }
+
+    /**
+     * Картины художника постранично, в порядке названия. Выбираются по внешнему ключу artistid
+     * (индекс (artistid, name, id)), без загрузки самой записи и всей коллекции картин.
+     * Общее количество считается отдельным запросом, только если на странице его не узнать
+     *
+     * @param artistID - ID художника
+     * @param page  - номер страницы
+     * @param limit - размер страницы
+     * @return - страница картин
+     */
+    @GetMapping("/artists/{id}/paintings")
+    public Page<PaintingView> getArtistPaintings(@PathVariable(value = "id") Long artistID,
+                                              @RequestParam(value = "page", defaultValue = "0") int page,
+                                              @RequestParam(value = "limit", defaultValue = "100") int limit,
+                                              ServletWebRequest request)
+            throws DataValidationException {
+        if (tableVersions.notModified(request, Painting.class)) {
+            return null;
+        }
+        Cursor.checkLimit(limit);
+        Pageable pageable = PageRequest.of(page, limit, PAINTINGS_ORDER);
+        Slice<PaintingView> slice = paintingRepository.findViewsByArtist(artistID, pageable);
+        return PageableExecutionUtils.getPage(slice.getContent(), pageable,
+                () -> paintingRepository.countByArtist(artistID));
+    }
+
+    /**
+     * Картины художника без общего количества (count=false)
+     */
+    @GetMapping(value = "/artists/{id}/paintings", params = {"count=false", "!after"})
+    public Slice<PaintingView> getArtistPaintingsSlice(@PathVariable(value = "id") Long artistID,
+                                                    @RequestParam(value = "page", defaultValue = "0") int page,
+                                                    @RequestParam(value = "limit", defaultValue = "100") int limit,
+                                                    ServletWebRequest request)
+            throws DataValidationException {
+        if (tableVersions.notModified(request, Painting.class)) {
+            return null;
+        }
+        Cursor.checkLimit(limit);
+        return paintingRepository.findViewsByArtist(artistID, PageRequest.of(page, limit, PAINTINGS_ORDER));
+    }
+
+    /**
+     * Картины художника по курсору: страница начинается сразу после пары (name, id) из after
+     *
+     * @param after - курсор из поля next предыдущей страницы, пустой - с начала списка
+     * @param limit - размер страницы
+     * @return - страница и курсор следующей
+     */
+    @GetMapping(value = "/artists/{id}/paintings", params = "after")
+    public CursorPage<PaintingView> getArtistPaintingsAfter(
+            @PathVariable(value = "id") Long artistID, @RequestParam("after") String after,
+            @RequestParam(value = "limit", defaultValue = "100") int limit, ServletWebRequest request)
+            throws DataValidationException {
+        if (tableVersions.notModified(request, Painting.class)) {
+            return null;
+        }
+        Cursor.checkLimit(limit);
+        Cursor cursor = Cursor.decode(after);
+        Pageable rowsWanted = PageRequest.of(0, limit + 1);
+        List<PaintingView> rows = cursor == null
+                ? paintingRepository.findFirstViewsByArtist(artistID, rowsWanted)
+                : paintingRepository.findViewsAfterKeyByArtist(artistID, cursor.name, cursor.id, rowsWanted);
+        return CursorPage.of(rows, limit, p -> Cursor.encode(p.name(), p.id()));
+    }
+
+    /**
+     * Массовая загрузка художников из CSV или NDJSON (формат выгрузки тоже подходит).
+     * Поля: name, age, countryId
+     *
+     * @return - отчёт о загрузке с ошибками по строкам
+     */
+    @PostMapping(value = "/artists/import", consumes = {BulkImporter.CSV, NdjsonExporter.CONTENT_TYPE})
+    public BulkImporter.Report importArtists(InputStream body,
+                                             @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType)
+            throws DataValidationException, IOException {
+        Set<String> seen = new HashSet<>();
+        return bulkImporter.run(body, contentType, Artist.class, fields -> {
+            Artist artist = new Artist();
+            artist.name = BulkImporter.text(fields, "name", 255);
+            artist.age = BulkImporter.text(fields, "age", 255);
+            Long countryId = BulkImporter.reference(fields, "countryId", "country.id");
+            if (countryId != null) {
+                artist.country = new Country(countryId);
+            }
+            return artist;
+        }, new BulkImporter.RowChecker<>() {
+            @Override
+            public void check(List<BulkImporter.Row<Artist>> rows) {
+                checkArtists(rows, seen);
+            }
+
+            @Override
+            public void committed(List<BulkImporter.Row<Artist>> rows) {
+                for (BulkImporter.Row<Artist> r : rows) {
+                    seen.add(r.value.name);
+                }
+            }
+        }, artistRepository);
+    }
+
+    // seen - имена из уже сохранённых пачек файла, пополняется только после фиксации пачки
+    private void checkArtists(List<BulkImporter.Row<Artist>> rows, Set<String> seen) {
+        Set<String> inChunk = new HashSet<>();
+        Set<String> names = new HashSet<>();
+        Set<Long> countryIds = new HashSet<>();
+        for (BulkImporter.Row<Artist> r : rows) {
+            names.add(r.value.name);
+            if (r.value.country != null) {
+                countryIds.add(r.value.country.id);
+            }
+        }
+        Set<String> existing = artistRepository.findExistingNames(names);
+        Set<Long> countries = countryIds.isEmpty() ? countryIds : countryRepository.findExistingIds(countryIds);
+        for (BulkImporter.Row<Artist> r : rows) {
+            if (r.value.country != null && !countries.contains(r.value.country.id)) {
+                r.reject("Нет страны с id " + r.value.country.id);
+            } else if (existing.contains(r.value.name)) {
+                r.reject("Этот художник уже есть в базе");
+            } else if (seen.contains(r.value.name) || !inChunk.add(r.value.name)) {
+                r.reject("Художник повторяется в файле");
+            }
+        }
     }
 
     @GetMapping("/artists/{id}")
-    public ResponseEntity getArtist(@PathVariable(value = "id") Long artistId) throws DataValidationException {
-        Artist artists = artistRepository.findById(artistId).
+    public ResponseEntity<ArtistView> getArtist(@PathVariable(value = "id") Long artistId,
+                                                ServletWebRequest request)
+            throws DataValidationException {
+        if (tableVersions.entityNotModified(request, Artist.class, artistId, referenceCache.artists().tags()
+                .get(artistId, artistRepository::findVersionTag))) {
+            return null;
+        }
+        ArtistView artists = referenceCache.artists().get(artistId, artistRepository::findViewById).
                 orElseThrow(() -> new DataValidationException("Художник с таким индексом не найден"));
         return ResponseEntity.ok(artists);
     }
@@ -44,6 +300,10 @@ public class ArtistController {
         try {
             // Попытка сохранить что-либо в базу данных
             Artist newArtists = artistRepository.save(artist);
+            entityCounters.increment(Artist.class);
+            tableVersions.bump(Artist.class);
+            searchIndex.put(newArtists);
+            catalogStatistics.added(newArtists);
             return new ResponseEntity<Object>(newArtists, HttpStatus.OK);
         } catch (Exception exception) {
             if (exception.getMessage().contains("artists_name_key")) {
@@ -63,6 +323,10 @@ public class ArtistController {
             artist = cc.get();
             artist.name = artistDetails.name;
             artistRepository.save(artist);
+            tableVersions.bump(Artist.class);
+            searchIndex.put(artist);
+            catalogStatistics.artistChanged(artistId, artist.country != null ? artist.country.id : null);
+            referenceCache.artists().invalidate(artistId);
             return ResponseEntity.ok(artist);
         } else {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "artist not found");
@@ -75,6 +339,11 @@ public class ArtistController {
         Map<String, Boolean> response = new HashMap<>();
         if (artist.isPresent()) {
             artistRepository.delete(artist.get());
+            referenceCache.artists().invalidate(artistId);
+            entityCounters.decrement(Artist.class);
+            tableVersions.bump(Artist.class);
+            searchIndex.remove(SearchIndex.Type.ARTIST, artistId);
+            catalogStatistics.artistRemoved(artistId);
             response.put("deleted", Boolean.TRUE);
         } else {
             response.put("deleted", Boolean.FALSE);
@@ -83,8 +352,16 @@ public class ArtistController {
     }
 
     @PostMapping("/deleteartists")
-    public ResponseEntity deleteArtists(@Valid @RequestBody List artists) {
-        artistRepository.deleteAll(artists);
-        return new ResponseEntity(HttpStatus.OK);
+    public ResponseEntity<Object> deleteArtists(@Valid @RequestBody List<Artist> artists)
+            throws DataValidationException {
+        List<Long> deleted = bulkDeleter.delete("artists", BulkDeleter.ids(artists, a -> a.id));
+        referenceCache.artists().invalidate(deleted);
+        tableVersions.bump(Artist.class);
+        searchIndex.remove(SearchIndex.Type.ARTIST, deleted);
+        catalogStatistics.artistsRemoved(deleted);
+        entityCounters.add(Artist.class, -deleted.size());
+        Map<String, Object> resp = new HashMap<>();
+        resp.put("deleted", deleted);
+        return ResponseEntity.ok(resp);
     }
 }
\ No newline at end of file
@@ -2,17 +2,31 @@ package ru.iu3.backend.controllers;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.server.ResponseStatusException;
 import ru.iu3.backend.models.Artist;
 import ru.iu3.backend.models.Country;
 import ru.iu3.backend.repositories.CountryRepository;
+import ru.iu3.backend.repositories.CountryView;
+import ru.iu3.backend.tools.BulkDeleter;
+import ru.iu3.backend.tools.Cursor;
+import ru.iu3.backend.tools.CursorPage;
 import ru.iu3.backend.tools.DataValidationException;
+import ru.iu3.backend.tools.EntityCounters;
+import ru.iu3.backend.tools.NdjsonExporter;
+import ru.iu3.backend.tools.ReferenceCache;
+import ru.iu3.backend.tools.ResponseCache;
+import ru.iu3.backend.tools.TableVersions;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import java.util.*;
 
@@ -23,17 +37,102 @@ public class CountryController {
     @Autowired
     CountryRepository countryRepository;
 
+    @Autowired
+    EntityCounters entityCounters;
+
+    @Autowired
+    NdjsonExporter ndjsonExporter;
+
+    @Autowired
+    BulkDeleter bulkDeleter;
+
+    @Autowired
+    ReferenceCache referenceCache;
+
+    @Autowired
+    TableVersions tableVersions;
+
+    @Autowired
+    ResponseCache responseCache;
+
     @GetMapping("/countries")
-    public Page<Country> getAllCountries(@RequestParam("page") int page, @RequestParam("limit") int limit) {
-        return countryRepository.findAll(
-                PageRequest.of(page, limit, Sort.by(Sort.Direction.ASC, "name")));
+    public ResponseEntity<byte[]> getAllCountries(@RequestParam("page") int page, @RequestParam("limit") int limit,
+                                                  ServletWebRequest request) {
+        if (tableVersions.notModified(request, Country.class)) {
+            return null;
+        }
+        // Готовый JSON из кэша, пока таблицы не менялись
+        String key = "countries?page=" + page + "&limit=" + limit;
+        return responseCache.get(request, key, tableVersions.tag(Country.class), () -> {
+            Pageable pageable = PageRequest.of(page, limit, Sort.by(Sort.Direction.ASC, "name"));
+            // Общее количество берём из счётчика, а не отдельным select count(*)
+            Slice<CountryView> slice = countryRepository.findAllViews(pageable);
+            return new PageImpl<>(slice.getContent(), pageable, entityCounters.get(Country.class));
+        });
+    }
+
+    /**
+     * Список стран без общего количества (count=false): только содержимое страницы и признак,
+     * есть ли следующая
+     *
+     * @param page  - номер страницы
+     * @param limit - размер страницы
+     * @return - срез списка
+     */
+    @GetMapping(value = "/countries", params = {"count=false", "!after"})
+    public ResponseEntity<byte[]> getCountriesSlice(@RequestParam("page") int page, @RequestParam("limit") int limit,
+                                                    ServletWebRequest request) {
+        if (tableVersions.notModified(request, Country.class)) {
+            return null;
+        }
+        String key = "countries?count=false&page=" + page + "&limit=" + limit;
+        return responseCache.get(request, key, tableVersions.tag(Country.class),
+                () -> countryRepository.findAllViews(PageRequest.of(page, limit, Sort.by(Sort.Direction.ASC, "name"))));
+    }
+
+    /**
+     * Список стран по курсору: страница начинается сразу после пары (name, id) из after,
+     * поэтому глубокие страницы обходятся так же дёшево, как первая
+     *
+     * @param after - курсор из поля next предыдущей страницы, пустой - с начала списка
+     * @param limit - размер страницы
+     * @return - страница и курсор следующей
+     */
+    @GetMapping(value = "/countries", params = "after")
+    public CursorPage<CountryView> getCountriesAfter(@RequestParam("after") String after,
+                                                     @RequestParam("limit") int limit,
+                                                     ServletWebRequest request)
+            throws DataValidationException {
+        if (tableVersions.notModified(request, Country.class)) {
+            return null;
+        }
+        Cursor.checkLimit(limit);
+        Cursor cursor = Cursor.decode(after);
+        Pageable rowsWanted = PageRequest.of(0, limit + 1);
+        List<CountryView> rows = cursor == null
+                ? countryRepository.findFirstViewsByKey(rowsWanted)
+                : countryRepository.findViewsAfterKey(cursor.name, cursor.id, rowsWanted);
+        return CursorPage.of(rows, limit, c -> Cursor.encode(c.name(), c.id()));
     }
 
 
+    /**
+     * Выгрузка всех стран одним ответом в формате NDJSON, вместо обхода по страницам
+     */
+    @GetMapping("/countries/export")
+    public void exportCountries(HttpServletResponse response) {
+        ndjsonExporter.export(response, "countries", countryRepository::streamExport);
+    }
+
     @GetMapping("/countries/{id}")
-    public ResponseEntity<Country> getCountry(@PathVariable(value = "id") Long countryId)
+    public ResponseEntity<CountryView> getCountry(@PathVariable(value = "id") Long countryId,
+                                                  ServletWebRequest request)
             throws DataValidationException {
-        Country country = countryRepository.findById(countryId).
+        if (tableVersions.entityNotModified(request, Country.class, countryId, referenceCache.countries().tags()
+                .get(countryId, countryRepository::findVersionTag))) {
+            return null;
+        }
+        CountryView country = referenceCache.countries().get(countryId, countryRepository::findViewById).
                 orElseThrow(() -> new DataValidationException("Not founding"));
 
         return ResponseEntity.ok(country);
@@ -43,6 +142,8 @@ public class CountryController {
     public ResponseEntity<Object> createCountry(@Valid @RequestBody Country country) throws DataValidationException {
         try {
             Country nc = countryRepository.save(country);
+            entityCounters.increment(Country.class);
+            tableVersions.bump(Country.class);
             return new ResponseEntity<>(nc, HttpStatus.OK);
         } catch (Exception ex) {
             if (ex.getMessage().contains("countries_name_key"))
@@ -61,6 +162,10 @@ public class CountryController {
                     .orElseThrow(() -> new DataValidationException("Страна с таким индексом не найдена"));
             country.name = countryDetails.name;
             countryRepository.save(country);
+            tableVersions.bump(Country.class);
+            // Название страны хранится и в кэшированных художниках
+            referenceCache.countries().invalidate(countryId);
+            referenceCache.artists().clear();
             return ResponseEntity.ok(country);
         } catch (Exception ex) {
             if (ex.getMessage().contains("countries_name_key"))
@@ -71,8 +176,14 @@ public class CountryController {
     }
 
     @PostMapping("/deletecountries")
-    public ResponseEntity deleteCountries(@Valid @RequestBody List<Country> countries) {
-        countryRepository.deleteAll(countries);
-        return new ResponseEntity(HttpStatus.OK);
+    public ResponseEntity<Object> deleteCountries(@Valid @RequestBody List<Country> countries)
+            throws DataValidationException {
+        List<Long> deleted = bulkDeleter.delete("countries", BulkDeleter.ids(countries, c -> c.id));
+        referenceCache.countries().invalidate(deleted);
+        tableVersions.bump(Country.class);
+        entityCounters.add(Country.class, -deleted.size());
+        Map<String, Object> resp = new HashMap<>();
+        resp.put("deleted", deleted);
+        return ResponseEntity.ok(resp);
     }
 }
\ No newline at end of file
@@ -5,15 +5,18 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import ru.iu3.backend.auth.LoginAttemptLimiter;
+import ru.iu3.backend.auth.SessionStore;
+import ru.iu3.backend.auth.SignedTokenService;
 import ru.iu3.backend.models.User;
 import ru.iu3.backend.repositories.UserRepository;
-import ru.iu3.backend.tools.Utils;
+import ru.iu3.backend.tools.PasswordHasher;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import java.time.LocalDateTime;
 import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
 
 @CrossOrigin(origins = "http://localhost:3000")
 @RestController
@@ -22,23 +25,46 @@ public class LoginController {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private SessionStore sessionStore;
+
+    @Autowired
+    private PasswordHasher passwordHasher;
+
+    @Autowired
+    private LoginAttemptLimiter loginAttemptLimiter;
+
+    @Autowired
+    private SignedTokenService signedTokenService;
+
     @PostMapping("/login")
-    public ResponseEntity<Object> login(@Valid @RequestBody Map<String, String> credentials) {
+    public ResponseEntity<Object> login(@Valid @RequestBody Map<String, String> credentials,
+                                        HttpServletRequest request) {
         String login = credentials.get("login");
         String pwd = credentials.get("password");
+        // Лишние попытки отбиваем до обращения к БД и подсчёта хэша; удачная попытка жетоны вернёт
+        if (!loginAttemptLimiter.tryAcquire(login, request.getRemoteAddr())) {
+            return new ResponseEntity<Object>(HttpStatus.TOO_MANY_REQUESTS);
+        }
         if (!pwd.isEmpty() && !login.isEmpty()) {
             Optional<User> uu = userRepository.findByLogin(login);
             if (uu.isPresent()) {
                 User u2 = uu.get();
-                String hash1 = u2.password;
-                String salt = u2.salt;
-                String hash2 = Utils.computeHash(pwd, salt);
-                if (hash1.toLowerCase().equals(hash2.toLowerCase())) {
-                    String token = UUID.randomUUID().toString();
-                    u2.token = token;
+                if (passwordHasher.verify(pwd, u2.password, u2.salt)) {
+                    loginAttemptLimiter.succeeded(login, request.getRemoteAddr());
+                    // Пароль в устаревшем формате пересчитываем, пока он у нас в открытом виде
+                    if (passwordHasher.needsRehash(u2.password)) {
+                        PasswordHasher.Hash h = passwordHasher.hash(pwd);
+                        u2.password = h.password;
+                        u2.salt = h.salt;
+                        userRepository.save(u2);
+                    }
+                    // Каждый вход открывает отдельную сессию, предыдущие продолжают действовать
+                    u2.token = signedTokenService.isEnabled()
+                            ? signedTokenService.issue(u2)
+                            : sessionStore.open(u2);
                     u2.activity = LocalDateTime.now();
-                    User u3 = userRepository.saveAndFlush(u2);
-                    return new ResponseEntity<Object>(u3, HttpStatus.OK);
+                    return new ResponseEntity<Object>(u2, HttpStatus.OK);
                 }
             }
         }
@@ -49,11 +75,10 @@ public class LoginController {
     public ResponseEntity logout(@RequestHeader(value = "Authorization", required = false) String token) {
         if (token != null && !token.isEmpty()) {
             token = StringUtils.removeStart(token, "Bearer").trim();
-            Optional<User> uu = userRepository.findByToken(token);
-            if (uu.isPresent()) {
-                User u = uu.get();
-                u.token = null;
-                userRepository.save(u);
+            boolean closed = signedTokenService.isEnabled()
+                    ? signedTokenService.revoke(token)
+                    : sessionStore.close(token);
+            if (closed) {
                 return new ResponseEntity(HttpStatus.OK);
             }
         }
@@ -0,0 +1,21 @@
+package ru.iu3.backend.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.iu3.backend.tools.Metrics;
+
+/**
+ * Метрики в текстовом формате Prometheus. Путь вне /api, потому что сборщик метрик ходит без токена
+ * входа: доступ к /metrics нужно ограничивать на уровне сети (прокси, firewall)
+ */
+@RestController
+public class MetricsController {
+    @Autowired
+    Metrics metrics;
+
+    @GetMapping(value = "/metrics", produces = Metrics.CONTENT_TYPE)
+    public String getMetrics() {
+        return metrics.scrape();
+    }
+}
@@ -0,0 +1,145 @@
+package ru.iu3.backend.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.iu3.backend.auth.LoginAttemptLimiter;
+import ru.iu3.backend.auth.SessionCache;
+import ru.iu3.backend.tools.CatalogStatistics;
+import ru.iu3.backend.tools.EntityCounters;
+import ru.iu3.backend.tools.ExchangeLog;
+import ru.iu3.backend.tools.Metrics;
+import ru.iu3.backend.tools.ReferenceCache;
+import ru.iu3.backend.tools.ResponseCache;
+import ru.iu3.backend.tools.SearchIndex;
+
+import java.util.Map;
+
+/**
+ * Служебные сведения о работе бэкенда (состояние кэшей и т.п.)
+ */
+@CrossOrigin(origins = "http://localhost:3000")
+@RestController
+@RequestMapping("/api/v1/monitoring")
+public class MonitoringController {
+    @Autowired
+    SessionCache sessionCache;
+
+    @Autowired
+    LoginAttemptLimiter loginAttemptLimiter;
+
+    @Autowired
+    EntityCounters entityCounters;
+
+    @Autowired
+    ReferenceCache referenceCache;
+
+    @Autowired
+    ResponseCache responseCache;
+
+    @Autowired
+    SearchIndex searchIndex;
+
+    @Autowired
+    CatalogStatistics catalogStatistics;
+
+    @Autowired
+    Metrics metrics;
+
+    @Autowired
+    ExchangeLog exchangeLog;
+
+    /**
+     * Статистика кэша сессий: размер, попадания, промахи, вытеснения
+     *
+     * @return - счётчики кэша в виде JSON
+     */
+    @GetMapping("/sessioncache")
+    public ResponseEntity<Map<String, Object>> getSessionCacheStatistics() {
+        return ResponseEntity.ok(sessionCache.getStatistics());
+    }
+
+    /**
+     * Счётчики ограничителя попыток входа: пропущенные и отклонённые попытки
+     *
+     * @return - счётчики в виде JSON
+     */
+    @GetMapping("/loginlimiter")
+    public ResponseEntity<Map<String, Object>> getLoginLimiterStatistics() {
+        return ResponseEntity.ok(loginAttemptLimiter.getStatistics());
+    }
+
+    /**
+     * Количество записей в таблицах по счётчикам (то, что отдаётся как totalElements)
+     *
+     * @return - количество записей по сущностям
+     */
+    @GetMapping("/counts")
+    public ResponseEntity<Map<String, Long>> getEntityCounts() {
+        return ResponseEntity.ok(entityCounters.getCounts());
+    }
+
+    /**
+     * Статистика кэша справочников по областям: страны, художники, музеи
+     *
+     * @return - счётчики кэша в виде JSON
+     */
+    @GetMapping("/referencecache")
+    public ResponseEntity<Map<String, Object>> getReferenceCacheStatistics() {
+        return ResponseEntity.ok(referenceCache.getStatistics());
+    }
+
+    /**
+     * Статистика кэша готовых ответов: записи, занятые байты, попадания, устаревшие записи
+     *
+     * @return - счётчики кэша в виде JSON
+     */
+    @GetMapping("/responsecache")
+    public ResponseEntity<Map<String, Object>> getResponseCacheStatistics() {
+        return ResponseEntity.ok(responseCache.getStatistics());
+    }
+
+    /**
+     * Состояние поискового индекса: построен ли, за сколько, число записей и слов
+     *
+     * @return - сведения об индексе в виде JSON
+     */
+    @GetMapping("/search")
+    public ResponseEntity<Map<String, Object>> getSearchIndexStatistics() {
+        return ResponseEntity.ok(searchIndex.getStatistics());
+    }
+
+    /**
+     * Состояние статистики каталога: число групп, время последней сверки с БД и сколько групп тогда разошлись
+     *
+     * @return - сведения о сверке в виде JSON
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> getCatalogStatistics() {
+        return ResponseEntity.ok(catalogStatistics.getStatistics());
+    }
+
+    /**
+     * Перцентили времени ответа по маршрутам, проверки токена, SQL-запросов и ожидания соединения.
+     * Полный набор метрик для Prometheus - /metrics
+     *
+     * @return - p50, p95, p99 и max в миллисекундах
+     */
+    @GetMapping("/latency")
+    public ResponseEntity<Map<String, Object>> getLatencyStatistics() {
+        return ResponseEntity.ok(metrics.getLatencyStatistics());
+    }
+
+    /**
+     * Счётчики журнала HTTP-обменов: записано, пропущено выборкой, выброшено при заполненной очереди
+     *
+     * @return - счётчики в виде JSON
+     */
+    @GetMapping("/httplog")
+    public ResponseEntity<Map<String, Object>> getExchangeLogStatistics() {
+        return ResponseEntity.ok(exchangeLog.getStatistics());
+    }
+}
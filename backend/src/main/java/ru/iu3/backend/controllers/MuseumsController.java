@@ -1,15 +1,22 @@
 package ru.iu3.backend.controllers;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
@@ -20,16 +27,34 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.server.ResponseStatusException;
 import ru.iu3.backend.models.Museum;
 import ru.iu3.backend.models.Country;
 import ru.iu3.backend.models.Painting;
 import ru.iu3.backend.repositories.CountryRepository;
+import ru.iu3.backend.repositories.MembershipRepository;
 import ru.iu3.backend.repositories.MuseumRepository;
+import ru.iu3.backend.repositories.MuseumView;
+import ru.iu3.backend.repositories.PaintingRepository;
+import ru.iu3.backend.repositories.PaintingView;
+import ru.iu3.backend.tools.BulkDeleter;
+import ru.iu3.backend.tools.BulkImporter;
+import ru.iu3.backend.tools.Cursor;
+import ru.iu3.backend.tools.CursorPage;
 import ru.iu3.backend.tools.DataValidationException;
+import ru.iu3.backend.tools.EntityCounters;
+import ru.iu3.backend.tools.NdjsonExporter;
+import ru.iu3.backend.tools.ReferenceCache;
+import ru.iu3.backend.tools.ResponseCache;
+import ru.iu3.backend.tools.SearchIndex;
+import ru.iu3.backend.tools.TableVersions;
+
+import javax.servlet.http.HttpServletResponse;
 
 @CrossOrigin(origins = "http://localhost:3000")
 @RestController
@@ -39,39 +64,232 @@ public class MuseumsController {
     @Autowired
     MuseumRepository museumRepository;
 
+    @Autowired
+    EntityCounters entityCounters;
+
+    @Autowired
+    NdjsonExporter ndjsonExporter;
+
+    @Autowired
+    BulkImporter bulkImporter;
+
+    @Autowired
+    BulkDeleter bulkDeleter;
+
+    @Autowired
+    PaintingRepository paintingRepository;
+
+    @Autowired
+    MembershipRepository membershipRepository;
+
+    @Autowired
+    ReferenceCache referenceCache;
+
+    @Autowired
+    TableVersions tableVersions;
+
+    @Autowired
+    ResponseCache responseCache;
+
+    @Autowired
+    SearchIndex searchIndex;
+
+    private static final Sort PAINTINGS_ORDER = Sort.by(Sort.Direction.ASC, "name", "id");
+
     /**
      * Метод, который выдаёт список музеев
      *
      * @return - список музеев, представленный в формате JSON
      */
     @GetMapping("/museums")
-    public Page<Museum> getAllMuseums(@RequestParam("page") int page, @RequestParam("limit") int limit) {
-        return museumRepository.findAll(PageRequest.of(page, limit, Sort.by(Sort.Direction.ASC, "name")));
+    public ResponseEntity<byte[]> getAllMuseums(@RequestParam("page") int page, @RequestParam("limit") int limit,
+                                                ServletWebRequest request) {
+        if (tableVersions.notModified(request, Museum.class)) {
+            return null;
+        }
+        // Готовый JSON из кэша, пока таблицы не менялись
+        String key = "museums?page=" + page + "&limit=" + limit;
+        return responseCache.get(request, key, tableVersions.tag(Museum.class), () -> {
+            Pageable pageable = PageRequest.of(page, limit, Sort.by(Sort.Direction.ASC, "name"));
+            // Общее количество берём из счётчика, а не отдельным select count(*)
+            Slice<MuseumView> slice = museumRepository.findAllViews(pageable);
+            return new PageImpl<>(slice.getContent(), pageable, entityCounters.get(Museum.class));
+        });
+    }
+
+    /**
+     * Список музеев без общего количества (count=false): только содержимое страницы и признак,
+     * есть ли следующая
+     *
+     * @param page  - номер страницы
+     * @param limit - размер страницы
+     * @return - срез списка
+     */
+    @GetMapping(value = "/museums", params = {"count=false", "!after"})
+    public ResponseEntity<byte[]> getMuseumsSlice(@RequestParam("page") int page, @RequestParam("limit") int limit,
+                                                  ServletWebRequest request) {
+        if (tableVersions.notModified(request, Museum.class)) {
+            return null;
+        }
+        String key = "museums?count=false&page=" + page + "&limit=" + limit;
+        return responseCache.get(request, key, tableVersions.tag(Museum.class),
+                () -> museumRepository.findAllViews(PageRequest.of(page, limit, Sort.by(Sort.Direction.ASC, "name"))));
+    }
+
+    /**
+     * Список музеев по курсору: страница начинается сразу после пары (name, id) из after,
+     * поэтому глубокие страницы обходятся так же дёшево, как первая
+     *
+     * @param after - курсор из поля next предыдущей страницы, пустой - с начала списка
+     * @param limit - размер страницы
+     * @return - страница и курсор следующей
+     */
+    @GetMapping(value = "/museums", params = "after")
+    public CursorPage<MuseumView> getMuseumsAfter(@RequestParam("after") String after,
+                                                  @RequestParam("limit") int limit,
+                                                  ServletWebRequest request)
+            throws DataValidationException {
+        if (tableVersions.notModified(request, Museum.class)) {
+            return null;
+        }
+        Cursor.checkLimit(limit);
+        Cursor cursor = Cursor.decode(after);
+        Pageable rowsWanted = PageRequest.of(0, limit + 1);
+        List<MuseumView> rows = cursor == null
+                ? museumRepository.findFirstViewsByKey(rowsWanted)
+                : museumRepository.findViewsAfterKey(cursor.name, cursor.id, rowsWanted);
+        return CursorPage.of(rows, limit, m -> Cursor.encode(m.name(), m.id()));
+    }
+
+    /**
+     * Выгрузка всех музеев одним ответом в формате NDJSON, вместо обхода по страницам
+     */
+    @GetMapping("/museums/export")
+    public void exportMuseums(HttpServletResponse response) {
+        ndjsonExporter.export(response, "museums", museumRepository::streamExport);
+    }
+
+    /**
+     * Массовая загрузка музеев из CSV или NDJSON. Поля: name, location
+     *
+     * @return - отчёт о загрузке с ошибками по строкам
+     */
+    @PostMapping(value = "/museums/import", consumes = {BulkImporter.CSV, NdjsonExporter.CONTENT_TYPE})
+    public BulkImporter.Report importMuseums(InputStream body,
+                                             @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType)
+            throws DataValidationException, IOException {
+        Set<String> seen = new HashSet<>();
+        return bulkImporter.run(body, contentType, Museum.class, fields -> {
+            Museum museum = new Museum();
+            museum.name = BulkImporter.text(fields, "name", 255);
+            museum.location = BulkImporter.text(fields, "location", 255);
+            return museum;
+        }, new BulkImporter.RowChecker<>() {
+            @Override
+            public void check(List<BulkImporter.Row<Museum>> rows) {
+                Set<String> inChunk = new HashSet<>();
+                Set<String> names = new HashSet<>();
+                for (BulkImporter.Row<Museum> r : rows) {
+                    names.add(r.value.name);
+                }
+                Set<String> existing = museumRepository.findExistingNames(names);
+                for (BulkImporter.Row<Museum> r : rows) {
+                    if (existing.contains(r.value.name)) {
+                        r.reject("Этот музей уже есть в базе");
+                    } else if (seen.contains(r.value.name) || !inChunk.add(r.value.name)) {
+                        r.reject("Музей повторяется в файле");
+                    }
+                }
+            }
+
+            // Имена запоминаются только из сохранённых пачек
+            @Override
+            public void committed(List<BulkImporter.Row<Museum>> rows) {
+                for (BulkImporter.Row<Museum> r : rows) {
+                    seen.add(r.value.name);
+                }
+            }
+        }, museumRepository);
     }
 
     @GetMapping("/museums/{id}")
-    public ResponseEntity<Museum> getMuseum(@PathVariable(value = "id") Long museumID)
+    public ResponseEntity<MuseumView> getMuseum(@PathVariable(value = "id") Long museumID,
+                                                ServletWebRequest request)
             throws DataValidationException {
-        Museum museum = museumRepository.findById(museumID)
+        if (tableVersions.entityNotModified(request, Museum.class, museumID, referenceCache.museums().tags()
+                .get(museumID, museumRepository::findVersionTag))) {
+            return null;
+        }
+        MuseumView museum = referenceCache.museums().get(museumID, museumRepository::findViewById)
                 .orElseThrow(() -> new DataValidationException("Музей не найден"));
 
         return ResponseEntity.ok(museum);
     }
 
     /**
-     * Метод, который осуществляет предоставление доступа к картине из вывода музея
+     * Картины музея постранично, в порядке названия. Выбираются по внешнему ключу museumid
+     * (индекс (museumid, name, id)), без загрузки самой записи и всей коллекции картин.
+     * Общее количество считается отдельным запросом, только если на странице его не узнать
      *
      * @param museumID - ID музея
-     * @return - блок музеев, если таковы есть
+     * @param page  - номер страницы
+     * @param limit - размер страницы
+     * @return - страница картин
      */
     @GetMapping("/museums/{id}/paintings")
-    public ResponseEntity<List<Painting>> getPaintingMuseums(@PathVariable(value = "id") Long museumID) {
-        Optional<Museum> cc = museumRepository.findById(museumID);
-        if (cc.isPresent()) {
-            return ResponseEntity.ok(cc.get().paintings);
+    public Page<PaintingView> getMuseumPaintings(@PathVariable(value = "id") Long museumID,
+                                              @RequestParam(value = "page", defaultValue = "0") int page,
+                                              @RequestParam(value = "limit", defaultValue = "100") int limit,
+                                              ServletWebRequest request)
+            throws DataValidationException {
+        if (tableVersions.notModified(request, Painting.class)) {
+            return null;
+        }
+        Cursor.checkLimit(limit);
+        Pageable pageable = PageRequest.of(page, limit, PAINTINGS_ORDER);
+        Slice<PaintingView> slice = paintingRepository.findViewsByMuseum(museumID, pageable);
+        return PageableExecutionUtils.getPage(slice.getContent(), pageable,
+                () -> paintingRepository.countByMuseum(museumID));
+    }
+
+    /**
+     * Картины музея без общего количества (count=false)
+     */
+    @GetMapping(value = "/museums/{id}/paintings", params = {"count=false", "!after"})
+    public Slice<PaintingView> getMuseumPaintingsSlice(@PathVariable(value = "id") Long museumID,
+                                                    @RequestParam(value = "page", defaultValue = "0") int page,
+                                                    @RequestParam(value = "limit", defaultValue = "100") int limit,
+                                                    ServletWebRequest request)
+            throws DataValidationException {
+        if (tableVersions.notModified(request, Painting.class)) {
+            return null;
         }
+        Cursor.checkLimit(limit);
+        return paintingRepository.findViewsByMuseum(museumID, PageRequest.of(page, limit, PAINTINGS_ORDER));
+    }
 
-        return ResponseEntity.ok(new ArrayList<Painting>());
+    /**
+     * Картины музея по курсору: страница начинается сразу после пары (name, id) из after
+     *
+     * @param after - курсор из поля next предыдущей страницы, пустой - с начала списка
+     * @param limit - размер страницы
+     * @return - страница и курсор следующей
+     */
+    @GetMapping(value = "/museums/{id}/paintings", params = "after")
+    public CursorPage<PaintingView> getMuseumPaintingsAfter(
+            @PathVariable(value = "id") Long museumID, @RequestParam("after") String after,
+            @RequestParam(value = "limit", defaultValue = "100") int limit, ServletWebRequest request)
+            throws DataValidationException {
+        if (tableVersions.notModified(request, Painting.class)) {
+            return null;
+        }
+        Cursor.checkLimit(limit);
+        Cursor cursor = Cursor.decode(after);
+        Pageable rowsWanted = PageRequest.of(0, limit + 1);
+        List<PaintingView> rows = cursor == null
+                ? paintingRepository.findFirstViewsByMuseum(museumID, rowsWanted)
+                : paintingRepository.findViewsAfterKeyByMuseum(museumID, cursor.name, cursor.id, rowsWanted);
+        return CursorPage.of(rows, limit, p -> Cursor.encode(p.name(), p.id()));
     }
 
     /**
@@ -86,6 +304,9 @@ public class MuseumsController {
         try {
             // Попытка сохранить что-либо в базу данных
             Museum newMusem = museumRepository.save(museum);
+            entityCounters.increment(Museum.class);
+            tableVersions.bump(Museum.class);
+            searchIndex.put(newMusem);
             return new ResponseEntity<Object>(newMusem, HttpStatus.OK);
         } catch (Exception exception) {
             if (exception.getMessage().contains("museums_name_key")) {
@@ -114,6 +335,9 @@ public class MuseumsController {
             museum.location = museumDetails.location;
 
             museumRepository.save(museum);
+            tableVersions.bump(Museum.class);
+            searchIndex.put(museum);
+            referenceCache.museums().invalidate(museumID);
             return ResponseEntity.ok(museum);
         } catch (Exception exception) {
             if (exception.getMessage().contains("ConstraintViolationException")) {
@@ -125,9 +349,18 @@ public class MuseumsController {
     }
 
     @PostMapping("/deletemuseums")
-    public ResponseEntity deleteMuseums(@Validated @RequestBody List<Museum> museums) {
-        museumRepository.deleteAll(museums);
-        return new ResponseEntity(HttpStatus.OK);
+    public ResponseEntity<Object> deleteMuseums(@Validated @RequestBody List<Museum> museums)
+            throws DataValidationException {
+        // Подписчики удаляемых музеев получают новую версию: их подписки исчезают вместе с музеями
+        List<Long> deleted = bulkDeleter.delete("museums", BulkDeleter.ids(museums, m -> m.id),
+                membershipRepository::touchMembers, "museums_paintings.museum_id", "usersmuseums.museumid");
+        referenceCache.museums().invalidate(deleted);
+        searchIndex.remove(SearchIndex.Type.MUSEUM, deleted);
+        tableVersions.bump(Museum.class);
+        entityCounters.add(Museum.class, -deleted.size());
+        Map<String, Object> resp = new HashMap<>();
+        resp.put("deleted", deleted);
+        return ResponseEntity.ok(resp);
     }
 
     /**
@@ -137,13 +370,19 @@ public class MuseumsController {
      * @return - возвращает true, если удалено успешно, false - в противном случае
      */
     @DeleteMapping("/museums/{id}")
-    public ResponseEntity<Object> deleteCountry(@PathVariable(value = "id") Long museumID) {
-        Optional<Museum> museum = museumRepository.findById(museumID);
+    public ResponseEntity<Object> deleteCountry(@PathVariable(value = "id") Long museumID)
+            throws DataValidationException {
+        // Так же, как /deletemuseums: вместе с подписками и с новой версией подписчиков
+        List<Long> deleted = bulkDeleter.delete("museums", List.of(museumID), membershipRepository::touchMembers,
+                "museums_paintings.museum_id", "usersmuseums.museumid");
         Map<String, Boolean> resp = new HashMap<>();
 
-        // Возвратит true, если объект существует (не пустой)
-        if (museum.isPresent()) {
-            museumRepository.delete(museum.get());
+        // Возвратит true, если объект существовал
+        if (!deleted.isEmpty()) {
+            referenceCache.museums().invalidate(museumID);
+            entityCounters.decrement(Museum.class);
+            tableVersions.bump(Museum.class);
+            searchIndex.remove(SearchIndex.Type.MUSEUM, museumID);
             resp.put("deleted", Boolean.TRUE);
         } else {
             resp.put("deleted", Boolean.FALSE);
@@ -2,21 +2,59 @@ package ru.iu3.backend.controllers;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import ru.iu3.backend.models.Artist;
+import ru.iu3.backend.models.Country;
+import ru.iu3.backend.models.Museum;
 import ru.iu3.backend.models.Painting;
+import ru.iu3.backend.repositories.ArtistRepository;
+import ru.iu3.backend.repositories.ArtistView;
+import ru.iu3.backend.repositories.CountryRepository;
+import ru.iu3.backend.repositories.CountryView;
+import ru.iu3.backend.repositories.KeyCount;
 import ru.iu3.backend.repositories.MuseumRepository;
+import ru.iu3.backend.repositories.MuseumView;
+import ru.iu3.backend.repositories.PaintingExport;
+import ru.iu3.backend.repositories.PaintingFacets;
+import ru.iu3.backend.repositories.PaintingFilter;
+import ru.iu3.backend.repositories.PaintingFilterRepository;
 import ru.iu3.backend.repositories.PaintingRepository;
+import ru.iu3.backend.repositories.PaintingView;
+import ru.iu3.backend.tools.BulkDeleter;
+import ru.iu3.backend.tools.BulkImporter;
+import ru.iu3.backend.tools.CatalogStatistics;
+import ru.iu3.backend.tools.Cursor;
+import ru.iu3.backend.tools.CursorPage;
 import ru.iu3.backend.tools.DataValidationException;
+import ru.iu3.backend.tools.EntityCounters;
+import ru.iu3.backend.tools.NdjsonExporter;
+import ru.iu3.backend.tools.ReferenceCache;
+import ru.iu3.backend.tools.ResponseCache;
+import ru.iu3.backend.tools.SearchIndex;
+import ru.iu3.backend.tools.TableVersions;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.LongFunction;
 
 @CrossOrigin(origins = "http://localhost:3000")
 @RestController
@@ -26,23 +64,267 @@ public class PaintingController {
     @Autowired
     PaintingRepository paintingRepository;
 
+    @Autowired
+    EntityCounters entityCounters;
+
+    @Autowired
+    NdjsonExporter ndjsonExporter;
+
     @Autowired
     MuseumRepository museumRepository;
 
+    @Autowired
+    ArtistRepository artistRepository;
+
+    @Autowired
+    CountryRepository countryRepository;
+
+    @Autowired
+    PaintingFilterRepository paintingFilterRepository;
+
+    @Autowired
+    BulkImporter bulkImporter;
+
+    @Autowired
+    BulkDeleter bulkDeleter;
+
+    @Autowired
+    ReferenceCache referenceCache;
+
+    @Autowired
+    TableVersions tableVersions;
+
+    @Autowired
+    ResponseCache responseCache;
+
+    @Autowired
+    SearchIndex searchIndex;
+
+    @Autowired
+    CatalogStatistics catalogStatistics;
+
     /**
      * Метод, который возвращает список всех картин, которые есть в базе данных
      *
      * @return - список картин
      */
     @GetMapping("/paintings")
-    public Page<Painting> getAllPaintings(@RequestParam("page") int page, @RequestParam("limit") int limit) {
-        return paintingRepository.findAll(PageRequest.of(page, limit, Sort.by(Sort.Direction.ASC, "name")));
+    public ResponseEntity<byte[]> getAllPaintings(@RequestParam("page") int page, @RequestParam("limit") int limit,
+                                                  ServletWebRequest request) {
+        if (tableVersions.notModified(request, Painting.class)) {
+            return null;
+        }
+        // Готовый JSON из кэша, пока таблицы не менялись
+        String key = "paintings?page=" + page + "&limit=" + limit;
+        return responseCache.get(request, key, tableVersions.tag(Painting.class), () -> {
+            Pageable pageable = PageRequest.of(page, limit, Sort.by(Sort.Direction.ASC, "name"));
+            // Общее количество берём из счётчика, а не отдельным select count(*)
+            Slice<PaintingView> slice = paintingRepository.findAllViews(pageable);
+            return new PageImpl<>(slice.getContent(), pageable, entityCounters.get(Painting.class));
+        });
+    }
+
+    /**
+     * Список картин без общего количества (count=false): только содержимое страницы и признак,
+     * есть ли следующая
+     *
+     * @param page  - номер страницы
+     * @param limit - размер страницы
+     * @return - срез списка
+     */
+    @GetMapping(value = "/paintings", params = {"count=false", "!after"})
+    public ResponseEntity<byte[]> getPaintingsSlice(@RequestParam("page") int page, @RequestParam("limit") int limit,
+                                                    ServletWebRequest request) {
+        if (tableVersions.notModified(request, Painting.class)) {
+            return null;
+        }
+        String key = "paintings?count=false&page=" + page + "&limit=" + limit;
+        return responseCache.get(request, key, tableVersions.tag(Painting.class),
+                () -> paintingRepository.findAllViews(
+                        PageRequest.of(page, limit, Sort.by(Sort.Direction.ASC, "name"))));
+    }
+
+    /**
+     * Список картин по курсору: страница начинается сразу после пары (name, id) из after,
+     * поэтому глубокие страницы обходятся так же дёшево, как первая
+     *
+     * @param after - курсор из поля next предыдущей страницы, пустой - с начала списка
+     * @param limit - размер страницы
+     * @return - страница и курсор следующей
+     */
+    @GetMapping(value = "/paintings", params = "after")
+    public CursorPage<PaintingView> getPaintingsAfter(@RequestParam("after") String after,
+                                                      @RequestParam("limit") int limit,
+                                                      ServletWebRequest request)
+            throws DataValidationException {
+        if (tableVersions.notModified(request, Painting.class)) {
+            return null;
+        }
+        Cursor.checkLimit(limit);
+        Cursor cursor = Cursor.decode(after);
+        Pageable rowsWanted = PageRequest.of(0, limit + 1);
+        List<PaintingView> rows = cursor == null
+                ? paintingRepository.findFirstViewsByKey(rowsWanted)
+                : paintingRepository.findViewsAfterKey(cursor.name, cursor.id, rowsWanted);
+        return CursorPage.of(rows, limit, p -> Cursor.encode(p.name(), p.id()));
+    }
+
+    /**
+     * Картины, отобранные сразу по нескольким условиям: музеи, художники, страны художников
+     * (id повторяющимися параметрами или через запятую) и диапазон лет. Выводятся по курсору
+     * в порядке названия
+     *
+     * @param after - курсор из поля next предыдущей страницы, пустой - с начала списка
+     * @param limit - размер страницы
+     * @return - страница и курсор следующей
+     */
+    @GetMapping("/paintings/filter")
+    public CursorPage<PaintingView> filterPaintings(
+            @RequestParam(value = "museum", required = false) Set<Long> museums,
+            @RequestParam(value = "artist", required = false) Set<Long> artists,
+            @RequestParam(value = "country", required = false) Set<Long> countries,
+            @RequestParam(value = "yearFrom", required = false) Integer yearFrom,
+            @RequestParam(value = "yearTo", required = false) Integer yearTo,
+            @RequestParam(value = "after", defaultValue = "") String after,
+            @RequestParam(value = "limit", defaultValue = "100") int limit,
+            ServletWebRequest request)
+            throws DataValidationException {
+        PaintingFilter filter = filter(museums, artists, countries, yearFrom, yearTo);
+        if (tableVersions.notModified(request, Painting.class, Artist.class)) {
+            return null;
+        }
+        Cursor.checkLimit(limit);
+        Cursor cursor = Cursor.decode(after);
+        List<PaintingView> rows = paintingFilterRepository.findViews(filter, cursor == null ? null : cursor.name,
+                cursor == null ? 0 : cursor.id, limit + 1);
+        return CursorPage.of(rows, limit, p -> Cursor.encode(p.name(), p.id()));
+    }
+
+    /**
+     * Сколько картин, отобранных теми же условиями, что и /paintings/filter, приходится на каждый музей,
+     * художника, страну и десятилетие. Разбивка не учитывает условие по своему полю: выбор музея
+     * не оставляет в разбивке по музеям только его. Все четыре разбивки считаются одним запросом
+     *
+     * @param limit - сколько самых крупных групп вернуть в каждой разбивке (десятилетия выводятся все)
+     * @return - разбивки museums, artists, countries и decades
+     */
+    @GetMapping("/paintings/facets")
+    public Map<String, Object> getPaintingFacets(@RequestParam(value = "museum", required = false) Set<Long> museums,
+                                                 @RequestParam(value = "artist", required = false) Set<Long> artists,
+                                                 @RequestParam(value = "country", required = false) Set<Long> countries,
+                                                 @RequestParam(value = "yearFrom", required = false) Integer yearFrom,
+                                                 @RequestParam(value = "yearTo", required = false) Integer yearTo,
+                                                 @RequestParam(value = "limit", defaultValue = "20") int limit,
+                                                 ServletWebRequest request)
+            throws DataValidationException {
+        PaintingFilter filter = filter(museums, artists, countries, yearFrom, yearTo);
+        // В ответе есть названия музеев и стран, поэтому их изменения тоже меняют ETag
+        if (tableVersions.notModified(request, Painting.class, Artist.class, Museum.class, Country.class)) {
+            return null;
+        }
+        Cursor.checkLimit(limit);
+        PaintingFacets facets = paintingFilterRepository.countFacets(filter);
+        Map<String, Object> resp = new LinkedHashMap<>();
+        resp.put("museums", facetRows(facets.museums(), limit, id -> referenceCache.museums()
+                .get(id, museumRepository::findViewById).map(MuseumView::name).orElse(null)));
+        resp.put("artists", facetRows(facets.artists(), limit, id -> referenceCache.artists()
+                .get(id, artistRepository::findViewById).map(ArtistView::name).orElse(null)));
+        resp.put("countries", facetRows(facets.countries(), limit, id -> referenceCache.countries()
+                .get(id, countryRepository::findViewById).map(CountryView::name).orElse(null)));
+        List<CatalogStatistics.DecadeRow> decades = new ArrayList<>();
+        for (KeyCount kc : facets.decades()) {
+            decades.add(new CatalogStatistics.DecadeRow((int) kc.key(), kc.count()));
+        }
+        resp.put("decades", decades);
+        return resp;
+    }
+
+    private static PaintingFilter filter(Set<Long> museums, Set<Long> artists, Set<Long> countries,
+                                         Integer yearFrom, Integer yearTo) throws DataValidationException {
+        if (yearFrom != null && yearTo != null && yearFrom > yearTo) {
+            throw new DataValidationException("Начало диапазона лет позже конца");
+        }
+        return new PaintingFilter(museums, artists, countries, yearFrom, yearTo);
+    }
+
+    // Группы в том же виде, что и в /api/v1/stats; названия только у попавших в ответ
+    private static List<CatalogStatistics.Row> facetRows(List<KeyCount> groups, int limit, LongFunction<String> names) {
+        List<CatalogStatistics.Row> rows = new ArrayList<>();
+        for (KeyCount kc : groups.subList(0, Math.min(limit, groups.size()))) {
+            rows.add(new CatalogStatistics.Row(kc.key(), names.apply(kc.key()), kc.count()));
+        }
+        return rows;
+    }
+
+    /**
+     * Выгрузка всех картин одним ответом в формате NDJSON, вместо обхода по страницам
+     */
+    @GetMapping("/paintings/export")
+    public void exportPaintings(HttpServletResponse response) {
+        ndjsonExporter.export(response, "paintings", paintingRepository::streamExport);
+    }
+
+    /**
+     * Массовая загрузка картин из CSV или NDJSON (формат выгрузки тоже подходит).
+     * Поля: name, year, artistId, museumId
+     *
+     * @return - отчёт о загрузке с ошибками по строкам
+     */
+    @PostMapping(value = "/paintings/import", consumes = {BulkImporter.CSV, NdjsonExporter.CONTENT_TYPE})
+    public BulkImporter.Report importPaintings(InputStream body,
+                                               @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType)
+            throws DataValidationException, IOException {
+        return bulkImporter.run(body, contentType, Painting.class, PaintingController::parsePainting,
+                this::checkPaintings, paintingRepository);
+    }
+
+    private static Painting parsePainting(Map<String, String> fields) throws DataValidationException {
+        Painting painting = new Painting();
+        painting.name = BulkImporter.text(fields, "name", 45);
+        painting.year = BulkImporter.integer(fields, "year");
+        Long artistId = BulkImporter.reference(fields, "artistId", "artist.id");
+        if (artistId != null) {
+            painting.artist = new Artist(artistId);
+        }
+        Long museumId = BulkImporter.reference(fields, "museumId", "museum.id");
+        if (museumId != null) {
+            painting.museum = new Museum(museumId);
+        }
+        return painting;
+    }
+
+    // Художники и музеи пачки проверяются двумя запросами
+    private void checkPaintings(List<BulkImporter.Row<Painting>> rows) {
+        Set<Long> artistIds = new HashSet<>();
+        Set<Long> museumIds = new HashSet<>();
+        for (BulkImporter.Row<Painting> r : rows) {
+            if (r.value.artist != null) {
+                artistIds.add(r.value.artist.id);
+            }
+            if (r.value.museum != null) {
+                museumIds.add(r.value.museum.id);
+            }
+        }
+        Set<Long> artists = artistIds.isEmpty() ? artistIds : artistRepository.findExistingIds(artistIds);
+        Set<Long> museums = museumIds.isEmpty() ? museumIds : museumRepository.findExistingIds(museumIds);
+        for (BulkImporter.Row<Painting> r : rows) {
+            if (r.value.artist != null && !artists.contains(r.value.artist.id)) {
+                r.reject("Нет художника с id " + r.value.artist.id);
+            } else if (r.value.museum != null && !museums.contains(r.value.museum.id)) {
+                r.reject("Нет музея с id " + r.value.museum.id);
+            }
+        }
     }
 
     @GetMapping("/paintings/{id}")
-    public ResponseEntity<Painting> getPainting(@PathVariable(value = "id") Long paintingID)
+    public ResponseEntity<PaintingView> getPainting(@PathVariable(value = "id") Long paintingID,
+                                                    ServletWebRequest request)
             throws DataValidationException {
-        Painting painting = paintingRepository.findById(paintingID)
+        if (tableVersions.entityNotModified(request, Painting.class, paintingID,
+                paintingRepository.findVersionTag(paintingID))) {
+            return null;
+        }
+        PaintingView painting = paintingRepository.findViewById(paintingID)
                 .orElseThrow(() -> new DataValidationException("Картина не была найдена"));
 
         return ResponseEntity.ok(painting);
@@ -57,7 +339,14 @@ public class PaintingController {
     @PostMapping("/paintings")
     public ResponseEntity<Object> createPainting(@RequestBody Painting painting) throws DataValidationException {
         try {
+            // До resolveReferences: после неё художник и музей - прокси, id в их полях не заполнен
+            CatalogStatistics.Key key = CatalogStatistics.Key.of(painting);
+            resolveReferences(painting);
             Painting newPainting = paintingRepository.save(painting);
+            entityCounters.increment(Painting.class);
+            tableVersions.bump(Painting.class);
+            searchIndex.put(newPainting);
+            catalogStatistics.add(key);
             return new ResponseEntity<Object>(newPainting, HttpStatus.OK);
         } catch (Exception exception) {
             if (exception.getMessage().contains("paintings_name_key")) {
@@ -81,14 +370,20 @@ public class PaintingController {
         try {
             Painting painting = paintingRepository.findById(id)
                     .orElseThrow(() -> new DataValidationException("Картина не может быть обновлена"));
+            CatalogStatistics.Key before = paintingRepository.findExportById(id).map(CatalogStatistics.Key::of)
+                    .orElseThrow(() -> new DataValidationException("Картина не может быть обновлена"));
 
             // Сведения о картинах
             painting.name = paintingDetails.name;
             painting.museum = paintingDetails.museum;
             painting.artist = paintingDetails.artist;
             painting.year = paintingDetails.year;
+            resolveReferences(painting);
 
             paintingRepository.save(painting);
+            tableVersions.bump(Painting.class);
+            searchIndex.put(painting);
+            catalogStatistics.move(before, CatalogStatistics.Key.of(paintingDetails));
 
             return ResponseEntity.ok(painting);
         } catch (Exception exception) {
@@ -100,10 +395,46 @@ public class PaintingController {
         }
     }
 
+    /**
+     * Проверяет, что художник и музей картины существуют, по кэшу справочников, и ставит
+     * вместо присланных объектов ссылки Hibernate: запись по внешнему ключу не требует их загрузки
+     */
+    private void resolveReferences(Painting painting) throws DataValidationException {
+        if (painting.artist != null) {
+            long artistId = painting.artist.id;
+            referenceCache.artists().get(artistId, artistRepository::findViewById)
+                    .orElseThrow(() -> new DataValidationException("Нет художника с id " + artistId));
+            painting.artist = artistRepository.getById(artistId);
+        }
+        if (painting.museum != null) {
+            long museumId = painting.museum.id;
+            referenceCache.museums().get(museumId, museumRepository::findViewById)
+                    .orElseThrow(() -> new DataValidationException("Нет музея с id " + museumId));
+            painting.museum = museumRepository.getById(museumId);
+        }
+    }
+
+    /**
+     * Удаляет картины из списка несколькими запросами на всю пачку
+     *
+     * @return - id картин, которые действительно были удалены
+     */
     @PostMapping("/deletepaintings")
-    public ResponseEntity deletePaintings(@Validated @RequestBody List<Painting> paintingList) {
-        paintingRepository.deleteAll(paintingList);
-        return new ResponseEntity(HttpStatus.OK);
+    public ResponseEntity<Object> deletePaintings(@Validated @RequestBody List<Painting> paintingList)
+            throws DataValidationException {
+        List<Long> ids = BulkDeleter.ids(paintingList, p -> p.id);
+        // Художник, музей и год удаляемых картин нужны статистике, после удаления их уже не узнать
+        List<PaintingExport> rows = ids.isEmpty() ? new ArrayList<>() : paintingRepository.findExportsByIds(ids);
+        List<Long> deleted = bulkDeleter.delete("paintings", ids, "museums_paintings.paintings_id");
+        entityCounters.add(Painting.class, -deleted.size());
+        tableVersions.bump(Painting.class);
+        searchIndex.remove(SearchIndex.Type.PAINTING, deleted);
+        Set<Long> gone = new HashSet<>(deleted);
+        rows.removeIf(r -> !gone.contains(r.id()));
+        catalogStatistics.remove(rows);
+        Map<String, Object> resp = new HashMap<>();
+        resp.put("deleted", deleted);
+        return ResponseEntity.ok(resp);
     }
 
     /**
@@ -118,7 +449,12 @@ public class PaintingController {
         Map<String, Boolean> resp = new HashMap<>();
 
         if (cc.isPresent()) {
+            Optional<PaintingExport> row = paintingRepository.findExportById(paintingID);
             paintingRepository.delete(cc.get());
+            entityCounters.decrement(Painting.class);
+            tableVersions.bump(Painting.class);
+            searchIndex.remove(SearchIndex.Type.PAINTING, paintingID);
+            row.ifPresent(r -> catalogStatistics.remove(CatalogStatistics.Key.of(r)));
             resp.put("deleted", Boolean.TRUE);
         } else {
             resp.put("deleted", Boolean.FALSE);
@@ -0,0 +1,80 @@
+package ru.iu3.backend.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import ru.iu3.backend.tools.Cursor;
+import ru.iu3.backend.tools.DataValidationException;
+import ru.iu3.backend.tools.SearchIndex;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Поиск по каталогу: картины, художники и музеи ищутся по индексу в памяти, без запросов к БД
+ */
+@CrossOrigin(origins = "http://localhost:3000")
+@RestController
+@RequestMapping("/api/v1")
+public class SearchController {
+    private static final int MAX_LIMIT = 100;
+
+    @Autowired
+    SearchIndex searchIndex;
+
+    /**
+     * Поиск записей, содержащих все слова запроса (последнее может быть недописанным)
+     *
+     * @param query - строка запроса
+     * @param type  - painting, artist или museum; без параметра - все виды
+     * @param limit - сколько записей вернуть, не больше 100
+     * @return - записи по убыванию оценки
+     */
+    @GetMapping("/search")
+    public List<SearchIndex.Hit> search(@RequestParam("q") String query,
+                                        @RequestParam(value = "type", required = false) String type,
+                                        @RequestParam(value = "limit", defaultValue = "20") int limit)
+            throws DataValidationException {
+        Cursor.checkLimit(limit);
+        checkReady();
+        return searchIndex.search(query, parseType(type), Math.min(limit, MAX_LIMIT));
+    }
+
+    /**
+     * Подсказки для строки поиска: варианты дописать последнее слово
+     *
+     * @param query - набранный текст
+     * @param limit - сколько подсказок вернуть
+     * @return - варианты запроса
+     */
+    @GetMapping("/search/suggest")
+    public List<String> suggest(@RequestParam("q") String query,
+                                @RequestParam(value = "limit", defaultValue = "10") int limit)
+            throws DataValidationException {
+        Cursor.checkLimit(limit);
+        checkReady();
+        return searchIndex.suggest(query, Math.min(limit, MAX_LIMIT));
+    }
+
+    private void checkReady() {
+        if (!searchIndex.isReady()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "search index is being built");
+        }
+    }
+
+    private static SearchIndex.Type parseType(String type) throws DataValidationException {
+        if (type == null || type.isEmpty()) {
+            return null;
+        }
+        try {
+            return SearchIndex.Type.valueOf(type.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            throw new DataValidationException("Неизвестный вид записи: " + type);
+        }
+    }
+}
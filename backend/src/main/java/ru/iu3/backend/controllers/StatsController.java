@@ -0,0 +1,86 @@
+package ru.iu3.backend.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.iu3.backend.repositories.ArtistRepository;
+import ru.iu3.backend.repositories.ArtistView;
+import ru.iu3.backend.repositories.CountryRepository;
+import ru.iu3.backend.repositories.CountryView;
+import ru.iu3.backend.repositories.MuseumRepository;
+import ru.iu3.backend.repositories.MuseumView;
+import ru.iu3.backend.tools.CatalogStatistics;
+import ru.iu3.backend.tools.Cursor;
+import ru.iu3.backend.tools.DataValidationException;
+import ru.iu3.backend.tools.ReferenceCache;
+
+import java.util.List;
+
+/**
+ * Статистика каталога для панелей: число картин по музеям, художникам, странам и десятилетиям.
+ * Отвечает из счётчиков в памяти, названия берутся из кэша справочников
+ */
+@CrossOrigin(origins = "http://localhost:3000")
+@RestController
+@RequestMapping("/api/v1/stats")
+public class StatsController {
+
+    @Autowired
+    CatalogStatistics catalogStatistics;
+
+    @Autowired
+    ReferenceCache referenceCache;
+
+    @Autowired
+    MuseumRepository museumRepository;
+
+    @Autowired
+    ArtistRepository artistRepository;
+
+    @Autowired
+    CountryRepository countryRepository;
+
+    /**
+     * Музеи по убыванию числа картин
+     *
+     * @param limit - сколько музеев вернуть, не больше 1000
+     * @return - id, название и число картин
+     */
+    @GetMapping("/museums")
+    public List<CatalogStatistics.Row> getMuseumStats(@RequestParam(value = "limit", defaultValue = "100") int limit)
+            throws DataValidationException {
+        Cursor.checkLimit(limit);
+        return catalogStatistics.museums(limit, id -> referenceCache.museums()
+                .get(id, museumRepository::findViewById).map(MuseumView::name).orElse(null));
+    }
+
+    @GetMapping("/artists")
+    public List<CatalogStatistics.Row> getArtistStats(@RequestParam(value = "limit", defaultValue = "100") int limit)
+            throws DataValidationException {
+        Cursor.checkLimit(limit);
+        return catalogStatistics.artists(limit, id -> referenceCache.artists()
+                .get(id, artistRepository::findViewById).map(ArtistView::name).orElse(null));
+    }
+
+    /**
+     * Страны по убыванию числа картин их художников
+     */
+    @GetMapping("/countries")
+    public List<CatalogStatistics.Row> getCountryStats(@RequestParam(value = "limit", defaultValue = "100") int limit)
+            throws DataValidationException {
+        Cursor.checkLimit(limit);
+        return catalogStatistics.countries(limit, id -> referenceCache.countries()
+                .get(id, countryRepository::findViewById).map(CountryView::name).orElse(null));
+    }
+
+    /**
+     * Число картин по десятилетиям года написания; картины без года не учитываются
+     */
+    @GetMapping("/decades")
+    public List<CatalogStatistics.DecadeRow> getDecadeStats() {
+        return catalogStatistics.decades();
+    }
+}
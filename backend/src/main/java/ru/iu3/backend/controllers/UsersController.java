@@ -2,11 +2,13 @@ package ru.iu3.backend.controllers;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.crypto.codec.Hex;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -18,18 +20,27 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import ru.iu3.backend.auth.SessionStore;
+import ru.iu3.backend.auth.SignedTokenService;
 import ru.iu3.backend.models.Museum;
 import ru.iu3.backend.models.User;
-import ru.iu3.backend.repositories.MuseumRepository;
+import ru.iu3.backend.repositories.MembershipRepository;
 import ru.iu3.backend.repositories.UserRepository;
+import ru.iu3.backend.repositories.UserMuseumView;
+import ru.iu3.backend.repositories.UserView;
+import ru.iu3.backend.tools.BulkDeleter;
+import ru.iu3.backend.tools.Cursor;
+import ru.iu3.backend.tools.CursorPage;
 import ru.iu3.backend.tools.DataValidationException;
-import ru.iu3.backend.tools.Utils;
+import ru.iu3.backend.tools.EntityCounters;
+import ru.iu3.backend.tools.PasswordHasher;
+import ru.iu3.backend.tools.TableVersions;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Random;
 import java.util.Set;
 
 @RestController
@@ -41,25 +52,113 @@ public class UsersController {
     UserRepository usersRepository;
 
     @Autowired
-    MuseumRepository museumRepository;
+    EntityCounters entityCounters;
+
+    @Autowired
+    BulkDeleter bulkDeleter;
+
+    @Autowired
+    MembershipRepository membershipRepository;
+
+    @Autowired
+    SessionStore sessionStore;
+
+    @Autowired
+    SignedTokenService signedTokenService;
+
+    @Autowired
+    PasswordHasher passwordHasher;
+
+    @Autowired
+    TableVersions tableVersions;
 
     /**
      * Метод, который возвращает список юзеров (не художников), которые есть в данной БД
      * @return - список пользователей в виде JSON
      */
     @GetMapping("/users")
-    public Page<User> getAllUsers(@RequestParam("page") int page, @RequestParam("limit") int limit) {
-        return usersRepository.findAll(
+    public Page<UserView> getAllUsers(@RequestParam("page") int page, @RequestParam("limit") int limit,
+                                      ServletWebRequest request) {
+        if (tableVersions.notModified(request, User.class, Museum.class)) {
+            return null;
+        }
+        Pageable pageable = PageRequest.of(page, limit, Sort.by(Sort.Direction.ASC, "login"));
+        // Общее количество берём из счётчика, а не отдельным select count(*)
+        Slice<UserView> slice = usersRepository.findAllViews(pageable);
+        return new PageImpl<>(withMuseums(slice.getContent()), pageable, entityCounters.get(User.class));
+    }
+
+    /**
+     * Список пользователей без общего количества (count=false): только содержимое страницы и признак,
+     * есть ли следующая
+     *
+     * @param page  - номер страницы
+     * @param limit - размер страницы
+     * @return - срез списка
+     */
+    @GetMapping(value = "/users", params = {"count=false", "!after"})
+    public Slice<UserView> getUsersSlice(@RequestParam("page") int page, @RequestParam("limit") int limit,
+                                         ServletWebRequest request) {
+        if (tableVersions.notModified(request, User.class, Museum.class)) {
+            return null;
+        }
+        Slice<UserView> slice = usersRepository.findAllViews(
                 PageRequest.of(page, limit, Sort.by(Sort.Direction.ASC, "login")));
+        withMuseums(slice.getContent());
+        return slice;
+    }
+
+    /**
+     * Список пользователей по курсору: страница начинается сразу после пары (login, id) из after,
+     * поэтому глубокие страницы обходятся так же дёшево, как первая
+     *
+     * @param after - курсор из поля next предыдущей страницы, пустой - с начала списка
+     * @param limit - размер страницы
+     * @return - страница и курсор следующей
+     */
+    @GetMapping(value = "/users", params = "after")
+    public CursorPage<UserView> getUsersAfter(@RequestParam("after") String after, @RequestParam("limit") int limit,
+                                              ServletWebRequest request)
+            throws DataValidationException {
+        if (tableVersions.notModified(request, User.class, Museum.class)) {
+            return null;
+        }
+        Cursor.checkLimit(limit);
+        Cursor cursor = Cursor.decode(after);
+        Pageable rowsWanted = PageRequest.of(0, limit + 1);
+        List<UserView> rows = cursor == null
+                ? usersRepository.findFirstViewsByKey(rowsWanted)
+                : usersRepository.findViewsAfterKey(cursor.name, cursor.id, rowsWanted);
+        return CursorPage.of(withMuseums(rows), limit, u -> Cursor.encode(u.login(), u.id()));
     }
 
     @GetMapping("/users/{id}")
-    public ResponseEntity<User> getUser(@PathVariable(value = "id") Long userID)
+    public ResponseEntity<UserView> getUser(@PathVariable(value = "id") Long userID, ServletWebRequest request)
             throws DataValidationException {
-        User user = usersRepository.findById(userID).
+        if (tableVersions.entityNotModified(request, User.class, userID, usersRepository.findVersionTag(userID))) {
+            return null;
+        }
+        UserView user = usersRepository.findViewById(userID).
                 orElseThrow(() -> new DataValidationException("User not founding"));
 
-        return ResponseEntity.ok(user);
+        return ResponseEntity.ok(withMuseums(List.of(user)).get(0));
+    }
+
+    /**
+     * Дочитывает музеи сразу для всех пользователей страницы одним запросом (вместо запроса на каждого)
+     */
+    private List<UserView> withMuseums(List<UserView> users) {
+        if (users.isEmpty()) {
+            return users;
+        }
+        Map<Long, UserView> byId = new HashMap<>();
+        for (UserView u : users) {
+            byId.put(u.id(), u);
+        }
+        for (UserMuseumView um : usersRepository.findMuseumViews(byId.keySet())) {
+            byId.get(um.userId()).museums().add(um.museum());
+        }
+        return users;
     }
 
     /**
@@ -72,6 +171,8 @@ public class UsersController {
     public ResponseEntity<Object> createUsers(@RequestBody User users) throws DataValidationException {
         try {
             User nc = usersRepository.save(users);
+            entityCounters.increment(User.class);
+            tableVersions.bump(User.class);
             return new ResponseEntity<Object>(nc, HttpStatus.OK);
         } catch (Exception exception) {
             if (exception.getMessage().contains("ConstraintViolationException")) {
@@ -86,31 +187,18 @@ public class UsersController {
      * NEW!!! Добавляем музеи для конкретного пользователя. Но добавление осуществляется из-под пользователя
      * @param userID - ID пользователя, к которому необходимо обратиться
      * @param museums - список музеев для данного пользователя
-     * @return - Поле cnt возвратит просто, где будет отображено 0, если не добавлено, 1 если добавлено
+     * @return - в поле added количество новых подписок (несуществующие музеи и повторы не считаются)
      */
     @PostMapping("/users/{id}/addmuseums")
     public ResponseEntity<Object> addMuseums(@PathVariable(value = "id") Long userID,
-                                             @Validated @RequestBody Set<Museum> museums) {
-        // Извлекаем пользователя по конкретному ID-шнику
-        Optional<User> uu = usersRepository.findById(userID);
-        int cnt = 0;
-
-        if (uu.isPresent()) {
-            User u = uu.get();
-
-            // Если музеев несколько (а такое может быть вполне, то тогда добавляем их поочерёдно)
-            for(Museum m: museums) {
-                // Если есть музей, то мы, конечно, добавим его. Защита от дурака
-                Optional<Museum> mm = museumRepository.findById(m.id);
-                if (mm.isPresent()) {
-                    u.addMuseum(mm.get());
-                    ++cnt;
-                }
-            }
-
-            // Сохраняем
-            usersRepository.save(u);
+                                             @Validated @RequestBody Set<Museum> museums)
+            throws DataValidationException {
+        // Все музеи проверяются и добавляются одной командой
+        int cnt = membershipRepository.add(userID, BulkDeleter.ids(museums, m -> m.id));
+        if (cnt < 0) {
+            throw new DataValidationException("Пользователь с таким индексом не найден");
         }
+        tableVersions.bump(User.class);
 
         // Формируем
         Map<String, String> response = new HashMap<>();
@@ -123,27 +211,47 @@ public class UsersController {
      * NEW!!! Метод, который удаляет музей из-под класса пользователя
      * @param userId - ID по которому собственно должен быть найден
      * @param museums - Список удаляемых музеев
-     * @return - ответ, который содержит количество удалённых музеев
+     * @return - количество действительно удалённых подписок: в поле count, как раньше, и в поле removed,
+     * как в ответе PUT /users/{id}/museums
      */
     @PostMapping("/users/{id}/removemuseums")
     public ResponseEntity<Object> removeMuseums(@PathVariable(value = "id") Long userId,
-                                                @Validated @RequestBody Set<Museum> museums) {
-        Optional<User> uu = usersRepository.findById(userId);
-        int cnt = 0;
-
-        if (uu.isPresent()) {
-            User u = uu.get();
-            for (Museum m: museums) {
-                u.removeMuseum(m);
-                ++cnt;
-            }
-
-            usersRepository.save(u);
+                                                @Validated @RequestBody Set<Museum> museums)
+            throws DataValidationException {
+        int cnt = membershipRepository.remove(userId, BulkDeleter.ids(museums, m -> m.id));
+        if (cnt < 0) {
+            throw new DataValidationException("Пользователь с таким индексом не найден");
         }
+        tableVersions.bump(User.class);
 
         // Формируем ответ
         Map<String, String> response = new HashMap<>();
         response.put("count", String.valueOf(cnt));
+        response.put("removed", String.valueOf(cnt));
+
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Заменяет все подписки пользователя на переданный список музеев
+     * @param userId - ID пользователя
+     * @param museums - новый список музеев (пустой - отписать от всех)
+     * @return - сколько подписок добавлено и удалено
+     */
+    @PutMapping("/users/{id}/museums")
+    public ResponseEntity<Object> replaceMuseums(@PathVariable(value = "id") Long userId,
+                                                 @Validated @RequestBody Set<Museum> museums)
+            throws DataValidationException {
+        MembershipRepository.Change change = membershipRepository.replace(userId,
+                BulkDeleter.ids(museums, m -> m.id));
+        if (change == null) {
+            throw new DataValidationException("Пользователь с таким индексом не найден");
+        }
+
+        tableVersions.bump(User.class);
+        Map<String, String> response = new HashMap<>();
+        response.put("added", String.valueOf(change.added));
+        response.put("removed", String.valueOf(change.removed));
 
         return ResponseEntity.ok(response);
     }
@@ -165,16 +273,17 @@ public class UsersController {
             user.email = userDetails.email;
 
             String np = userDetails.np;
-            System.out.println("Новый пароль (если вдруг забудешь): " + np);
             if (np != null && !np.isEmpty()) {
-                byte[] b = new byte[32];
-                new Random().nextBytes(b);
-                String salt = new String(Hex.encode(b));
-                user.password = Utils.computeHash(np, salt);
-                user.salt = salt;
+                PasswordHasher.Hash h = passwordHasher.hash(np);
+                user.password = h.password;
+                user.salt = h.salt;
+                signedTokenService.revokeUser(user.id);
             }
 
             usersRepository.save(user);
+            // В кэше сессий лежат старые логин и пароль
+            sessionStore.evictUser(user.id);
+            tableVersions.bump(User.class);
             return ResponseEntity.ok(user);
         } catch (Exception exception) {
             if (exception.getMessage().contains("ConstraintViolationException")) {
@@ -186,9 +295,20 @@ public class UsersController {
     }
 
     @PostMapping("/deleteusers")
-    public ResponseEntity deleteUsers(@Validated @RequestBody List<User> users) {
-        usersRepository.deleteAll(users);
-        return new ResponseEntity(HttpStatus.OK);
+    public ResponseEntity<Object> deleteUsers(@Validated @RequestBody List<User> users)
+            throws DataValidationException {
+        // Сессии удаляются по внешнему ключу (on delete cascade)
+        List<Long> deleted = bulkDeleter.delete("users", BulkDeleter.ids(users, u -> u.id),
+                "usersmuseums.userid");
+        entityCounters.add(User.class, -deleted.size());
+        tableVersions.bump(User.class);
+        for (Long id : deleted) {
+            sessionStore.evictUser(id);
+            signedTokenService.revokeUser(id);
+        }
+        Map<String, Object> resp = new HashMap<>();
+        resp.put("deleted", deleted);
+        return ResponseEntity.ok(resp);
     }
 
     /**
@@ -204,6 +324,10 @@ public class UsersController {
         // Возвратит true, если объект существует (не пустой)
         if (users.isPresent()) {
             usersRepository.delete(users.get());
+            entityCounters.decrement(User.class);
+            tableVersions.bump(User.class);
+            sessionStore.evictUser(userId);
+            signedTokenService.revokeUser(userId);
             resp.put("deleted", Boolean.TRUE);
         } else {
             resp.put("deleted", Boolean.FALSE);
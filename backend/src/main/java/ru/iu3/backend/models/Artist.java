@@ -3,7 +3,10 @@ package ru.iu3.backend.models;
 import javax.persistence.*;
 
 @Entity
-@Table(name = "artists")
+@Table(name = "artists", indexes = {
+        @Index(name = "artists_name_id_idx", columnList = "name, id"),
+        // Художники страны при отборе картин по стране
+        @Index(name = "artists_country_id_idx", columnList = "country, id")})
 @Access(AccessType.FIELD)
 public class Artist {
 
@@ -11,10 +14,15 @@ public class Artist {
     public Artist(Long id) {this.id = id;}
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "artists_seq")
+    @SequenceGenerator(name = "artists_seq", sequenceName = "artists_id_seq", allocationSize = 50)
     @Column(name = "id", updatable = false, nullable = false)
     public long id;
 
+    @Version
+    @Column(name = "version", nullable = false)
+    public long version;
+
     @Column(name = "name", nullable = false, unique = true)
     public String name;
 
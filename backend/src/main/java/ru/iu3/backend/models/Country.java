@@ -7,7 +7,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "countries")
+@Table(name = "countries", indexes = @Index(name = "countries_name_id_idx", columnList = "name, id"))
 @Access(AccessType.FIELD)
 public class Country {
 
@@ -21,6 +21,11 @@ public class Country {
     @Column(name = "id", updatable = false, nullable = false)
     public long id;
 
+    // Растёт при каждом изменении записи, из неё строится ETag
+    @Version
+    @Column(name = "version", nullable = false)
+    public long version;
+
     @Column(name = "name", nullable = false, unique = true)
     public String name;
 
@@ -10,7 +10,7 @@ import java.util.List;
 import java.util.Set;
 
 @Entity
-@Table(name = "museums")
+@Table(name = "museums", indexes = @Index(name = "museums_name_id_idx", columnList = "name, id"))
 @Access(AccessType.FIELD)
 public class Museum {
 
@@ -22,18 +22,26 @@ public class Museum {
     }
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "museums_seq")
+    @SequenceGenerator(name = "museums_seq", sequenceName = "museums_id_seq", allocationSize = 50)
     @Column(name = "id", updatable = false, nullable = false)
     public long id;
 
+    @Version
+    @Column(name = "version", nullable = false)
+    public long version;
+
     @Column(name = "name", nullable = false, unique = true)
     public String name;
 
     @Column(name = "location", nullable = false)
     public String location;
 
+    // Имена таблицы и колонок те же, что Hibernate выбирал по умолчанию; заданы явно для массового удаления
     @JsonIgnore
     @OneToMany
+    @JoinTable(name = "museums_paintings", joinColumns = @JoinColumn(name = "museum_id"),
+            inverseJoinColumns = @JoinColumn(name = "paintings_id"))
     public List<Painting> paintings = new ArrayList<>();
 
     @JsonIgnore
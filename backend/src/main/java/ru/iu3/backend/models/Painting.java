@@ -6,7 +6,15 @@ import javax.persistence.*;
 
 @Entity
 
-@Table(name = "paintings")
+@Table(name = "paintings", indexes = {
+        @Index(name = "paintings_name_id_idx", columnList = "name, id"),
+        // Картины музея и художника по внешнему ключу, в порядке name, id
+        @Index(name = "paintings_museumid_name_id_idx", columnList = "museumid, name, id"),
+        @Index(name = "paintings_artistid_name_id_idx", columnList = "artistid, name, id"),
+        // Отбор по музею или художнику вместе с диапазоном лет и по одним годам (PaintingFilterRepository)
+        @Index(name = "paintings_museumid_year_idx", columnList = "museumid, year"),
+        @Index(name = "paintings_artistid_year_idx", columnList = "artistid, year"),
+        @Index(name = "paintings_year_idx", columnList = "year")})
 
 @Access(AccessType.FIELD)
 
@@ -23,11 +31,19 @@ public class Painting {
 
     @Id
 
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Id берутся из последовательности пачками по 50 (шаг задан в schema.sql):
+    // с IDENTITY Hibernate не может объединять вставки в пакеты
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "paintings_seq")
+    @SequenceGenerator(name = "paintings_seq", sequenceName = "paintings_id_seq", allocationSize = 50)
 
     @Column(name = "id", updatable = false, nullable = false)
     public long id;
 
+    // Версия для оптимистической блокировки и ETag, см. TableVersions
+    @Version
+    @Column(name = "version", nullable = false)
+    public long version;
+
 
     @Column(name = "name", nullable = false, length = 45)
     public String name;
@@ -7,7 +7,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "users")
+@Table(name = "users", indexes = @Index(name = "users_login_id_idx", columnList = "login, id"))
 @Access(AccessType.FIELD)
 public class User {
 
@@ -26,6 +26,10 @@ public class User {
     @Column(name = "id", updatable = false, nullable = false)
     public long id;
 
+    @Version
+    @Column(name = "version", nullable = false)
+    public long version;
+
     @Column(name = "login", nullable = false, unique = true)
     public String login;
 
@@ -38,10 +42,11 @@ public class User {
     @Column(name = "salt")
     public String salt;
 
-    @Column(name = "token")
+    // Токен и время входа хранятся в таблице sessions, здесь они только для ответа на /auth/login
+    @Transient
     public String token;
 
-    @Column(name = "activity")
+    @Transient
     public LocalDateTime activity;
 
     @ManyToMany(mappedBy = "users")
@@ -0,0 +1,46 @@
+package ru.iu3.backend.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import javax.persistence.*;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "sessions", indexes = {
+        @Index(name = "sessions_tokenhash_idx", columnList = "tokenhash", unique = true),
+        @Index(name = "sessions_userid_idx", columnList = "userid")
+})
+@Access(AccessType.FIELD)
+public class UserSession {
+
+    public UserSession() {
+    }
+
+    public UserSession(Long id) {
+        this.id = id;
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", updatable = false, nullable = false)
+    public long id;
+
+    // В БД храним только SHA-256 от токена
+    @Column(name = "tokenhash", nullable = false, length = 64)
+    public String tokenHash;
+
+    @JsonIgnore
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "userid", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    public User user;
+
+    @Column(name = "created", nullable = false)
+    public LocalDateTime created;
+
+    @Column(name = "activity", nullable = false)
+    public LocalDateTime activity;
+}
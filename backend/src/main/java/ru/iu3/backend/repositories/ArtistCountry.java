@@ -0,0 +1,7 @@
+package ru.iu3.backend.repositories;
+
+/**
+ * Художник и его страна, без остальных колонок
+ */
+public record ArtistCountry(long artistId, long countryId) {
+}
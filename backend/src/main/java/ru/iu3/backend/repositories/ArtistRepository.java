@@ -1,9 +1,65 @@
 package ru.iu3.backend.repositories;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import ru.iu3.backend.models.Artist;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
 @Repository
 public interface ArtistRepository extends JpaRepository<Artist, Long> {
-}
\ No newline at end of file
+    // Проекции для чтения: выбираются только нужные колонки, объекты не управляются Hibernate
+    @Query("select new ru.iu3.backend.repositories.ArtistView(a.id, a.name, a.age, c.id, c.name) "
+            + "from Artist a left join a.country c")
+    Slice<ArtistView> findAllViews(Pageable pageable);
+
+    // Вывод по курсору (name, id); размер выборки задаёт Pageable первой страницы, смещения нет
+    // Условие name >= :name избыточно, но без него индекс (name, id) не ограничивает просмотр по условию с or
+    @Query("select new ru.iu3.backend.repositories.ArtistView(a.id, a.name, a.age, c.id, c.name) "
+            + "from Artist a left join a.country c order by a.name, a.id")
+    List<ArtistView> findFirstViewsByKey(Pageable limit);
+
+    @Query("select new ru.iu3.backend.repositories.ArtistView(a.id, a.name, a.age, c.id, c.name) "
+            + "from Artist a left join a.country c "
+            + "where a.name >= :name and (a.name > :name or (a.name = :name and a.id > :id)) "
+            + "order by a.name, a.id")
+    List<ArtistView> findViewsAfterKey(@Param("name") String name, @Param("id") long id, Pageable limit);
+
+    @Query("select new ru.iu3.backend.repositories.ArtistView(a.id, a.name, a.age, c.id, c.name) "
+            + "from Artist a left join a.country c where a.id = :id")
+    Optional<ArtistView> findViewById(@Param("id") long id);
+
+    // В ответе есть название страны, поэтому версия художника дополняется версией страны
+    @Query("select concat(str(a.version), '.', coalesce(str(c.id), ''), '.', coalesce(str(c.version), '')) "
+            + "from Artist a left join a.country c where a.id = :id")
+    Optional<String> findVersionTag(@Param("id") long id);
+
+    // Выгрузка всей таблицы, см. PaintingRepository.streamExport
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("select new ru.iu3.backend.repositories.ArtistView(a.id, a.name, a.age, c.id, c.name) "
+            + "from Artist a left join a.country c order by a.id")
+    Stream<ArtistView> streamExport();
+
+    // Страны всех художников, для статистики каталога
+    @Query("select new ru.iu3.backend.repositories.ArtistCountry(a.id, c.id) from Artist a join a.country c")
+    List<ArtistCountry> findCountryIds();
+
+    // Проверки при массовой загрузке: какие из id (имён) уже есть в таблице
+    @Query("select a.id from Artist a where a.id in :ids")
+    Set<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    @Query("select a.name from Artist a where a.name in :names")
+    Set<String> findExistingNames(@Param("names") Collection<String> names);
+}
@@ -1,10 +1,54 @@
 package ru.iu3.backend.repositories;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import ru.iu3.backend.models.Country;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
 @Repository
 public interface CountryRepository extends JpaRepository<Country, Long> {
+    // Проекции для чтения: выбираются только нужные колонки, объекты не управляются Hibernate
+    @Query("select new ru.iu3.backend.repositories.CountryView(c.id, c.name) from Country c")
+    Slice<CountryView> findAllViews(Pageable pageable);
+
+    // Вывод по курсору (name, id); размер выборки задаёт Pageable первой страницы, смещения нет
+    // Условие name >= :name избыточно, но без него индекс (name, id) не ограничивает просмотр по условию с or
+    @Query("select new ru.iu3.backend.repositories.CountryView(c.id, c.name) "
+            + "from Country c order by c.name, c.id")
+    List<CountryView> findFirstViewsByKey(Pageable limit);
+
+    @Query("select new ru.iu3.backend.repositories.CountryView(c.id, c.name) "
+            + "from Country c "
+            + "where c.name >= :name and (c.name > :name or (c.name = :name and c.id > :id)) "
+            + "order by c.name, c.id")
+    List<CountryView> findViewsAfterKey(@Param("name") String name, @Param("id") long id, Pageable limit);
+
+    @Query("select new ru.iu3.backend.repositories.CountryView(c.id, c.name) from Country c where c.id = :id")
+    Optional<CountryView> findViewById(@Param("id") long id);
+
+    // Версия записи для ETag: проверка If-None-Match без загрузки самой записи
+    @Query("select str(c.version) from Country c where c.id = :id")
+    Optional<String> findVersionTag(@Param("id") long id);
+
+    // Выгрузка всей таблицы, см. PaintingRepository.streamExport
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("select new ru.iu3.backend.repositories.CountryView(c.id, c.name) from Country c order by c.id")
+    Stream<CountryView> streamExport();
 
+    // Проверка ссылок при массовой загрузке художников: какие из id есть в таблице
+    @Query("select c.id from Country c where c.id in :ids")
+    Set<Long> findExistingIds(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,12 @@
+package ru.iu3.backend.repositories;
+
+/**
+ * Строка запроса с group by: значение группы (id или год) и число записей в ней
+ */
+public record KeyCount(long key, long count) {
+
+    // Для групп по колонке типа int (год): JPQL подбирает конструктор по типам выражений
+    public KeyCount(int key, long count) {
+        this((long) key, count);
+    }
+}
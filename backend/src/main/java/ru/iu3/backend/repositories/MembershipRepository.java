@@ -0,0 +1,132 @@
+package ru.iu3.backend.repositories;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+
+/**
+ * Подписки пользователей на музеи (таблица usersmuseums) без загрузки сущностей:
+ * каждое изменение - одна-две SQL-команды на весь список музеев, id передаются массивом.
+ * Строка пользователя блокируется на время изменения, так что одновременные запросы
+ * одного пользователя не пересекаются и возвращаемые количества точны.
+ */
+@Repository
+public class MembershipRepository {
+
+    /**
+     * Результат изменения подписок
+     */
+    public static class Change {
+        public final int added;
+        public final int removed;
+
+        Change(int added, int removed) {
+            this.added = added;
+            this.removed = removed;
+        }
+    }
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    /**
+     * Подписывает пользователя на музеи. Несуществующие музеи и уже имеющиеся подписки пропускаются
+     *
+     * @return - сколько подписок добавлено, -1 - если пользователя нет
+     */
+    @Transactional
+    public int add(long userId, Collection<Long> museumIds) {
+        if (!lockUser(userId)) {
+            return -1;
+        }
+        return museumIds.isEmpty() ? 0 : insertMissing(userId, toArray(museumIds));
+    }
+
+    /**
+     * Отписывает пользователя от музеев
+     *
+     * @return - сколько подписок действительно удалено, -1 - если пользователя нет
+     */
+    @Transactional
+    public int remove(long userId, Collection<Long> museumIds) {
+        if (!lockUser(userId)) {
+            return -1;
+        }
+        if (museumIds.isEmpty()) {
+            return 0;
+        }
+        Long[] ids = toArray(museumIds);
+        return jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "delete from usersmuseums where userid = ? and museumid = any(?)");
+            ps.setLong(1, userId);
+            ps.setArray(2, con.createArrayOf("bigint", ids));
+            return ps;
+        });
+    }
+
+    /**
+     * Заменяет все подписки пользователя переданным списком
+     *
+     * @return - сколько подписок добавлено и удалено, null - если пользователя нет
+     */
+    @Transactional
+    public Change replace(long userId, Collection<Long> museumIds) {
+        if (!lockUser(userId)) {
+            return null;
+        }
+        Long[] ids = toArray(museumIds);
+        int removed = jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "delete from usersmuseums where userid = ? and not (museumid = any(?))");
+            ps.setLong(1, userId);
+            ps.setArray(2, con.createArrayOf("bigint", ids));
+            return ps;
+        });
+        int added = ids.length == 0 ? 0 : insertMissing(userId, ids);
+        return new Change(added, removed);
+    }
+
+    /**
+     * Меняет версии пользователей, подписанных на музеи. Вызывается при удалении музеев до удаления
+     * подписок на них: иначе тег пользователя (UserRepository.findVersionTag) мог остаться прежним,
+     * например, когда версия удалённого музея была 0
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void touchMembers(Long[] museumIds) {
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("update users set version = version + 1 "
+                    + "where id in (select userid from usersmuseums where museumid = any(?))");
+            ps.setArray(1, con.createArrayOf("bigint", museumIds));
+            return ps;
+        });
+    }
+
+    // Обновление блокирует строку пользователя и заодно меняет его версию: подписки входят в ETag пользователя
+    private boolean lockUser(long userId) {
+        return jdbcTemplate.update("update users set version = version + 1 where id = ?", userId) > 0;
+    }
+
+    // Одна вставка на все музеи: существующие музеи, на которые пользователь ещё не подписан
+    private int insertMissing(long userId, Long[] ids) {
+        return jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("insert into usersmuseums (userid, museumid) "
+                    + "select ?, m.id from museums m where m.id = any(?) and not exists "
+                    + "(select 1 from usersmuseums um where um.userid = ? and um.museumid = m.id)");
+            ps.setLong(1, userId);
+            ps.setArray(2, con.createArrayOf("bigint", ids));
+            ps.setLong(3, userId);
+            return ps;
+        });
+    }
+
+    private static Long[] toArray(Collection<Long> ids) {
+        return new LinkedHashSet<>(ids).toArray(new Long[0]);
+    }
+}
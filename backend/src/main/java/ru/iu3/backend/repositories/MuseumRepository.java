@@ -1,8 +1,54 @@
 package ru.iu3.backend.repositories;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import ru.iu3.backend.models.Museum;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
 public interface MuseumRepository extends JpaRepository<Museum, Long> {
+    // Проекции для чтения: выбираются только нужные колонки, объекты не управляются Hibernate
+    @Query("select new ru.iu3.backend.repositories.MuseumView(m.id, m.name, m.location) from Museum m")
+    Slice<MuseumView> findAllViews(Pageable pageable);
+
+    // Вывод по курсору (name, id); размер выборки задаёт Pageable первой страницы, смещения нет
+    // Условие name >= :name избыточно, но без него индекс (name, id) не ограничивает просмотр по условию с or
+    @Query("select new ru.iu3.backend.repositories.MuseumView(m.id, m.name, m.location) "
+            + "from Museum m order by m.name, m.id")
+    List<MuseumView> findFirstViewsByKey(Pageable limit);
+
+    @Query("select new ru.iu3.backend.repositories.MuseumView(m.id, m.name, m.location) "
+            + "from Museum m "
+            + "where m.name >= :name and (m.name > :name or (m.name = :name and m.id > :id)) "
+            + "order by m.name, m.id")
+    List<MuseumView> findViewsAfterKey(@Param("name") String name, @Param("id") long id, Pageable limit);
+
+    @Query("select new ru.iu3.backend.repositories.MuseumView(m.id, m.name, m.location) from Museum m where m.id = :id")
+    Optional<MuseumView> findViewById(@Param("id") long id);
+
+    @Query("select str(m.version) from Museum m where m.id = :id")
+    Optional<String> findVersionTag(@Param("id") long id);
+
+    // Выгрузка всей таблицы, см. PaintingRepository.streamExport
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("select new ru.iu3.backend.repositories.MuseumView(m.id, m.name, m.location) from Museum m order by m.id")
+    Stream<MuseumView> streamExport();
+
+    // Проверки при массовой загрузке: какие из id (имён) уже есть в таблице
+    @Query("select m.id from Museum m where m.id in :ids")
+    Set<Long> findExistingIds(@Param("ids") Collection<Long> ids);
 
-}
\ No newline at end of file
+    @Query("select m.name from Museum m where m.name in :names")
+    Set<String> findExistingNames(@Param("names") Collection<String> names);
+}
@@ -0,0 +1,12 @@
+package ru.iu3.backend.repositories;
+
+import java.util.List;
+
+/**
+ * Число отобранных картин по каждому значению фильтра: музеям, художникам, странам и десятилетиям
+ * (key десятилетия - его первый год), каждая разбивка - без условия по своему полю.
+ * Группы по убыванию числа картин, десятилетия по возрастанию
+ */
+public record PaintingFacets(List<KeyCount> museums, List<KeyCount> artists, List<KeyCount> countries,
+                             List<KeyCount> decades) {
+}
@@ -0,0 +1,117 @@
+package ru.iu3.backend.repositories;
+
+import org.springframework.data.jpa.domain.Specification;
+import ru.iu3.backend.models.Painting;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Условия отбора картин: музеи, художники, страны художников (любой из перечисленных)
+ * и диапазон лет. Пустой набор или null - условия по этому полю нет.
+ * Одни и те же условия нужны и в Criteria (страница списка), и в SQL (подсчёт по группам),
+ * поэтому оба представления собраны здесь
+ */
+public record PaintingFilter(Set<Long> museums, Set<Long> artists, Set<Long> countries,
+                             Integer yearFrom, Integer yearTo) {
+
+    public Specification<Painting> toSpecification() {
+        Specification<Painting> spec = Specification.where(null);
+        if (!isEmpty(museums)) {
+            spec = spec.and(inMuseums(museums));
+        }
+        if (!isEmpty(artists)) {
+            spec = spec.and(byArtists(artists));
+        }
+        if (!isEmpty(countries)) {
+            spec = spec.and(byArtistCountries(countries));
+        }
+        if (yearFrom != null || yearTo != null) {
+            spec = spec.and(inYears(yearFrom, yearTo));
+        }
+        return spec;
+    }
+
+    // Условие по внешнему ключу museumid, без соединения с museums
+    public static Specification<Painting> inMuseums(Collection<Long> ids) {
+        return (p, q, cb) -> p.get("museum").get("id").in(ids);
+    }
+
+    public static Specification<Painting> byArtists(Collection<Long> ids) {
+        return (p, q, cb) -> p.get("artist").get("id").in(ids);
+    }
+
+    // Соединение с artists ради колонки country, сама таблица стран не нужна
+    public static Specification<Painting> byArtistCountries(Collection<Long> ids) {
+        return (p, q, cb) -> p.get("artist").get("country").get("id").in(ids);
+    }
+
+    public static Specification<Painting> inYears(Integer from, Integer to) {
+        return (p, q, cb) -> {
+            if (from != null && to != null) {
+                return cb.between(p.get("year"), from, to);
+            }
+            return from != null ? cb.ge(p.get("year"), from) : cb.le(p.get("year"), to);
+        };
+    }
+
+    // Измерения условий для toSql: год от и год до - одно измерение
+    static final int MUSEUM = 0;
+    static final int ARTIST = 1;
+    static final int COUNTRY = 2;
+    static final int YEAR = 3;
+    static final int DIMENSIONS = 4;
+
+    /**
+     * Те же условия для SQL-запроса по paintings p left join artists a, кроме условия по измерению except
+     * (-1 - все условия): текст через and (пустой, если условий нет), параметры добавляются в args.
+     * Наборы id - массивы для = any(?)
+     */
+    String toSql(List<Object> args, int except) {
+        StringBuilder sql = new StringBuilder();
+        if (!isEmpty(museums) && except != MUSEUM) {
+            append(sql, "p.museumid = any(?)");
+            args.add(museums.toArray(new Long[0]));
+        }
+        if (!isEmpty(artists) && except != ARTIST) {
+            append(sql, "p.artistid = any(?)");
+            args.add(artists.toArray(new Long[0]));
+        }
+        if (!isEmpty(countries) && except != COUNTRY) {
+            append(sql, "a.country = any(?)");
+            args.add(countries.toArray(new Long[0]));
+        }
+        if (yearFrom != null && except != YEAR) {
+            append(sql, "p.year >= ?");
+            args.add(yearFrom);
+        }
+        if (yearTo != null && except != YEAR) {
+            append(sql, "p.year <= ?");
+            args.add(yearTo);
+        }
+        return sql.toString();
+    }
+
+    // Есть ли условие по измерению
+    boolean restricts(int dimension) {
+        switch (dimension) {
+            case MUSEUM:
+                return !isEmpty(museums);
+            case ARTIST:
+                return !isEmpty(artists);
+            case COUNTRY:
+                return !isEmpty(countries);
+            default:
+                return yearFrom != null || yearTo != null;
+        }
+    }
+
+    private static void append(StringBuilder sql, String condition) {
+        sql.append(sql.length() == 0 ? "" : " and ").append(condition);
+    }
+
+    private static boolean isEmpty(Set<Long> ids) {
+        return ids == null || ids.isEmpty();
+    }
+}
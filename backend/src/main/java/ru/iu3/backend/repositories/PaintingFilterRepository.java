@@ -0,0 +1,156 @@
+package ru.iu3.backend.repositories;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.iu3.backend.models.Painting;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Отбор картин по нескольким условиям сразу (см. PaintingFilter) и подсчёт по группам для фильтров.
+ * Условия обслуживаются составными индексами paintings (museumid, year), (artistid, year), (year)
+ * и artists (country, id); страница выводится по ключу (name, id), как остальные списки.
+ */
+@Repository
+public class PaintingFilterRepository {
+
+    // Значения grouping(museumid, artistid, country, decade): единица в бите - колонка не участвует в группе
+    private static final int BY_MUSEUM = 0b0111;
+    private static final int BY_ARTIST = 0b1011;
+    private static final int BY_COUNTRY = 0b1101;
+    private static final int BY_DECADE = 0b1110;
+
+    // Все четыре разбивки одним проходом: grouping sets вместо запроса на каждую. Колонки 6-9 - число строк
+    // без условия по музею, художнику, стране и году (%s - count(*) с filter), каждая разбивка берёт свою
+    private static final String FACETS = "select grouping(p.museumid, p.artistid, a.country, floor(p.year / 10.0)), "
+            + "p.museumid, p.artistid, a.country, floor(p.year / 10.0) * 10%s "
+            + "from paintings p left join artists a on a.id = p.artistid%s "
+            + "group by grouping sets ((p.museumid), (p.artistid), (a.country), (floor(p.year / 10.0)))";
+
+    @PersistenceContext
+    EntityManager entityManager;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    /**
+     * Страница отобранных картин в порядке name, id
+     *
+     * @param afterName - name последней выданной картины, null - с начала списка
+     * @param afterId   - id последней выданной картины
+     * @param limit     - сколько строк выбрать
+     */
+    public List<PaintingView> findViews(PaintingFilter filter, String afterName, long afterId, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<PaintingView> q = cb.createQuery(PaintingView.class);
+        Root<Painting> p = q.from(Painting.class);
+        Path<String> name = p.get("name");
+        Path<Long> id = p.get("id");
+        q.select(cb.construct(PaintingView.class, id, name, p.get("year")));
+
+        Predicate where = filter.toSpecification().toPredicate(p, q, cb);
+        if (afterName != null) {
+            // (name, id) > (:name, :id), записанное через or: в Criteria нет сравнения кортежей.
+            // Лишнее name >= :name нужно индексу (name, id): по условию с or он не ограничивает просмотр
+            Predicate after = cb.and(cb.greaterThanOrEqualTo(name, afterName), cb.or(cb.greaterThan(name, afterName),
+                    cb.and(cb.equal(name, afterName), cb.greaterThan(id, afterId))));
+            where = where == null ? after : cb.and(where, after);
+        }
+        if (where != null) {
+            q.where(where);
+        }
+        q.orderBy(cb.asc(name), cb.asc(id));
+        return entityManager.createQuery(q).setMaxResults(limit).getResultList();
+    }
+
+    /**
+     * Число отобранных картин по музеям, художникам, странам художников и десятилетиям.
+     * Каждая разбивка считается без условия по своему полю: по музеям - с учётом художников, стран и лет,
+     * но не выбранных музеев, чтобы было видно, сколько картин добавит ещё один музей.
+     * Картины без музея, художника, страны или года в соответствующую разбивку не попадают
+     */
+    public PaintingFacets countFacets(PaintingFilter filter) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder counts = new StringBuilder();
+        for (int d = 0; d < PaintingFilter.DIMENSIONS; ++d) {
+            String others = filter.toSql(args, d);
+            counts.append(others.isEmpty() ? ", count(*)" : ", count(*) filter (where " + others + ")");
+        }
+        // Строка нужна, если она проходит условия хотя бы одной разбивки. Когда условие задано не больше
+        // чем по одному полю, разбивке по этому полю нужны все строки (и параметров тогда не добавляется)
+        List<String> needed = new ArrayList<>();
+        for (int d = 0; d < PaintingFilter.DIMENSIONS; ++d) {
+            if (filter.restricts(d)) {
+                needed.add("(" + filter.toSql(args, d) + ")");
+            }
+        }
+        String where = needed.size() < 2 ? "" : " where " + String.join(" or ", needed);
+        String sql = String.format(FACETS, counts, where);
+        List<KeyCount> museums = new ArrayList<>();
+        List<KeyCount> artists = new ArrayList<>();
+        List<KeyCount> countries = new ArrayList<>();
+        List<KeyCount> decades = new ArrayList<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            for (int i = 0; i < args.size(); ++i) {
+                Object arg = args.get(i);
+                if (arg instanceof Long[]) {
+                    ps.setArray(i + 1, con.createArrayOf("bigint", (Long[]) arg));
+                } else {
+                    ps.setObject(i + 1, arg);
+                }
+            }
+            return ps;
+        }, rs -> {
+            int column;
+            List<KeyCount> target;
+            switch (rs.getInt(1)) {
+                case BY_MUSEUM:
+                    column = 2;
+                    target = museums;
+                    break;
+                case BY_ARTIST:
+                    column = 3;
+                    target = artists;
+                    break;
+                case BY_COUNTRY:
+                    column = 4;
+                    target = countries;
+                    break;
+                case BY_DECADE:
+                    column = 5;
+                    target = decades;
+                    break;
+                default:
+                    return;
+            }
+            long key = rs.getLong(column);
+            if (rs.wasNull()) {
+                return;
+            }
+            // Группа могла появиться только из строк, нужных другим разбивкам
+            long count = rs.getLong(column + 4);
+            if (count > 0) {
+                target.add(new KeyCount(key, count));
+            }
+        });
+        Comparator<KeyCount> byCount = Comparator.comparingLong(KeyCount::count).reversed()
+                .thenComparingLong(KeyCount::key);
+        museums.sort(byCount);
+        artists.sort(byCount);
+        countries.sort(byCount);
+        decades.sort(Comparator.comparingLong(KeyCount::key));
+        return new PaintingFacets(museums, artists, countries, decades);
+    }
+}
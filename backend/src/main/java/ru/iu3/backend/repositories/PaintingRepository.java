@@ -1,8 +1,110 @@
 package ru.iu3.backend.repositories;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import ru.iu3.backend.models.Painting;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
 public interface PaintingRepository extends JpaRepository<Painting, Long> {
+    // Проекции для чтения: выбираются только нужные колонки, объекты не управляются Hibernate
+    @Query("select new ru.iu3.backend.repositories.PaintingView(p.id, p.name, p.year) from Painting p")
+    Slice<PaintingView> findAllViews(Pageable pageable);
+
+    // Вывод по курсору (name, id); размер выборки задаёт Pageable первой страницы, смещения нет
+    // Условие name >= :name избыточно, но без него индекс (name, id) не ограничивает просмотр по условию с or
+    @Query("select new ru.iu3.backend.repositories.PaintingView(p.id, p.name, p.year) "
+            + "from Painting p order by p.name, p.id")
+    List<PaintingView> findFirstViewsByKey(Pageable limit);
+
+    @Query("select new ru.iu3.backend.repositories.PaintingView(p.id, p.name, p.year) "
+            + "from Painting p "
+            + "where p.name >= :name and (p.name > :name or (p.name = :name and p.id > :id)) "
+            + "order by p.name, p.id")
+    List<PaintingView> findViewsAfterKey(@Param("name") String name, @Param("id") long id, Pageable limit);
+
+    @Query("select new ru.iu3.backend.repositories.PaintingView(p.id, p.name, p.year) from Painting p where p.id = :id")
+    Optional<PaintingView> findViewById(@Param("id") long id);
+
+    @Query("select str(p.version) from Painting p where p.id = :id")
+    Optional<String> findVersionTag(@Param("id") long id);
+
+    // Выгрузка всей таблицы: курсор только вперёд, строки приходят с сервера порциями по fetch size.
+    // Вызывать внутри транзакции и закрывать поток
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("select new ru.iu3.backend.repositories.PaintingExport(p.id, p.name, p.year, a.id, m.id) "
+            + "from Painting p left join p.artist a left join p.museum m order by p.id")
+    Stream<PaintingExport> streamExport();
+
+    // Художник, музей и год картины (для статистики каталога), без загрузки связанных записей
+    @Query("select new ru.iu3.backend.repositories.PaintingExport(p.id, p.name, p.year, a.id, m.id) "
+            + "from Painting p left join p.artist a left join p.museum m where p.id = :id")
+    Optional<PaintingExport> findExportById(@Param("id") long id);
+
+    @Query("select new ru.iu3.backend.repositories.PaintingExport(p.id, p.name, p.year, a.id, m.id) "
+            + "from Painting p left join p.artist a left join p.museum m where p.id in :ids")
+    List<PaintingExport> findExportsByIds(@Param("ids") Collection<Long> ids);
+
+    // Количество картин по музеям, художникам и годам: сверка статистики каталога
+    @Query("select new ru.iu3.backend.repositories.KeyCount(m.id, count(p)) from Painting p join p.museum m "
+            + "group by m.id")
+    List<KeyCount> countGroupedByMuseum();
+
+    @Query("select new ru.iu3.backend.repositories.KeyCount(a.id, count(p)) from Painting p join p.artist a "
+            + "group by a.id")
+    List<KeyCount> countGroupedByArtist();
+
+    @Query("select new ru.iu3.backend.repositories.KeyCount(p.year, count(p)) from Painting p "
+            + "where p.year is not null group by p.year")
+    List<KeyCount> countGroupedByYear();
+
+    // Картины одного музея или художника: условие по внешнему ключу, порядок name, id
+    // обслуживаются индексами (museumid, name, id) и (artistid, name, id)
+    @Query("select new ru.iu3.backend.repositories.PaintingView(p.id, p.name, p.year) from Painting p "
+            + "where p.museum.id = :museumId")
+    Slice<PaintingView> findViewsByMuseum(@Param("museumId") long museumId, Pageable pageable);
+
+    @Query("select count(p) from Painting p where p.museum.id = :museumId")
+    long countByMuseum(@Param("museumId") long museumId);
+
+    // Вывод по курсору (name, id); размер выборки задаёт Pageable первой страницы, смещения нет
+    @Query("select new ru.iu3.backend.repositories.PaintingView(p.id, p.name, p.year) from Painting p "
+            + "where p.museum.id = :museumId order by p.name, p.id")
+    List<PaintingView> findFirstViewsByMuseum(@Param("museumId") long museumId, Pageable limit);
+
+    @Query("select new ru.iu3.backend.repositories.PaintingView(p.id, p.name, p.year) from Painting p "
+            + "where p.museum.id = :museumId and p.name >= :name "
+            + "and (p.name > :name or (p.name = :name and p.id > :id)) "
+            + "order by p.name, p.id")
+    List<PaintingView> findViewsAfterKeyByMuseum(@Param("museumId") long museumId, @Param("name") String name,
+                                                 @Param("id") long id, Pageable limit);
+
+    @Query("select new ru.iu3.backend.repositories.PaintingView(p.id, p.name, p.year) from Painting p "
+            + "where p.artist.id = :artistId")
+    Slice<PaintingView> findViewsByArtist(@Param("artistId") long artistId, Pageable pageable);
+
+    @Query("select count(p) from Painting p where p.artist.id = :artistId")
+    long countByArtist(@Param("artistId") long artistId);
+
+    // Вывод по курсору (name, id); размер выборки задаёт Pageable первой страницы, смещения нет
+    @Query("select new ru.iu3.backend.repositories.PaintingView(p.id, p.name, p.year) from Painting p "
+            + "where p.artist.id = :artistId order by p.name, p.id")
+    List<PaintingView> findFirstViewsByArtist(@Param("artistId") long artistId, Pageable limit);
 
-}
\ No newline at end of file
+    @Query("select new ru.iu3.backend.repositories.PaintingView(p.id, p.name, p.year) from Painting p "
+            + "where p.artist.id = :artistId and p.name >= :name "
+            + "and (p.name > :name or (p.name = :name and p.id > :id)) "
+            + "order by p.name, p.id")
+    List<PaintingView> findViewsAfterKeyByArtist(@Param("artistId") long artistId, @Param("name") String name,
+                                                 @Param("id") long id, Pageable limit);
+}
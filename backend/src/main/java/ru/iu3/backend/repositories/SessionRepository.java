@@ -0,0 +1,35 @@
+package ru.iu3.backend.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import ru.iu3.backend.models.UserSession;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Optional;
+
+public interface SessionRepository extends JpaRepository<UserSession, Long> {
+    @Query("select s from UserSession s join fetch s.user where s.tokenHash = :tokenHash")
+    Optional<UserSession> findByTokenHash(@Param("tokenHash") String tokenHash);
+
+    @Transactional
+    @Modifying
+    @Query("delete from UserSession s where s.tokenHash = :tokenHash")
+    int deleteByTokenHash(@Param("tokenHash") String tokenHash);
+
+    /**
+     * Удаляет перечисленные сессии, если они действительно не использовались с момента cutoff
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from UserSession s where s.id in :ids and s.activity < :cutoff")
+    int deleteExpired(@Param("ids") Collection<Long> ids, @Param("cutoff") LocalDateTime cutoff);
+
+    @Transactional
+    @Modifying
+    @Query("delete from UserSession s where s.activity < :cutoff")
+    int deleteAllExpired(@Param("cutoff") LocalDateTime cutoff);
+}
@@ -0,0 +1,11 @@
+package ru.iu3.backend.repositories;
+
+/**
+ * Строка связи пользователь - музей для сборки UserView
+ */
+public record UserMuseumView(long userId, long id, String name, String location) {
+
+    public MuseumView museum() {
+        return new MuseumView(id, name, location);
+    }
+}
@@ -1,12 +1,45 @@
 package ru.iu3.backend.repositories;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import ru.iu3.backend.models.User;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
-    Optional<User> findByToken(String token);
-
     Optional<User> findByLogin(String login);
+
+    // Проекции для чтения: выбираются только нужные колонки, объекты не управляются Hibernate
+    @Query("select new ru.iu3.backend.repositories.UserView(u.id, u.login, u.email) from User u")
+    Slice<UserView> findAllViews(Pageable pageable);
+
+    // Вывод по курсору (login, id); размер выборки задаёт Pageable первой страницы, смещения нет
+    // Условие login >= :login избыточно, но без него индекс (login, id) не ограничивает просмотр по условию с or
+    @Query("select new ru.iu3.backend.repositories.UserView(u.id, u.login, u.email) from User u "
+            + "order by u.login, u.id")
+    List<UserView> findFirstViewsByKey(Pageable limit);
+
+    @Query("select new ru.iu3.backend.repositories.UserView(u.id, u.login, u.email) from User u "
+            + "where u.login >= :login and (u.login > :login or (u.login = :login and u.id > :id)) "
+            + "order by u.login, u.id")
+    List<UserView> findViewsAfterKey(@Param("login") String login, @Param("id") long id, Pageable limit);
+
+    @Query("select new ru.iu3.backend.repositories.UserView(u.id, u.login, u.email) from User u where u.id = :id")
+    Optional<UserView> findViewById(@Param("id") long id);
+
+    // Версия пользователя растёт и при изменении подписок (см. MembershipRepository),
+    // а сумма версий его музеев меняется при изменении любого из них
+    @Query(value = "select concat(u.version, '.', coalesce(sum(m.version), 0)) from users u "
+            + "left join usersmuseums um on um.userid = u.id left join museums m on m.id = um.museumid "
+            + "where u.id = :id group by u.version", nativeQuery = true)
+    Optional<String> findVersionTag(@Param("id") long id);
+
+    @Query("select new ru.iu3.backend.repositories.UserMuseumView(u.id, m.id, m.name, m.location) "
+            + "from User u join u.museums m where u.id in :ids")
+    List<UserMuseumView> findMuseumViews(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,15 @@
+package ru.iu3.backend.repositories;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Пользователь для чтения. В отличие от сущности User не содержит пароля, соли и токена.
+ * Музеи дочитываются одним запросом на всю страницу (см. UserRepository.findMuseumViews)
+ */
+public record UserView(long id, String login, String email, List<MuseumView> museums) {
+
+    public UserView(long id, String login, String email) {
+        this(id, login, email, new ArrayList<>());
+    }
+}
@@ -0,0 +1,108 @@
+package ru.iu3.backend.tools;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Удаление списка записей по id фиксированным числом запросов, сколько бы id ни пришло:
+ * все id передаются одним параметром-массивом (where id = any(?)), вместо select + delete
+ * на каждую запись. Запросы одинаковы для любого размера списка, поэтому план переиспользуется.
+ */
+@Component
+public class BulkDeleter {
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate tx;
+
+    @PostConstruct
+    void init() {
+        tx = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Удаляет записи таблицы вместе со ссылками на них из связующих таблиц.
+     * Существующие id сначала блокируются (select ... for update), так что при
+     * одновременном удалении каждую запись в ответе получит только один запрос.
+     *
+     * @param table - таблица с первичным ключом id
+     * @param ids   - id из запроса (повторы и несуществующие допустимы)
+     * @param links - колонки связующих таблиц, ссылающиеся на удаляемые записи, в виде "таблица.колонка"
+     * @return - id, которые действительно были удалены
+     * @throws DataValidationException - на записи ссылаются другие таблицы, ничего не удалено
+     */
+    public List<Long> delete(String table, Collection<Long> ids, String... links) throws DataValidationException {
+        return delete(table, ids, found -> { }, links);
+    }
+
+    /**
+     * То же, что delete(table, ids, links), но с действием над найденными записями до удаления ссылок на них
+     *
+     * @param beforeDelete - получает id заблокированных записей, выполняется в той же транзакции
+     */
+    public List<Long> delete(String table, Collection<Long> ids, Consumer<Long[]> beforeDelete, String... links)
+            throws DataValidationException {
+        Long[] unique = new LinkedHashSet<>(ids).toArray(new Long[0]);
+        if (unique.length == 0) {
+            return new ArrayList<>();
+        }
+        try {
+            return tx.execute(status -> {
+                List<Long> existing = jdbcTemplate.query(
+                        con -> withIds(con, "select id from " + table + " where id = any(?) for update", unique),
+                        (rs, i) -> rs.getLong(1));
+                if (existing.isEmpty()) {
+                    return existing;
+                }
+                Long[] found = existing.toArray(new Long[0]);
+                beforeDelete.accept(found);
+                for (String link : links) {
+                    int dot = link.indexOf('.');
+                    jdbcTemplate.update(con -> withIds(con, "delete from " + link.substring(0, dot)
+                            + " where " + link.substring(dot + 1) + " = any(?)", found));
+                }
+                jdbcTemplate.update(con -> withIds(con, "delete from " + table + " where id = any(?)", found));
+                return existing;
+            });
+        } catch (DataIntegrityViolationException ex) {
+            throw new DataValidationException("Записи используются в других таблицах: "
+                    + NestedExceptionUtils.getMostSpecificCause(ex).getMessage());
+        }
+    }
+
+    public static <T> List<Long> ids(Collection<T> entities, Function<T, Long> id) {
+        List<Long> ids = new ArrayList<>(entities.size());
+        for (T e : entities) {
+            ids.add(id.apply(e));
+        }
+        return ids;
+    }
+
+    private static PreparedStatement withIds(Connection con, String sql, Long[] ids) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(sql);
+        Array array = con.createArrayOf("bigint", ids);
+        ps.setArray(1, array);
+        return ps;
+    }
+}
@@ -0,0 +1,344 @@
+package ru.iu3.backend.tools;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Массовая загрузка строк из CSV (первая строка - заголовок с именами полей) или NDJSON.
+ * Вход читается потоком и обрабатывается пачками: строки пачки разбираются и проверяются
+ * параллельно, затем ссылки и уникальность проверяются в БД и годные строки сохраняются
+ * в отдельной транзакции пакетными вставками (hibernate.jdbc.batch_size).
+ * Ошибки возвращаются с номером строки исходного файла.
+ */
+@Component
+public class BulkImporter {
+    public static final String CSV = "text/csv";
+
+    // Строк в одной транзакции
+    private static final int CHUNK = 1000;
+
+    // Сколько ошибок перечислять в отчёте, остальные только считаются
+    private static final int MAX_ERRORS = 1000;
+
+    /**
+     * Разбор одной строки в сущность. Вызывается параллельно, к БД не обращается
+     */
+    public interface RowParser<T> {
+        T parse(Map<String, String> fields) throws DataValidationException;
+    }
+
+    /**
+     * Проверка пачки разобранных строк по БД (ссылки, уникальность).
+     * Вызывается последовательно внутри транзакции пачки, отклоняет строки через Row.reject
+     */
+    public interface RowChecker<T> {
+        void check(List<Row<T>> rows);
+
+        /**
+         * Вызывается после фиксации транзакции пачки с сохранёнными строками. Всё, что проверка
+         * запоминает между пачками (например, уже встреченные в файле имена), нужно запоминать здесь:
+         * строки откатившейся пачки не сохранены и не должны мешать следующим
+         */
+        default void committed(List<Row<T>> rows) {
+        }
+    }
+
+    public static class Row<T> {
+        public final int line;
+        final String text;
+        public T value;
+        String error;
+
+        Row(int line, String text) {
+            this.line = line;
+            this.text = text;
+        }
+
+        public void reject(String message) {
+            error = message;
+        }
+    }
+
+    public static class RowError {
+        public final int line;
+        public final String message;
+
+        RowError(int line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+    }
+
+    /**
+     * Итог загрузки
+     */
+    public static class Report {
+        public int imported;
+        public int failed;
+        public long millis;
+        public long rowsPerSecond;
+        public final List<RowError> errors = new ArrayList<>();
+    }
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    EntityCounters entityCounters;
+
+    @Autowired
+    TableVersions tableVersions;
+
+    @Autowired
+    SearchIndex searchIndex;
+
+    @Autowired
+    CatalogStatistics catalogStatistics;
+
+    @PersistenceContext
+    EntityManager entityManager;
+
+    private TransactionTemplate tx;
+
+    @PostConstruct
+    void init() {
+        tx = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Загружает строки из тела запроса
+     *
+     * @param body        - тело запроса
+     * @param contentType - text/csv или application/x-ndjson
+     * @param entity      - класс сущности (для счётчика записей)
+     * @param parser      - разбор строки
+     * @param checker     - проверка пачки по БД
+     * @param repository  - куда сохранять
+     * @return - отчёт: сколько загружено, сколько отклонено и почему
+     * @throws DataValidationException - неподдерживаемый формат или нет заголовка CSV
+     */
+    public <T> Report run(InputStream body, String contentType, Class<T> entity, RowParser<T> parser,
+                          RowChecker<T> checker, JpaRepository<T, Long> repository)
+            throws DataValidationException, IOException {
+        boolean csv;
+        if (contentType != null && contentType.startsWith(CSV)) {
+            csv = true;
+        } else if (contentType != null && contentType.startsWith(NdjsonExporter.CONTENT_TYPE)) {
+            csv = false;
+        } else {
+            throw new DataValidationException("Неподдерживаемый формат: " + contentType);
+        }
+
+        long started = System.nanoTime();
+        Report report = new Report();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        int lineNo = 0;
+        List<String> header = null;
+        if (csv) {
+            String first = reader.readLine();
+            ++lineNo;
+            if (first == null || first.isBlank()) {
+                throw new DataValidationException("Нет строки заголовка CSV");
+            }
+            header = new ArrayList<>();
+            for (String name : Csv.parseLine(first)) {
+                header.add(name.trim());
+            }
+        }
+
+        List<Row<T>> chunk = new ArrayList<>(CHUNK);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            ++lineNo;
+            if (line.isBlank()) {
+                continue;
+            }
+            chunk.add(new Row<>(lineNo, line));
+            if (chunk.size() == CHUNK) {
+                process(chunk, header, entity, parser, checker, repository, report);
+                chunk = new ArrayList<>(CHUNK);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            process(chunk, header, entity, parser, checker, repository, report);
+        }
+
+        long nanos = Math.max(1, System.nanoTime() - started);
+        report.millis = nanos / 1_000_000;
+        report.rowsPerSecond = report.imported * 1_000_000_000L / nanos;
+        return report;
+    }
+
+    private <T> void process(List<Row<T>> chunk, List<String> header, Class<T> entity, RowParser<T> parser,
+                             RowChecker<T> checker, JpaRepository<T, Long> repository, Report report) {
+        chunk.parallelStream().forEach(r -> {
+            try {
+                r.value = parser.parse(header != null ? csvFields(header, r.text) : jsonFields(r.text));
+            } catch (DataValidationException ex) {
+                r.reject(ex.getMessage());
+            }
+        });
+
+        List<Row<T>> parsed = new ArrayList<>(chunk.size());
+        for (Row<T> r : chunk) {
+            if (r.error == null) {
+                parsed.add(r);
+            }
+        }
+        if (!parsed.isEmpty()) {
+            try {
+                tx.executeWithoutResult(status -> {
+                    checker.check(parsed);
+                    List<T> values = new ArrayList<>(parsed.size());
+                    for (Iterator<Row<T>> it = parsed.iterator(); it.hasNext(); ) {
+                        Row<T> r = it.next();
+                        if (r.error == null) {
+                            values.add(r.value);
+                        } else {
+                            it.remove();
+                        }
+                    }
+                    repository.saveAll(values);
+                    repository.flush();
+                    // Сохранённые сущности больше не нужны, контекст не должен расти от пачки к пачке
+                    entityManager.clear();
+                });
+                checker.committed(parsed);
+                entityCounters.add(entity, parsed.size());
+                tableVersions.bump(entity);
+                for (Row<T> r : parsed) {
+                    searchIndex.put(r.value);
+                    catalogStatistics.added(r.value);
+                }
+                report.imported += parsed.size();
+            } catch (RuntimeException ex) {
+                String message = "Пачка не сохранена: " + NestedExceptionUtils.getMostSpecificCause(ex).getMessage();
+                for (Row<T> r : parsed) {
+                    r.reject(message);
+                }
+            }
+        }
+
+        for (Row<T> r : chunk) {
+            if (r.error != null) {
+                ++report.failed;
+                if (report.errors.size() < MAX_ERRORS) {
+                    report.errors.add(new RowError(r.line, r.error));
+                }
+            }
+        }
+    }
+
+    private static Map<String, String> csvFields(List<String> header, String text) throws DataValidationException {
+        List<String> cells = Csv.parseLine(text);
+        if (cells.size() > header.size()) {
+            throw new DataValidationException("Полей больше, чем в заголовке");
+        }
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i < cells.size(); ++i) {
+            if (!cells.get(i).isEmpty()) {
+                fields.put(header.get(i), cells.get(i));
+            }
+        }
+        return fields;
+    }
+
+    private Map<String, String> jsonFields(String text) throws DataValidationException {
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(text);
+        } catch (JsonProcessingException ex) {
+            throw new DataValidationException("Некорректный JSON: " + ex.getOriginalMessage());
+        }
+        if (!node.isObject()) {
+            throw new DataValidationException("Ожидался JSON-объект");
+        }
+        Map<String, String> fields = new HashMap<>();
+        flatten("", node, fields);
+        return fields;
+    }
+
+    // Вложенные объекты раскладываются в поля вида country.id, как в выгрузке
+    private static void flatten(String prefix, JsonNode node, Map<String, String> fields) {
+        for (Iterator<Map.Entry<String, JsonNode>> it = node.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> e = it.next();
+            JsonNode v = e.getValue();
+            if (v.isObject()) {
+                flatten(prefix + e.getKey() + ".", v, fields);
+            } else if (!v.isNull()) {
+                fields.put(prefix + e.getKey(), v.isValueNode() ? v.asText() : v.toString());
+            }
+        }
+    }
+
+    /**
+     * Обязательное текстовое поле
+     */
+    public static String text(Map<String, String> fields, String name, int maxLength) throws DataValidationException {
+        String v = fields.get(name);
+        if (v == null || v.isBlank()) {
+            throw new DataValidationException("Не заполнено поле " + name);
+        }
+        if (v.length() > maxLength) {
+            throw new DataValidationException("Поле " + name + " длиннее " + maxLength + " символов");
+        }
+        return v;
+    }
+
+    /**
+     * Необязательное целое поле
+     */
+    public static Integer integer(Map<String, String> fields, String name) throws DataValidationException {
+        String v = fields.get(name);
+        if (v == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(v.trim());
+        } catch (NumberFormatException ex) {
+            throw new DataValidationException("Поле " + name + " должно быть целым числом");
+        }
+    }
+
+    /**
+     * Необязательная ссылка на другую запись: первое заполненное из полей names
+     * (например artistId или artist.id из выгрузки)
+     */
+    public static Long reference(Map<String, String> fields, String... names) throws DataValidationException {
+        for (String name : names) {
+            String v = fields.get(name);
+            if (v != null) {
+                try {
+                    return Long.valueOf(v.trim());
+                } catch (NumberFormatException ex) {
+                    throw new DataValidationException("Поле " + name + " должно быть id записи");
+                }
+            }
+        }
+        return null;
+    }
+}
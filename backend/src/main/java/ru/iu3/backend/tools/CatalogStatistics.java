@@ -0,0 +1,287 @@
+package ru.iu3.backend.tools;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.iu3.backend.models.Artist;
+import ru.iu3.backend.models.Painting;
+import ru.iu3.backend.repositories.ArtistCountry;
+import ru.iu3.backend.repositories.ArtistRepository;
+import ru.iu3.backend.repositories.KeyCount;
+import ru.iu3.backend.repositories.PaintingExport;
+import ru.iu3.backend.repositories.PaintingRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+
+/**
+ * Количество картин по музеям, художникам, странам художников и десятилетиям, для панелей статистики
+ * без group by на каждое обновление. Счётчики правят контроллеры картин и художников при записи,
+ * а периодическая сверка с БД пересчитывает всё заново (как EntityCounters): так исправляются
+ * изменения в обход API и приращения, потерянные во время самой сверки.
+ */
+@Component
+public class CatalogStatistics {
+
+    /**
+     * Что в картине важно для статистики: художник, музей и год (любое может отсутствовать)
+     */
+    public record Key(Long artistId, Long museumId, Integer year) {
+
+        // Для картин из тела запроса и загрузки, где художник и музей - объекты только с id.
+        // У загруженной из БД картины это ленивые ссылки без id в полях, для неё - of(PaintingExport)
+        public static Key of(Painting p) {
+            return new Key(p.artist != null ? p.artist.id : null, p.museum != null ? p.museum.id : null, p.year);
+        }
+
+        public static Key of(PaintingExport p) {
+            return new Key(p.artistId(), p.museumId(), p.year());
+        }
+    }
+
+    public record Row(long id, String name, long paintings) {
+    }
+
+    public record DecadeRow(int decade, long paintings) {
+    }
+
+    /**
+     * Все счётчики одного пересчёта. Сверка строит новый набор и подменяет им текущий целиком
+     */
+    private static final class Counts {
+        final ConcurrentHashMap<Long, LongAdder> byMuseum = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<Long, LongAdder> byArtist = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<Long, LongAdder> byCountry = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<Long, LongAdder> byDecade = new ConcurrentHashMap<>();
+        // Страна каждого художника: по ней картина относится к стране. Художников без страны здесь нет
+        final ConcurrentHashMap<Long, Long> artistCountry = new ConcurrentHashMap<>();
+    }
+
+    @Autowired
+    PaintingRepository paintingRepository;
+
+    @Autowired
+    ArtistRepository artistRepository;
+
+    private volatile Counts counts = new Counts();
+
+    private volatile long reconciledAt;
+    private volatile long reconcileMillis;
+    // Сколько групп разошлись с БД при последней сверке
+    private volatile long drift;
+
+    public void add(Key key) {
+        change(counts, key, 1);
+    }
+
+    public void remove(Key key) {
+        change(counts, key, -1);
+    }
+
+    public void remove(Collection<PaintingExport> paintings) {
+        Counts c = counts;
+        for (PaintingExport p : paintings) {
+            change(c, Key.of(p), -1);
+        }
+    }
+
+    /**
+     * Картина изменена: снимается со старых групп и добавляется в новые
+     */
+    public void move(Key from, Key to) {
+        if (!from.equals(to)) {
+            Counts c = counts;
+            change(c, from, -1);
+            change(c, to, 1);
+        }
+    }
+
+    /**
+     * Художник создан или сменил страну: его картины переносятся в счётчик новой страны
+     *
+     * @param countryId - страна художника, null - без страны
+     */
+    public void artistChanged(long artistId, Long countryId) {
+        Counts c = counts;
+        Long old = countryId != null ? c.artistCountry.put(artistId, countryId) : c.artistCountry.remove(artistId);
+        if (Objects.equals(old, countryId)) {
+            return;
+        }
+        LongAdder paintings = c.byArtist.get(artistId);
+        long n = paintings != null ? paintings.sum() : 0;
+        if (n != 0) {
+            increment(c.byCountry, old, -n);
+            increment(c.byCountry, countryId, n);
+        }
+    }
+
+    /**
+     * Художник удалён. Картины на него ссылаются внешним ключом, так что удалить можно
+     * только художника без картин, и переносить нечего
+     */
+    public void artistRemoved(long artistId) {
+        Counts c = counts;
+        c.artistCountry.remove(artistId);
+        c.byArtist.remove(artistId);
+    }
+
+    public void artistsRemoved(Collection<Long> artistIds) {
+        for (Long id : artistIds) {
+            artistRemoved(id);
+        }
+    }
+
+    /**
+     * Запись, сохранённая массовой загрузкой (картина или художник)
+     */
+    public void added(Object entity) {
+        if (entity instanceof Painting) {
+            add(Key.of((Painting) entity));
+        } else if (entity instanceof Artist) {
+            Artist a = (Artist) entity;
+            artistChanged(a.id, a.country != null ? a.country.id : null);
+        }
+    }
+
+    private static void change(Counts c, Key key, long delta) {
+        increment(c.byMuseum, key.museumId(), delta);
+        increment(c.byArtist, key.artistId(), delta);
+        if (key.artistId() != null) {
+            increment(c.byCountry, c.artistCountry.get(key.artistId()), delta);
+        }
+        if (key.year() != null) {
+            increment(c.byDecade, decade(key.year()), delta);
+        }
+    }
+
+    private static void increment(ConcurrentHashMap<Long, LongAdder> counters, Long key, long delta) {
+        if (key != null) {
+            counters.computeIfAbsent(key, k -> new LongAdder()).add(delta);
+        }
+    }
+
+    private static long decade(int year) {
+        return Math.floorDiv(year, 10) * 10L;
+    }
+
+    /**
+     * Пересчитывает все группы четырьмя запросами с group by и подменяет счётчики.
+     * Приращения, сделанные контроллерами между запросами и подменой, теряются до следующей сверки
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${private.stats-reconcile-interval:300000}",
+            initialDelayString = "${private.stats-reconcile-interval:300000}")
+    public void reconcile() {
+        long started = System.nanoTime();
+        Counts fresh = new Counts();
+        for (ArtistCountry ac : artistRepository.findCountryIds()) {
+            fresh.artistCountry.put(ac.artistId(), ac.countryId());
+        }
+        for (KeyCount kc : paintingRepository.countGroupedByMuseum()) {
+            increment(fresh.byMuseum, kc.key(), kc.count());
+        }
+        for (KeyCount kc : paintingRepository.countGroupedByArtist()) {
+            increment(fresh.byArtist, kc.key(), kc.count());
+            increment(fresh.byCountry, fresh.artistCountry.get(kc.key()), kc.count());
+        }
+        for (KeyCount kc : paintingRepository.countGroupedByYear()) {
+            increment(fresh.byDecade, decade((int) kc.key()), kc.count());
+        }
+
+        Counts old = counts;
+        counts = fresh;
+        drift = diff(old.byMuseum, fresh.byMuseum) + diff(old.byArtist, fresh.byArtist)
+                + diff(old.byCountry, fresh.byCountry) + diff(old.byDecade, fresh.byDecade);
+        reconciledAt = System.currentTimeMillis();
+        reconcileMillis = (System.nanoTime() - started) / 1_000_000;
+    }
+
+    private static long diff(Map<Long, LongAdder> old, Map<Long, LongAdder> fresh) {
+        long groups = 0;
+        for (Map.Entry<Long, LongAdder> e : fresh.entrySet()) {
+            LongAdder o = old.get(e.getKey());
+            if (o == null || o.sum() != e.getValue().sum()) {
+                groups++;
+            }
+        }
+        for (Map.Entry<Long, LongAdder> e : old.entrySet()) {
+            if (!fresh.containsKey(e.getKey()) && e.getValue().sum() != 0) {
+                groups++;
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Музеи с наибольшим числом картин
+     *
+     * @param limit - сколько групп вернуть
+     * @param names - название по id (обычно из ReferenceCache)
+     */
+    public List<Row> museums(int limit, LongFunction<String> names) {
+        return top(counts.byMuseum, limit, names);
+    }
+
+    public List<Row> artists(int limit, LongFunction<String> names) {
+        return top(counts.byArtist, limit, names);
+    }
+
+    public List<Row> countries(int limit, LongFunction<String> names) {
+        return top(counts.byCountry, limit, names);
+    }
+
+    /**
+     * Все десятилетия с картинами, по возрастанию
+     */
+    public List<DecadeRow> decades() {
+        List<DecadeRow> rows = new ArrayList<>();
+        for (Map.Entry<Long, LongAdder> e : counts.byDecade.entrySet()) {
+            long n = e.getValue().sum();
+            if (n > 0) {
+                rows.add(new DecadeRow(e.getKey().intValue(), n));
+            }
+        }
+        rows.sort(Comparator.comparingInt(DecadeRow::decade));
+        return rows;
+    }
+
+    // Группы по убыванию числа картин; названия запрашиваются только у попавших в ответ
+    private static List<Row> top(Map<Long, LongAdder> counters, int limit, LongFunction<String> names) {
+        List<long[]> groups = new ArrayList<>();
+        for (Map.Entry<Long, LongAdder> e : counters.entrySet()) {
+            long n = e.getValue().sum();
+            if (n > 0) {
+                groups.add(new long[]{e.getKey(), n});
+            }
+        }
+        groups.sort((x, y) -> x[1] != y[1] ? Long.compare(y[1], x[1]) : Long.compare(x[0], y[0]));
+        List<Row> rows = new ArrayList<>();
+        for (long[] g : groups.subList(0, Math.min(limit, groups.size()))) {
+            rows.add(new Row(g[0], names.apply(g[0]), g[1]));
+        }
+        return rows;
+    }
+
+    public Map<String, Object> getStatistics() {
+        Counts c = counts;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("museums", c.byMuseum.size());
+        stats.put("artists", c.byArtist.size());
+        stats.put("countries", c.byCountry.size());
+        stats.put("decades", c.byDecade.size());
+        stats.put("reconciledAt", reconciledAt);
+        stats.put("reconcileMillis", reconcileMillis);
+        stats.put("drift", drift);
+        return stats;
+    }
+}
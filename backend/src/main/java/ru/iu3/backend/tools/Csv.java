@@ -0,0 +1,42 @@
+package ru.iu3.backend.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Разбор строки CSV: разделитель - запятая, поля могут быть в двойных кавычках,
+ * кавычка внутри поля удваивается. Перевод строки внутри поля не поддерживается.
+ */
+public class Csv {
+
+    public static List<String> parseLine(String line) throws DataValidationException {
+        List<String> cells = new ArrayList<>();
+        StringBuilder cell = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); ++i) {
+            char ch = line.charAt(i);
+            if (quoted) {
+                if (ch != '"') {
+                    cell.append(ch);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    cell.append('"');
+                    ++i;
+                } else {
+                    quoted = false;
+                }
+            } else if (ch == '"') {
+                quoted = true;
+            } else if (ch == ',') {
+                cells.add(cell.toString());
+                cell.setLength(0);
+            } else {
+                cell.append(ch);
+            }
+        }
+        if (quoted) {
+            throw new DataValidationException("Не закрыта кавычка");
+        }
+        cells.add(cell.toString());
+        return cells;
+    }
+}
@@ -0,0 +1,108 @@
+package ru.iu3.backend.tools;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.iu3.backend.models.Artist;
+import ru.iu3.backend.models.Country;
+import ru.iu3.backend.models.Museum;
+import ru.iu3.backend.models.Painting;
+import ru.iu3.backend.models.User;
+import ru.iu3.backend.repositories.ArtistRepository;
+import ru.iu3.backend.repositories.CountryRepository;
+import ru.iu3.backend.repositories.MuseumRepository;
+import ru.iu3.backend.repositories.PaintingRepository;
+import ru.iu3.backend.repositories.UserRepository;
+
+import javax.annotation.PostConstruct;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Количество записей в таблицах, чтобы не делать select count(*) на каждую страницу.
+ * Счётчики правятся контроллерами при создании и удалении, а периодически сверяются с БД
+ * (это же исправляет расхождения из-за записей в обход API).
+ */
+@Component
+public class EntityCounters {
+    @Autowired
+    PaintingRepository paintingRepository;
+
+    @Autowired
+    MuseumRepository museumRepository;
+
+    @Autowired
+    ArtistRepository artistRepository;
+
+    @Autowired
+    CountryRepository countryRepository;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    TableVersions tableVersions;
+
+    private final Map<Class<?>, JpaRepository<?, Long>> repositories = new LinkedHashMap<>();
+    private final Map<Class<?>, AtomicLong> counters = new LinkedHashMap<>();
+
+    @PostConstruct
+    void init() {
+        repositories.put(Painting.class, paintingRepository);
+        repositories.put(Museum.class, museumRepository);
+        repositories.put(Artist.class, artistRepository);
+        repositories.put(Country.class, countryRepository);
+        repositories.put(User.class, userRepository);
+        for (Class<?> c : repositories.keySet()) {
+            counters.put(c, new AtomicLong());
+        }
+    }
+
+    public long get(Class<?> entity) {
+        return counters.get(entity).get();
+    }
+
+    public void increment(Class<?> entity) {
+        counters.get(entity).incrementAndGet();
+    }
+
+    public void decrement(Class<?> entity) {
+        counters.get(entity).decrementAndGet();
+    }
+
+    public void add(Class<?> entity, long delta) {
+        counters.get(entity).addAndGet(delta);
+    }
+
+    /**
+     * Пересчитывает количество записей одной таблицы по БД. Если количество разошлось,
+     * таблица менялась в обход API, и ETag её списков тоже должен смениться
+     */
+    public void reconcile(Class<?> entity) {
+        long count = repositories.get(entity).count();
+        if (counters.get(entity).getAndSet(count) != count) {
+            tableVersions.bump(entity);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${private.counters-reconcile-interval:300000}",
+            initialDelayString = "${private.counters-reconcile-interval:300000}")
+    public void reconcileAll() {
+        for (Class<?> c : repositories.keySet()) {
+            reconcile(c);
+        }
+    }
+
+    public Map<String, Long> getCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Map.Entry<Class<?>, AtomicLong> e : counters.entrySet()) {
+            counts.put(e.getKey().getSimpleName(), e.getValue().get());
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,284 @@
+package ru.iu3.backend.tools;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.zalando.logbook.Correlation;
+import org.zalando.logbook.HttpMessage;
+import org.zalando.logbook.HttpRequest;
+import org.zalando.logbook.HttpResponse;
+import org.zalando.logbook.Precorrelation;
+import org.zalando.logbook.Sink;
+import org.zalando.logbook.Strategy;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Журнал HTTP-обменов вместо синхронной записи logbook. Для logbook это и Strategy, и Sink:
+ * <ul>
+ * <li>в выборку попадает доля обменов private.http-log.sample-rate (или доля из правила маршрута);
+ * у остальных тела не буферизуются вовсе, а записываются только ответы 5xx, без тел;</li>
+ * <li>тело обрезается до private.http-log.max-body-size байт, по правилу маршрута - своё
+ * ограничение или none, тогда тело не буферизуется;</li>
+ * <li>поток запроса только снимает копию обмена и кладёт её в RingBuffer, форматирует и пишет в лог
+ * отдельный поток. Если очередь заполнена, запись выбрасывается и учитывается в счётчике dropped:
+ * запрос не ждёт журнала.</li>
+ * </ul>
+ * Правила маршрутов: private.http-log.routes=шаблон=доля:тело,..., первое совпавшее по пути,
+ * например /auth/**=1:none,/api/v1/paintings/**=0.05:256
+ */
+@Component
+public class ExchangeLog implements Strategy, Sink {
+    private static final Logger log = LoggerFactory.getLogger(ExchangeLog.class);
+
+    // Тело не записывается и не буферизуется
+    private static final int NO_BODY = 0;
+    // Сколько поток записи спит при пустой очереди, если его не разбудили
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Копия обмена, не связанная с объектами запроса сервлета: после ответа они переиспользуются
+     */
+    public record Exchange(String id, Instant start, long millis, String remote, String method, String uri,
+                           Map<String, List<String>> requestHeaders, String requestBody,
+                           int status, Map<String, List<String>> responseHeaders, String responseBody) {
+    }
+
+    private record Route(String pattern, double rate, int maxBody) {
+    }
+
+    private record Decision(boolean sampled, int maxBody) {
+    }
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Value("${private.http-log.sample-rate:1}")
+    private double sampleRate;
+
+    @Value("${private.http-log.max-body-size:1024}")
+    private int maxBodySize;
+
+    @Value("${private.http-log.capacity:4096}")
+    private int capacity;
+
+    @Value("${private.http-log.routes:}")
+    private String routeRules;
+
+    private final AntPathMatcher matcher = new AntPathMatcher();
+    private final List<Route> routes = new ArrayList<>();
+    private Route defaultRoute;
+
+    // Все вызовы Strategy по одному обмену идут в потоке запроса, так решение о выборке доходит до записи
+    private final ThreadLocal<Decision> decision = new ThreadLocal<>();
+
+    private RingBuffer<Exchange> queue;
+    private Thread writer;
+    private volatile boolean running;
+    // Поток записи нашёл очередь пустой и засыпает: первая следующая запись его будит
+    private final AtomicBoolean idle = new AtomicBoolean();
+
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    @PostConstruct
+    void init() {
+        defaultRoute = new Route("/**", sampleRate, maxBodySize);
+        for (String rule : routeRules.split(",")) {
+            rule = rule.trim();
+            if (!rule.isEmpty()) {
+                routes.add(parseRoute(rule));
+            }
+        }
+        queue = new RingBuffer<>(capacity);
+        running = true;
+        writer = new Thread(this::drain, "http-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    @Override
+    public HttpRequest process(HttpRequest request) throws IOException {
+        Route route = route(request.getPath());
+        boolean sampled = route.rate >= 1 || route.rate > 0 && ThreadLocalRandom.current().nextDouble() < route.rate;
+        Decision d = new Decision(sampled, sampled ? route.maxBody : NO_BODY);
+        decision.set(d);
+        return d.maxBody == NO_BODY ? request.withoutBody() : request.withBody();
+    }
+
+    @Override
+    public void write(Precorrelation precorrelation, HttpRequest request, Sink sink) {
+        // Запрос и ответ пишутся одной записью, когда ответ готов
+    }
+
+    @Override
+    public HttpResponse process(HttpRequest request, HttpResponse response) throws IOException {
+        Decision d = decision.get();
+        return d == null || d.maxBody == NO_BODY ? response.withoutBody() : response.withBody();
+    }
+
+    @Override
+    public void write(Correlation correlation, HttpRequest request, HttpResponse response, Sink sink)
+            throws IOException {
+        Decision d = decision.get();
+        try {
+            if (d != null && d.sampled || response.getStatus() >= 500) {
+                sink.write(correlation, request, response);
+            } else {
+                skipped.increment();
+            }
+        } finally {
+            decision.remove();
+        }
+    }
+
+    @Override
+    public void write(Precorrelation precorrelation, HttpRequest request) {
+        // См. write(Precorrelation, HttpRequest, Sink)
+    }
+
+    @Override
+    public void write(Correlation correlation, HttpRequest request, HttpResponse response) throws IOException {
+        Decision d = decision.get();
+        int maxBody = d == null ? maxBodySize : d.maxBody;
+        Exchange e = new Exchange(correlation.getId(), correlation.getStart(), correlation.getDuration().toMillis(),
+                request.getRemote(), request.getMethod(), request.getRequestUri(),
+                request.getHeaders(), body(request, maxBody),
+                response.getStatus(), response.getHeaders(), body(response, maxBody));
+        if (queue.offer(e)) {
+            queued.increment();
+            // Будит один писатель, остальные видят idle = false и только читают флаг
+            if (idle.get() && idle.compareAndSet(true, false)) {
+                LockSupport.unpark(writer);
+            }
+        } else {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Счётчики журнала: поставлено в очередь, пропущено выборкой, выброшено из-за заполненной очереди,
+     * записано, ошибки записи и текущая длина очереди
+     *
+     * @return - счётчики в виде JSON
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queued", queued.sum());
+        stats.put("skipped", skipped.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("written", written.sum());
+        stats.put("failed", failed.sum());
+        stats.put("pending", queue.size());
+        stats.put("capacity", queue.capacity());
+        return stats;
+    }
+
+    // Поток записи: разбирает очередь, а когда она пуста, спит до следующей записи.
+    // Флаг ставится до повторной проверки очереди, поэтому запись либо найдётся, либо разбудит поток.
+    // Ячейку очереди писатель публикует lazySet, так что редкое пробуждение всё же может потеряться -
+    // тогда запись подождёт IDLE_PARK_NANOS
+    private void drain() {
+        while (true) {
+            Exchange e = queue.poll();
+            if (e == null) {
+                if (!running) {
+                    return;
+                }
+                idle.set(true);
+                e = queue.poll();
+                if (e == null) {
+                    if (running) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                    idle.set(false);
+                    continue;
+                }
+                idle.set(false);
+            }
+            try {
+                log.info(objectMapper.writeValueAsString(e));
+                written.increment();
+            } catch (JsonProcessingException | RuntimeException ex) {
+                failed.increment();
+            }
+        }
+    }
+
+    private Route route(String path) {
+        for (Route r : routes) {
+            if (matcher.match(r.pattern, path)) {
+                return r;
+            }
+        }
+        return defaultRoute;
+    }
+
+    private Route parseRoute(String rule) {
+        try {
+            int eq = rule.lastIndexOf('=');
+            int colon = rule.indexOf(':', eq);
+            String pattern = rule.substring(0, eq).trim();
+            double rate = Double.parseDouble(rule.substring(eq + 1, colon > 0 ? colon : rule.length()).trim());
+            String body = colon > 0 ? rule.substring(colon + 1).trim() : "";
+            int maxBody;
+            switch (body) {
+                case "":
+                    maxBody = maxBodySize;
+                    break;
+                case "none":
+                    maxBody = NO_BODY;
+                    break;
+                case "full":
+                    maxBody = Integer.MAX_VALUE;
+                    break;
+                default:
+                    maxBody = Integer.parseInt(body);
+            }
+            return new Route(pattern, rate, maxBody);
+        } catch (RuntimeException ex) {
+            throw new IllegalStateException("Некорректное правило private.http-log.routes: " + rule, ex);
+        }
+    }
+
+    // Тело обрезается по байтам, до декодирования: большие страницы списков не превращаются в строку целиком
+    private static String body(HttpMessage message, int maxBody) throws IOException {
+        if (maxBody == NO_BODY) {
+            return null;
+        }
+        byte[] body = message.getBody();
+        if (body.length == 0) {
+            return null;
+        }
+        int length = Math.min(body.length, maxBody);
+        String text = new String(body, 0, length, message.getCharset());
+        return length < body.length ? text + "...(" + body.length + " bytes)" : text;
+    }
+}
@@ -0,0 +1,133 @@
+package ru.iu3.backend.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Иерархическое колесо таймеров.
+ * Время делится на тики, каждый уровень колеса - это wheelSize ячеек, ячейка уровня l покрывает
+ * wheelSize^l тиков. Постановка и срабатывание стоят O(1), а далёкие сроки постепенно
+ * "спускаются" на нижние уровни по мере приближения. Просроченные элементы выдаются пачкой.
+ *
+ * @param <T> - тип элемента, который ставится на таймер
+ */
+public class HierarchicalTimingWheel<T> {
+
+    private static class Node<T> {
+        final T item;
+        final long tick;
+
+        Node(T item, long tick) {
+            this.item = item;
+            this.tick = tick;
+        }
+    }
+
+    private final long tickMillis;
+    private final int bits;
+    private final int mask;
+    private final int levels;
+    private final List<Node<T>>[][] slots;
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param tickMillis - длительность тика в миллисекундах
+     * @param wheelSize  - число ячеек на уровне (степень двойки)
+     * @param levels     - число уровней
+     * @param nowMillis  - текущее время
+     */
+    public HierarchicalTimingWheel(long tickMillis, int wheelSize, int levels, long nowMillis) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("wheelSize must be a power of two");
+        }
+        this.tickMillis = tickMillis;
+        this.bits = Integer.numberOfTrailingZeros(wheelSize);
+        this.mask = wheelSize - 1;
+        this.levels = levels;
+        this.slots = newSlots(levels, wheelSize);
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * Ставит элемент на таймер
+     *
+     * @param item           - элемент
+     * @param deadlineMillis - момент срабатывания
+     */
+    public synchronized void schedule(T item, long deadlineMillis) {
+        insert(new Node<>(item, Math.max(deadlineMillis / tickMillis, currentTick + 1)));
+        ++size;
+    }
+
+    /**
+     * Проворачивает колесо до текущего момента
+     *
+     * @param nowMillis - текущее время
+     * @return - элементы, срок которых наступил
+     */
+    public synchronized List<T> advance(long nowMillis) {
+        List<T> expired = new ArrayList<>();
+        long target = nowMillis / tickMillis;
+        while (currentTick < target) {
+            ++currentTick;
+            // Сначала спускаем верхние уровни, чтобы их элементы успели попасть в нижние ячейки этого тика
+            for (int l = levels - 1; l > 0; --l) {
+                if ((currentTick & ((1L << (bits * l)) - 1)) == 0) {
+                    List<Node<T>> cascade = take(l, (int) ((currentTick >>> (bits * l)) & mask));
+                    if (cascade != null) {
+                        for (Node<T> n : cascade) {
+                            if (n.tick <= currentTick) {
+                                expired.add(n.item);
+                                --size;
+                            } else {
+                                insert(n);
+                            }
+                        }
+                    }
+                }
+            }
+            List<Node<T>> due = take(0, (int) (currentTick & mask));
+            if (due != null) {
+                for (Node<T> n : due) {
+                    expired.add(n.item);
+                    --size;
+                }
+            }
+        }
+        return expired;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private void insert(Node<T> n) {
+        long delta = n.tick - currentTick;
+        int level = 0;
+        while (level < levels - 1 && delta >= (1L << (bits * (level + 1)))) {
+            ++level;
+        }
+        // Слишком далёкий срок кладём в последнюю ячейку верхнего уровня, при спуске он вернётся обратно
+        long placement = Math.min(n.tick, currentTick + (1L << (bits * levels)) - 1);
+        int index = (int) ((placement >>> (bits * level)) & mask);
+        List<Node<T>> slot = slots[level][index];
+        if (slot == null) {
+            slot = new ArrayList<>();
+            slots[level][index] = slot;
+        }
+        slot.add(n);
+    }
+
+    // Массив обобщённого типа напрямую не создать: создаётся массив List и приводится один раз здесь
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> List<Node<T>>[][] newSlots(int levels, int wheelSize) {
+        return new List[levels][wheelSize];
+    }
+
+    private List<Node<T>> take(int level, int index) {
+        List<Node<T>> slot = slots[level][index];
+        slots[level][index] = null;
+        return slot;
+    }
+}
@@ -0,0 +1,112 @@
+package ru.iu3.backend.tools;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма длительностей с фиксированными корзинами: по 32 на каждую степень двойки микросекунд,
+ * от 1 мкс до 2^36 мкс (около 19 часов). Запись - один инкремент в массиве без блокировок и без выделения
+ * памяти, поэтому гистограммы можно держать включёнными постоянно. Перцентиль берётся по верхней
+ * границе корзины и завышен не больше чем на 1/32 (около 3%), этого хватает для сравнения с порогами
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 36;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 1) * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sumMicros = new LongAdder();
+
+    /**
+     * Снимок гистограммы: счётчики корзин на момент чтения
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        public final long count;
+        public final long sumMicros;
+
+        Snapshot(long[] counts, long sumMicros) {
+            this.counts = counts;
+            long n = 0;
+            for (long c : counts) {
+                n += c;
+            }
+            this.count = n;
+            this.sumMicros = sumMicros;
+        }
+
+        /**
+         * Перцентиль в миллисекундах
+         *
+         * @param q - доля от 0 до 1, например 0.99
+         */
+        public double percentileMillis(double q) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; ++i) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return upperBound(i) / 1000.0;
+                }
+            }
+            return upperBound(counts.length - 1) / 1000.0;
+        }
+
+        /**
+         * Сколько значений меньше 2^exponent мкс, для корзин le в формате Prometheus
+         */
+        public long countBelow(int exponent) {
+            long n = 0;
+            // Корзины до 2^exponent заканчиваются на индексе последней подкорзины степени exponent - 1
+            int last = exponent < SUB_BITS ? (1 << exponent) - 1 : (exponent - SUB_BITS) * SUB + SUB - 1;
+            for (int i = 0; i <= last && i < counts.length; ++i) {
+                n += counts[i];
+            }
+            return n;
+        }
+    }
+
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(index(micros));
+        sumMicros.add(micros);
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; ++i) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, sumMicros.sum());
+    }
+
+    /**
+     * Номер корзины: до 32 мкс - точно, дальше старший бит задаёт степень двойки,
+     * а SUB_BITS следующих - долю внутри неё
+     */
+    static int index(long micros) {
+        if (micros < SUB) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB - 1);
+        return (exponent - SUB_BITS + 1) * SUB + sub;
+    }
+
+    // Верхняя граница корзины в микросекундах (не включая её саму)
+    static long upperBound(int index) {
+        if (index < SUB) {
+            return index + 1;
+        }
+        int exponent = index / SUB + SUB_BITS - 1;
+        int sub = index % SUB;
+        return (long) (SUB + sub + 1) << (exponent - SUB_BITS);
+    }
+}
@@ -0,0 +1,164 @@
+package ru.iu3.backend.tools;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+
+/**
+ * Оборачивает пул соединений: замеряет ожидание соединения и выполнение каждого SQL-запроса
+ * (и от Hibernate, и от JdbcTemplate) и передаёт их в Metrics. Запросы различаются только по первому
+ * слову, текст запроса и параметры не сохраняются. Сам пул Hikari остаётся прежним,
+ * его заполненность Metrics читает напрямую. Замер идёт через Proxy на каждом соединении и запросе;
+ * во сколько это обходится, показывает ReadPathBenchmark (параметр sqlTiming), а при
+ * private.metrics.sql-timing=false пул не оборачивается вовсе
+ */
+@Component
+public class MeteredDataSource implements BeanPostProcessor {
+
+    // Metrics берётся при обёртке пула, а не при создании этого компонента, который создаётся раньше остальных
+    @Autowired
+    ObjectProvider<Metrics> metricsProvider;
+
+    @Value("${private.metrics.sql-timing:true}")
+    private boolean sqlTiming;
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        if (!(bean instanceof DataSource) || bean instanceof Metered) {
+            return bean;
+        }
+        Metrics metrics = metricsProvider.getObject();
+        if (bean instanceof HikariDataSource) {
+            metrics.watchPool((HikariDataSource) bean);
+        }
+        return sqlTiming ? new Metered((DataSource) bean, metrics) : bean;
+    }
+
+    private static class Metered extends DelegatingDataSource implements AutoCloseable {
+        private final Metrics metrics;
+
+        Metered(DataSource target, Metrics metrics) {
+            super(target);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            long start = System.nanoTime();
+            Connection c = super.getConnection();
+            metrics.recordConnectionAcquire(System.nanoTime() - start);
+            return wrap(c);
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            long start = System.nanoTime();
+            Connection c = super.getConnection(username, password);
+            metrics.recordConnectionAcquire(System.nanoTime() - start);
+            return wrap(c);
+        }
+
+        // Пул закрывается при остановке приложения по методу close() компонента, а компонент теперь - обёртка
+        @Override
+        public void close() {
+            if (getTargetDataSource() instanceof HikariDataSource) {
+                ((HikariDataSource) getTargetDataSource()).close();
+            }
+        }
+
+        private Connection wrap(Connection target) {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("equals")) {
+                            return proxy == args[0];
+                        }
+                        if (method.getName().equals("hashCode")) {
+                            return System.identityHashCode(proxy);
+                        }
+                        Object result = invoke(target, method, args);
+                        if (result instanceof Statement) {
+                            // У prepareStatement и prepareCall текст запроса - первый аргумент
+                            String sql = args != null && args.length > 0 && args[0] instanceof String
+                                    ? (String) args[0] : null;
+                            return wrap((Statement) result, sql);
+                        }
+                        return result;
+                    });
+        }
+
+        private Statement wrap(Statement target, String sql) {
+            Class<?> type = target instanceof CallableStatement ? CallableStatement.class
+                    : target instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+            String prepared = sql == null ? null : kind(sql);
+            return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{type},
+                    (proxy, method, args) -> {
+                        if (method.getName().equals("equals")) {
+                            return proxy == args[0];
+                        }
+                        if (method.getName().equals("hashCode")) {
+                            return System.identityHashCode(proxy);
+                        }
+                        if (!method.getName().startsWith("execute")) {
+                            return invoke(target, method, args);
+                        }
+                        String kind = prepared != null ? prepared
+                                : args != null && args.length > 0 && args[0] instanceof String
+                                ? kind((String) args[0]) : "other";
+                        long start = System.nanoTime();
+                        boolean failed = true;
+                        try {
+                            Object result = invoke(target, method, args);
+                            failed = false;
+                            return result;
+                        } finally {
+                            metrics.recordStatement(kind, System.nanoTime() - start, failed);
+                        }
+                    });
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+
+        private static String kind(String sql) {
+            int from = 0;
+            while (from < sql.length() && !Character.isLetter(sql.charAt(from))) {
+                ++from;
+            }
+            int to = from;
+            while (to < sql.length() && Character.isLetter(sql.charAt(to))) {
+                ++to;
+            }
+            String word = sql.substring(from, to).toLowerCase(Locale.ROOT);
+            switch (word) {
+                case "select":
+                case "insert":
+                case "update":
+                case "delete":
+                    return word;
+                default:
+                    return "other";
+            }
+        }
+    }
+}
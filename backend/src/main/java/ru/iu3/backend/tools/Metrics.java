@@ -0,0 +1,291 @@
+package ru.iu3.backend.tools;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Метрики работы бэкенда: время ответа по маршрутам, время проверки токена, число и время
+ * SQL-запросов, ожидание соединения и заполненность пула, выделение памяти в JVM.
+ * Запись - инкремент в гистограмме (см. LatencyHistogram), а всё остальное собирается только
+ * при чтении, поэтому метрики включены всегда. Отдаются в текстовом формате Prometheus
+ * (MetricsController) и кратко в JSON (/api/v1/monitoring/latency)
+ */
+@Component
+public class Metrics {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    // Границы корзин le в выгрузке: степени двойки микросекунд от 2^7 (128 мкс) до 2^26 (67 с)
+    private static final int LE_FROM = 7;
+    private static final int LE_TO = 26;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Маршрут: метод, шаблон пути из @GetMapping и т.п. (не сам путь, чтобы id не плодили ряды) и код ответа
+     */
+    public record Endpoint(String method, String uri, int status) {
+    }
+
+    private static class EndpointStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder allocatedBytes = new LongAdder();
+    }
+
+    private final ConcurrentHashMap<Endpoint, EndpointStats> endpoints = new ConcurrentHashMap<>();
+    // Ключ - режим токенов и исход: session:ok, signed:failed
+    private final ConcurrentHashMap<String, LatencyHistogram> authentication = new ConcurrentHashMap<>();
+    // Ключ - первое слово запроса: select, insert, update, delete, other
+    private final ConcurrentHashMap<String, LatencyHistogram> statements = new ConcurrentHashMap<>();
+    private final LatencyHistogram connectionAcquire = new LatencyHistogram();
+    private final LongAdder statementErrors = new LongAdder();
+
+    private volatile HikariDataSource pool;
+
+    // Выделение памяти по потокам на момент прошлого чтения: сумма по живым потокам убывает, когда они завершаются
+    private final Map<Long, Long> threadAllocated = new HashMap<>();
+    private long allocatedTotal;
+    private long allocatedAt;
+    private double allocationRate;
+
+    /**
+     * Учитывает ответ на запрос
+     *
+     * @param nanos          - время от входа в первый фильтр до конца ответа
+     * @param allocatedBytes - сколько памяти выделил поток запроса, -1 - неизвестно
+     */
+    public void recordRequest(Endpoint endpoint, long nanos, long allocatedBytes) {
+        EndpointStats stats = endpoints.computeIfAbsent(endpoint, e -> new EndpointStats());
+        stats.latency.record(nanos);
+        if (allocatedBytes > 0) {
+            stats.allocatedBytes.add(allocatedBytes);
+        }
+    }
+
+    public void recordAuthentication(String mode, boolean ok, long nanos) {
+        authentication.computeIfAbsent(mode + (ok ? ":ok" : ":failed"), k -> new LatencyHistogram()).record(nanos);
+    }
+
+    public void recordStatement(String kind, long nanos, boolean failed) {
+        statements.computeIfAbsent(kind, k -> new LatencyHistogram()).record(nanos);
+        if (failed) {
+            statementErrors.increment();
+        }
+    }
+
+    public void recordConnectionAcquire(long nanos) {
+        connectionAcquire.record(nanos);
+    }
+
+    /**
+     * Пул соединений, заполненность которого выводится в метриках
+     */
+    public void watchPool(HikariDataSource pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Сколько памяти выделил текущий поток с момента запуска, -1 - если JVM этого не считает
+     */
+    public static long currentThreadAllocatedBytes() {
+        return THREADS.isThreadAllocatedMemoryEnabled() ? THREADS.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    /**
+     * Все метрики в текстовом формате Prometheus
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(16384);
+
+        header(out, "http_server_requests_seconds", "histogram", "Время ответа по маршрутам");
+        endpoints.forEach((e, s) -> histogram(out, "http_server_requests_seconds", labels(e), s.latency.snapshot()));
+        header(out, "http_server_allocated_bytes_total", "counter", "Память, выделенная потоком запроса");
+        endpoints.forEach((e, s) -> sample(out, "http_server_allocated_bytes_total", labels(e),
+                s.allocatedBytes.sum()));
+
+        header(out, "auth_token_check_seconds", "histogram", "Проверка токена в AuthenticationProvider");
+        authentication.forEach((k, h) -> {
+            int colon = k.indexOf(':');
+            histogram(out, "auth_token_check_seconds",
+                    "mode=\"" + k.substring(0, colon) + "\",outcome=\"" + k.substring(colon + 1) + "\"",
+                    h.snapshot());
+        });
+
+        header(out, "jdbc_statements_seconds", "histogram", "Выполнение SQL-запросов по виду");
+        statements.forEach((k, h) -> histogram(out, "jdbc_statements_seconds", "kind=\"" + k + "\"", h.snapshot()));
+        header(out, "jdbc_statement_errors_total", "counter", "SQL-запросы, завершившиеся ошибкой");
+        sample(out, "jdbc_statement_errors_total", null, statementErrors.sum());
+        header(out, "jdbc_connection_acquire_seconds", "histogram", "Ожидание соединения из пула");
+        histogram(out, "jdbc_connection_acquire_seconds", null, connectionAcquire.snapshot());
+        pool(out);
+
+        jvm(out);
+        return out.toString();
+    }
+
+    /**
+     * Перцентили времени ответа по маршрутам, проверки токена и SQL-запросов, в миллисекундах
+     *
+     * @return - сводка в виде JSON, маршруты по убыванию числа запросов
+     */
+    public Map<String, Object> getLatencyStatistics() {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        endpoints.forEach((e, s) -> {
+            Map<String, Object> row = percentiles(s.latency.snapshot());
+            row.put("method", e.method());
+            row.put("uri", e.uri());
+            row.put("status", e.status());
+            rows.add(row);
+        });
+        rows.sort(Comparator.comparingLong((Map<String, Object> r) -> (Long) r.get("count")).reversed());
+
+        Map<String, Object> auth = new LinkedHashMap<>();
+        authentication.forEach((k, h) -> auth.put(k, percentiles(h.snapshot())));
+        Map<String, Object> sql = new LinkedHashMap<>();
+        statements.forEach((k, h) -> sql.put(k, percentiles(h.snapshot())));
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("endpoints", rows);
+        stats.put("authentication", auth);
+        stats.put("statements", sql);
+        stats.put("connectionAcquire", percentiles(connectionAcquire.snapshot()));
+        return stats;
+    }
+
+    private static Map<String, Object> percentiles(LatencyHistogram.Snapshot s) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("count", s.count);
+        row.put("p50", s.percentileMillis(0.5));
+        row.put("p95", s.percentileMillis(0.95));
+        row.put("p99", s.percentileMillis(0.99));
+        row.put("max", s.percentileMillis(1));
+        return row;
+    }
+
+    private void pool(StringBuilder out) {
+        HikariDataSource ds = pool;
+        HikariPoolMXBean mx = ds == null ? null : ds.getHikariPoolMXBean();
+        if (mx == null) {
+            // Пул создаётся при первом запросе соединения
+            return;
+        }
+        header(out, "jdbc_pool_connections", "gauge", "Соединения пула по состоянию");
+        sample(out, "jdbc_pool_connections", "state=\"active\"", mx.getActiveConnections());
+        sample(out, "jdbc_pool_connections", "state=\"idle\"", mx.getIdleConnections());
+        sample(out, "jdbc_pool_connections", "state=\"total\"", mx.getTotalConnections());
+        header(out, "jdbc_pool_max_connections", "gauge", "Наибольший размер пула");
+        sample(out, "jdbc_pool_max_connections", null, ds.getMaximumPoolSize());
+        header(out, "jdbc_pool_pending_threads", "gauge", "Потоки, ждущие соединения");
+        sample(out, "jdbc_pool_pending_threads", null, mx.getThreadsAwaitingConnection());
+    }
+
+    private void jvm(StringBuilder out) {
+        long allocated;
+        double rate;
+        synchronized (threadAllocated) {
+            allocated = sampleAllocation();
+            rate = allocationRate;
+        }
+        header(out, "jvm_allocated_bytes_total", "counter", "Память, выделенная всеми потоками");
+        sample(out, "jvm_allocated_bytes_total", null, allocated);
+        header(out, "jvm_allocation_rate_bytes", "gauge", "Скорость выделения памяти между двумя чтениями, байт/с");
+        sample(out, "jvm_allocation_rate_bytes", null, rate);
+
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        header(out, "jvm_heap_bytes", "gauge", "Куча");
+        sample(out, "jvm_heap_bytes", "area=\"used\"", heap.getUsed());
+        sample(out, "jvm_heap_bytes", "area=\"committed\"", heap.getCommitted());
+        sample(out, "jvm_heap_bytes", "area=\"max\"", heap.getMax());
+
+        header(out, "jvm_gc_collections_total", "counter", "Сборки мусора");
+        List<GarbageCollectorMXBean> gcs = ManagementFactory.getGarbageCollectorMXBeans();
+        for (GarbageCollectorMXBean gc : gcs) {
+            sample(out, "jvm_gc_collections_total", "gc=\"" + escape(gc.getName()) + "\"", gc.getCollectionCount());
+        }
+        header(out, "jvm_gc_collection_seconds_total", "counter", "Время сборок мусора");
+        for (GarbageCollectorMXBean gc : gcs) {
+            sample(out, "jvm_gc_collection_seconds_total", "gc=\"" + escape(gc.getName()) + "\"",
+                    gc.getCollectionTime() / 1000.0);
+        }
+    }
+
+    // Прирост выделенной памяти по живым потокам с прошлого чтения
+    private long sampleAllocation() {
+        if (!THREADS.isThreadAllocatedMemoryEnabled()) {
+            return 0;
+        }
+        long[] ids = THREADS.getAllThreadIds();
+        long[] bytes = THREADS.getThreadAllocatedBytes(ids);
+        Map<Long, Long> alive = new HashMap<>(ids.length * 2);
+        long delta = 0;
+        for (int i = 0; i < ids.length; ++i) {
+            if (bytes[i] < 0) {
+                continue;
+            }
+            Long before = threadAllocated.get(ids[i]);
+            delta += bytes[i] - (before == null ? 0 : before);
+            alive.put(ids[i], bytes[i]);
+        }
+        threadAllocated.clear();
+        threadAllocated.putAll(alive);
+
+        long now = System.nanoTime();
+        if (allocatedAt != 0 && now > allocatedAt) {
+            allocationRate = delta * 1e9 / (now - allocatedAt);
+        }
+        allocatedAt = now;
+        allocatedTotal += delta;
+        return allocatedTotal;
+    }
+
+    private static String labels(Endpoint e) {
+        return "method=\"" + e.method() + "\",uri=\"" + escape(e.uri()) + "\",status=\"" + e.status() + "\"";
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void histogram(StringBuilder out, String name, String labels, LatencyHistogram.Snapshot s) {
+        String prefix = labels == null ? "" : labels + ",";
+        for (int e = LE_FROM; e <= LE_TO; ++e) {
+            out.append(name).append("_bucket{").append(prefix).append("le=\"").append((1L << e) / 1e6).append("\"} ")
+                    .append(s.countBelow(e)).append('\n');
+        }
+        out.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(s.count).append('\n');
+        sample(out, name + "_sum", labels, s.sumMicros / 1e6);
+        sample(out, name + "_count", labels, s.count);
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,85 @@
+package ru.iu3.backend.tools;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Выгрузка таблиц в NDJSON (один JSON-объект на строку).
+ * Строки читаются курсором в read-only транзакции и сразу пишутся в поток ответа,
+ * поэтому память не зависит от размера таблицы. Если клиент отключился,
+ * запись обрывается, а курсор и транзакция закрываются.
+ */
+@Component
+public class NdjsonExporter {
+    public static final String CONTENT_TYPE = "application/x-ndjson";
+
+    // Через сколько строк сбрасывать буфер в сокет
+    private static final int FLUSH_EVERY = 500;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    private TransactionTemplate readOnly;
+    private ObjectWriter writer;
+
+    @PostConstruct
+    void init() {
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        // Сбрасываем буфер сами, а не после каждого объекта
+        writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * Пишет все строки запроса в ответ
+     *
+     * @param response - ответ сервлета
+     * @param name     - имя файла выгрузки без расширения
+     * @param rows     - запрос, возвращающий поток строк (вызывается внутри транзакции)
+     */
+    public <T> void export(HttpServletResponse response, String name, Supplier<Stream<T>> rows) {
+        response.setContentType(CONTENT_TYPE);
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + name + ".ndjson\"");
+
+        readOnly.executeWithoutResult(status -> {
+            int written = 0;
+            try (Stream<T> stream = rows.get()) {
+                OutputStream out = response.getOutputStream();
+                JsonGenerator gen = objectMapper.getFactory().createGenerator(out);
+                // Поток ответа закрывает контейнер
+                gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                // Строки разделяем сами, без пробела, который Jackson ставит между корневыми значениями
+                gen.setRootValueSeparator(null);
+                for (Iterator<T> it = stream.iterator(); it.hasNext(); ) {
+                    writer.writeValue(gen, it.next());
+                    gen.writeRaw('\n');
+                    if (++written % FLUSH_EVERY == 0) {
+                        gen.flush();
+                    }
+                }
+                gen.flush();
+            } catch (IOException ex) {
+                // Клиент закрыл соединение: читать дальше незачем, курсор закроется вместе с потоком
+            }
+        });
+    }
+}
@@ -0,0 +1,114 @@
+package ru.iu3.backend.tools;
+
+import org.springframework.security.crypto.codec.Hex;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+/**
+ * Хэширование паролей.
+ * Экземпляры MessageDigest переиспользуются в пределах потока, вычисления идут над массивами байт.
+ * Формат хэша версионируется:
+ * <ul>
+ *     <li>без префикса - старый формат Utils.computeHash: hex(SHA-256(пароль в кодировке платформы + соль));</li>
+ *     <li>"$1$" - hex(SHA-256(соль + пароль в UTF-8)), версия явно записана в самом хэше.</li>
+ * </ul>
+ * Пароли в старом формате пересчитываются при успешном входе (см. needsRehash).
+ */
+@Component
+public class PasswordHasher {
+    public static final int CURRENT_VERSION = 1;
+
+    private static final String V1_PREFIX = "$1$";
+    private static final int SALT_LENGTH = 32;
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    });
+
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Хэш пароля вместе с солью, в том виде, в каком они лежат в таблице users
+     */
+    public static class Hash {
+        public final String password;
+        public final String salt;
+
+        Hash(String password, String salt) {
+            this.password = password;
+            this.salt = salt;
+        }
+    }
+
+    /**
+     * Считает хэш нового пароля в текущем формате со свежей солью
+     */
+    public Hash hash(String pwd) {
+        byte[] salt = new byte[SALT_LENGTH];
+        random.nextBytes(salt);
+        byte[] h = saltFirst(pwd.getBytes(StandardCharsets.UTF_8), salt);
+        return new Hash(V1_PREFIX + new String(Hex.encode(h)), new String(Hex.encode(salt)));
+    }
+
+    /**
+     * Проверяет пароль
+     *
+     * @param pwd    - введённый пароль
+     * @param stored - хэш из БД (любой поддерживаемой версии)
+     * @param salt   - соль из БД в hex
+     * @return - true, если пароль подходит
+     */
+    public boolean verify(String pwd, String stored, String salt) {
+        if (pwd == null || stored == null || salt == null) {
+            return false;
+        }
+        byte[] saltBytes;
+        byte[] expected;
+        try {
+            saltBytes = Hex.decode(salt);
+            expected = Hex.decode(version(stored) == 0 ? stored : stored.substring(V1_PREFIX.length()));
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+
+        // Старый формат брал байты пароля в кодировке платформы (pwd.getBytes()), иначе не совпадут хэши
+        // паролей с не-ASCII символами, созданных на сервере с кодировкой, отличной от UTF-8
+        byte[] actual = version(stored) == 0
+                ? saltLast(pwd.getBytes(Charset.defaultCharset()), saltBytes)
+                : saltFirst(pwd.getBytes(StandardCharsets.UTF_8), saltBytes);
+        // Сравнение за постоянное время
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    /**
+     * Нужно ли пересчитать хэш в текущий формат
+     */
+    public boolean needsRehash(String stored) {
+        return stored == null || version(stored) != CURRENT_VERSION;
+    }
+
+    public static int version(String stored) {
+        return stored.startsWith(V1_PREFIX) ? 1 : 0;
+    }
+
+    private static byte[] saltLast(byte[] pwd, byte[] salt) {
+        MessageDigest digest = SHA256.get();
+        digest.update(pwd);
+        return digest.digest(salt);
+    }
+
+    private static byte[] saltFirst(byte[] pwd, byte[] salt) {
+        MessageDigest digest = SHA256.get();
+        digest.update(salt);
+        return digest.digest(pwd);
+    }
+}
@@ -0,0 +1,225 @@
+package ru.iu3.backend.tools;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.iu3.backend.repositories.ArtistView;
+import ru.iu3.backend.repositories.CountryView;
+import ru.iu3.backend.repositories.MuseumView;
+
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+
+/**
+ * Кэш справочных записей (страны, художники, музеи) по id: повторное чтение не ходит в БД.
+ * Хранятся проекции для чтения, а не сущности, поэтому записи неизменяемы и безопасны между запросами.
+ * Размер каждой области ограничен, запись живёт не дольше ttl секунд; контроллеры сбрасывают
+ * записи при изменении и удалении, а ttl ограничивает срок жизни изменений в обход API.
+ * Запись, загруженная одновременно со сбросом, в кэш не попадает, иначе сброс мог бы потеряться.
+ */
+@Component
+public class ReferenceCache {
+
+    /**
+     * Область кэша для одного вида записей
+     */
+    public static class Region<V> {
+        private static class Entry<V> {
+            final long id;
+            final V value;
+            final long loaded;
+
+            Entry(long id, V value, long loaded) {
+                this.id = id;
+                this.value = value;
+                this.loaded = loaded;
+            }
+        }
+
+        private final ConcurrentHashMap<Long, Entry<V>> entries = new ConcurrentHashMap<>();
+        // Записи в порядке загрузки; удалённые и заменённые записи остаются здесь, пока их не вытеснят
+        private final ConcurrentLinkedQueue<Entry<V>> order = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        // Растёт при каждом сбросе: загрузка, во время которой был сброс, в кэш не попадает
+        private final AtomicLong generation = new AtomicLong();
+        private final int maxSize;
+        private final long ttlNanos;
+        private final Region<String> tags;
+
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+        private final LongAdder invalidations = new LongAdder();
+
+        Region(int maxSize, long ttlSeconds, boolean withTags) {
+            this.maxSize = maxSize;
+            this.ttlNanos = ttlSeconds * 1_000_000_000L;
+            this.tags = withTags ? new Region<>(maxSize, ttlSeconds, false) : null;
+        }
+
+        /**
+         * Версии тех же записей для ETag (см. findVersionTag в репозиториях).
+         * Сбрасываются вместе с записями области
+         */
+        public Region<String> tags() {
+            return tags;
+        }
+
+        /**
+         * Ищет запись по id, при промахе загружает её. Отсутствующие в БД записи не кэшируются,
+         * чтобы только что созданная запись сразу была видна
+         *
+         * @param id     - id записи
+         * @param loader - загрузка из БД
+         * @return - запись или пустой Optional, если её нет
+         */
+        public Optional<V> get(long id, LongFunction<Optional<V>> loader) {
+            long now = System.nanoTime();
+            Entry<V> e = entries.get(id);
+            if (e != null) {
+                if (now - e.loaded < ttlNanos) {
+                    hits.increment();
+                    return Optional.of(e.value);
+                }
+                if (entries.remove(id, e)) {
+                    evictions.increment();
+                }
+            }
+            misses.increment();
+            long loadedIn = generation.get();
+            Optional<V> value = loader.apply(id);
+            value.ifPresent(v -> put(new Entry<>(id, v, now), loadedIn));
+            return value;
+        }
+
+        /**
+         * Кладёт загруженную запись. Поколение проверяется после вставки: сброс, начавшийся до проверки,
+         * будет замечен здесь, а начавшийся после - сам удалит уже вставленную запись
+         */
+        private void put(Entry<V> e, long loadedIn) {
+            entries.put(e.id, e);
+            order.add(e);
+            queued.incrementAndGet();
+            if (generation.get() != loadedIn) {
+                entries.remove(e.id, e);
+                return;
+            }
+            while (entries.size() > maxSize || queued.get() > 2 * maxSize) {
+                if (!evictOldest()) {
+                    break;
+                }
+            }
+        }
+
+        public void invalidate(long id) {
+            generation.incrementAndGet();
+            if (entries.remove(id) != null) {
+                invalidations.increment();
+            }
+            if (tags != null) {
+                tags.invalidate(id);
+            }
+        }
+
+        public void invalidate(Collection<Long> ids) {
+            for (Long id : ids) {
+                invalidate(id);
+            }
+        }
+
+        public void clear() {
+            generation.incrementAndGet();
+            invalidations.add(entries.size());
+            entries.clear();
+            if (tags != null) {
+                tags.clear();
+            }
+        }
+
+        /**
+         * Выбрасывает самую давно загруженную запись (истёкшие загружены раньше остальных).
+         * Элементы очереди уже удалённых записей просто отбрасываются, так что на одну вставку
+         * в среднем приходится O(1) работы, а очередь не длиннее 2 * maxSize
+         *
+         * @return - false, если очередь пуста
+         */
+        private boolean evictOldest() {
+            Entry<V> e = order.poll();
+            if (e == null) {
+                return false;
+            }
+            queued.decrementAndGet();
+            if (entries.remove(e.id, e)) {
+                evictions.increment();
+            }
+            return true;
+        }
+
+        public Map<String, Object> getStatistics() {
+            long h = hits.sum();
+            long m = misses.sum();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("size", entries.size());
+            stats.put("maxSize", maxSize);
+            stats.put("hits", h);
+            stats.put("misses", m);
+            stats.put("evictions", evictions.sum());
+            stats.put("invalidations", invalidations.sum());
+            stats.put("hitRatio", h + m == 0 ? 0.0 : (double) h / (h + m));
+            if (tags != null) {
+                stats.put("tags", tags.getStatistics());
+            }
+            return stats;
+        }
+    }
+
+    @Value("${private.reference-cache.max-size:10000}")
+    private int maxSize;
+
+    @Value("${private.reference-cache.ttl:600}")
+    private long ttl;
+
+    private Region<CountryView> countries;
+    private Region<ArtistView> artists;
+    private Region<MuseumView> museums;
+
+    @PostConstruct
+    void init() {
+        countries = new Region<>(maxSize, ttl, true);
+        artists = new Region<>(maxSize, ttl, true);
+        museums = new Region<>(maxSize, ttl, true);
+    }
+
+    public Region<CountryView> countries() {
+        return countries;
+    }
+
+    /**
+     * Художники хранятся вместе с названием страны, поэтому при изменении или удалении
+     * стран эту область нужно сбрасывать целиком
+     */
+    public Region<ArtistView> artists() {
+        return artists;
+    }
+
+    public Region<MuseumView> museums() {
+        return museums;
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("countries", countries.getStatistics());
+        stats.put("artists", artists.getStatistics());
+        stats.put("museums", museums.getStatistics());
+        stats.put("ttlSeconds", ttl);
+        return stats;
+    }
+}
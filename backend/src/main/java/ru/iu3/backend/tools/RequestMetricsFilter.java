@@ -0,0 +1,45 @@
+package ru.iu3.backend.tools;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Замеряет каждый запрос целиком, вместе с проверкой токена и логированием, и передаёт в Metrics.
+ * Запрос относится к шаблону пути метода контроллера; запросы, не дошедшие до контроллера
+ * (нет токена, неизвестный путь), учитываются под uri="none"
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RequestMetricsFilter extends OncePerRequestFilter {
+
+    @Autowired
+    Metrics metrics;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        long allocated = Metrics.currentThreadAllocatedBytes();
+        int status = 500;
+        try {
+            chain.doFilter(request, response);
+            status = response.getStatus();
+        } finally {
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            long nanos = System.nanoTime() - start;
+            metrics.recordRequest(new Metrics.Endpoint(request.getMethod(),
+                            pattern == null ? "none" : pattern.toString(), status), nanos,
+                    allocated < 0 ? -1 : Metrics.currentThreadAllocatedBytes() - allocated);
+        }
+    }
+}
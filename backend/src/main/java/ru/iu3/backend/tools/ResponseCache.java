@@ -0,0 +1,173 @@
+package ru.iu3.backend.tools;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Кэш готовых ответов для популярных страниц списков: JSON хранится уже сериализованным
+ * (и, если он не слишком мал, ещё и сжатым gzip), поэтому повторный запрос не доходит ни до БД, ни до Jackson.
+ * Запись действительна, пока не изменились номера таблиц, из которых она собрана (см. TableVersions).
+ * Объём ограничен суммарным размером в байтах, при переполнении вытесняются давно не читавшиеся записи.
+ */
+@Component
+public class ResponseCache {
+
+    private static class Entry {
+        final String tag;
+        final byte[] json;
+        final byte[] gzip;
+
+        Entry(String tag, byte[] json, byte[] gzip) {
+            this.tag = tag;
+            this.json = json;
+            this.gzip = gzip;
+        }
+
+        int size() {
+            return json.length + (gzip != null ? gzip.length : 0);
+        }
+    }
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Value("${private.response-cache.max-bytes:16777216}")
+    private long maxBytes;
+
+    @Value("${private.response-cache.gzip:true}")
+    private boolean gzip;
+
+    @Value("${private.response-cache.gzip-min-size:1024}")
+    private int gzipMinSize;
+
+    // Порядок доступа: первая запись - та, что дольше всех не читалась
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+
+    private long hits;
+    private long misses;
+    private long stale;
+    private long evictions;
+    private long rejected;
+
+    /**
+     * Отдаёт ответ из кэша или строит его. Номер изменений нужно брать до запроса к БД:
+     * тогда запись, собранная во время изменения таблицы, сразу окажется устаревшей
+     *
+     * @param request - запрос (по Accept-Encoding выбирается сжатый вариант)
+     * @param key     - endpoint и параметры страницы
+     * @param tag     - номер изменений таблиц ответа, TableVersions.tag
+     * @param body    - построение ответа при промахе
+     * @return - готовый ответ в JSON
+     */
+    public ResponseEntity<byte[]> get(ServletWebRequest request, String key, String tag, Supplier<?> body) {
+        Entry e;
+        synchronized (this) {
+            e = entries.get(key);
+            if (e != null && !e.tag.equals(tag)) {
+                remove(key);
+                stale++;
+                e = null;
+            }
+            if (e != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+        if (e == null) {
+            // Одновременные промахи по одному ключу строят ответ каждый сам, это дешевле блокировки на время запроса
+            e = build(tag, body.get());
+            put(key, e);
+        }
+        return respond(request, e);
+    }
+
+    private Entry build(String tag, Object body) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException(ex);
+        }
+        byte[] gz = null;
+        if (gzip && json.length >= gzipMinSize) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4);
+            try (GZIPOutputStream zip = new GZIPOutputStream(out)) {
+                zip.write(json);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            gz = out.toByteArray();
+        }
+        return new Entry(tag, json, gz);
+    }
+
+    private synchronized void put(String key, Entry e) {
+        // Слишком большой ответ вытеснил бы всё остальное
+        if (e.size() > maxBytes / 4) {
+            rejected++;
+            return;
+        }
+        remove(key);
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytes + e.size() > maxBytes && it.hasNext()) {
+            bytes -= it.next().size();
+            it.remove();
+            evictions++;
+        }
+        entries.put(key, e);
+        bytes += e.size();
+    }
+
+    private void remove(String key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            bytes -= old.size();
+        }
+    }
+
+    private static ResponseEntity<byte[]> respond(ServletWebRequest request, Entry e) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+        if (e.gzip == null) {
+            return builder.body(e.json);
+        }
+        builder.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        String accept = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (accept != null && accept.contains("gzip")) {
+            return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(e.gzip);
+        }
+        return builder.body(e.json);
+    }
+
+    public synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("bytes", bytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("stale", stale);
+        stats.put("evictions", evictions);
+        stats.put("rejected", rejected);
+        stats.put("hitRatio", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+        return stats;
+    }
+}
@@ -0,0 +1,89 @@
+package ru.iu3.backend.tools;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ограниченная очередь без блокировок на кольцевом массиве: много писателей, один читатель.
+ * У каждой ячейки свой номер круга; писатель занимает ячейку одним compareAndSet по общему счётчику,
+ * читатель освобождает её, передвигая номер на следующий круг. Если очередь заполнена, offer сразу
+ * возвращает false, писатель никогда не ждёт
+ *
+ * @param <T> - тип элементов
+ */
+public class RingBuffer<T> {
+    private final int mask;
+    private final AtomicReferenceArray<T> items;
+    private final AtomicLongArray sequence;
+    private final AtomicLong tail = new AtomicLong();
+    // Читатель один, поэтому его позиция - обычное поле
+    private long head;
+
+    /**
+     * @param capacity - ёмкость, округляется вверх до степени двойки
+     */
+    public RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        mask = size - 1;
+        items = new AtomicReferenceArray<>(size);
+        sequence = new AtomicLongArray(size);
+        for (int i = 0; i < size; ++i) {
+            sequence.set(i, i);
+        }
+    }
+
+    /**
+     * Кладёт элемент в очередь
+     *
+     * @return - false, если очередь заполнена
+     */
+    public boolean offer(T item) {
+        long pos = tail.get();
+        while (true) {
+            int i = (int) pos & mask;
+            long diff = sequence.get(i) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    items.lazySet(i, item);
+                    sequence.lazySet(i, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                // Ячейка ещё не прочитана с прошлого круга
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Забирает элемент; вызывается только из потока читателя
+     *
+     * @return - элемент или null, если очередь пуста
+     */
+    public T poll() {
+        int i = (int) head & mask;
+        if (sequence.get(i) != head + 1) {
+            return null;
+        }
+        T item = items.get(i);
+        items.lazySet(i, null);
+        sequence.lazySet(i, head + mask + 1);
+        ++head;
+        return item;
+    }
+
+    /**
+     * Примерное число элементов в очереди
+     */
+    public int size() {
+        return (int) Math.max(0, Math.min(mask + 1, tail.get() - head));
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,547 @@
+package ru.iu3.backend.tools;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.iu3.backend.models.Artist;
+import ru.iu3.backend.models.Museum;
+import ru.iu3.backend.models.Painting;
+import ru.iu3.backend.repositories.ArtistRepository;
+import ru.iu3.backend.repositories.MuseumRepository;
+import ru.iu3.backend.repositories.PaintingRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Поиск по названиям картин, художников и музеев и по городу музея, без обращения к БД.
+ * Инвертированный индекс в памяти: слово -> записи, в которых оно встречается. Словарь упорядочен,
+ * поэтому каждое слово запроса от двух букв ищется и как начало слова, а подсказки дополняют последнее.
+ * Индекс строится при запуске (таблицы читаются параллельно) и правится контроллерами при записи.
+ * Записи контроллеров во время построения главнее прочитанного из БД: снимок таблиц может быть старше них.
+ * Если построение не удалось, поиск так и отвечает 503, а построение повторяется по расписанию.
+ */
+@Component
+public class SearchIndex {
+
+    public enum Type {
+        PAINTING, ARTIST, MUSEUM
+    }
+
+    /**
+     * Найденная запись. location заполнен только у музеев
+     */
+    public record Hit(String type, long id, String name, String location, double score) {
+    }
+
+    private static final class Doc {
+        final Type type;
+        final long id;
+        final String name;
+        final String location;
+
+        Doc(Type type, long id, String name, String location) {
+            this.type = type;
+            this.id = id;
+            this.name = name;
+            this.location = location;
+        }
+    }
+
+    /**
+     * Список вхождений слова: ключ записи, сдвинутый на бит, младший бит - слово из города музея.
+     * Читатель берёт массив и длину под блокировкой, а перебирает без неё. При удалении на место
+     * элемента ставится последний, так что одновременный читатель может увидеть запись дважды -
+     * при подсчёте оценки повтор ничего не меняет
+     */
+    private static final class Postings {
+        private long[] keys = new long[2];
+        private int size;
+
+        synchronized void add(long key) {
+            if (size == keys.length) {
+                long[] grown = new long[size * 2];
+                System.arraycopy(keys, 0, grown, 0, size);
+                keys = grown;
+            }
+            keys[size++] = key;
+        }
+
+        synchronized void remove(long key) {
+            for (int i = 0; i < size; ++i) {
+                if (keys[i] == key) {
+                    keys[i] = keys[--size];
+                    return;
+                }
+            }
+        }
+
+        synchronized View view() {
+            return new View(keys, size);
+        }
+    }
+
+    private record View(long[] keys, int size) {
+    }
+
+    /**
+     * Оценки документов одного запроса: открытая адресация по long без упаковки в Long/Double,
+     * на частых словах через неё проходят сотни тысяч вхождений. Свободная ячейка - NaN
+     */
+    private static final class Scores {
+        private final long[] keys;
+        private final double[] values;
+        private final int mask;
+        private int size;
+
+        Scores(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+            keys = new long[capacity];
+            values = new double[capacity];
+            mask = capacity - 1;
+            Arrays.fill(values, Double.NaN);
+        }
+
+        int size() {
+            return size;
+        }
+
+        double get(long key) {
+            for (int i = slot(key); ; i = (i + 1) & mask) {
+                if (Double.isNaN(values[i]) || keys[i] == key) {
+                    return values[i];
+                }
+            }
+        }
+
+        // Слово может совпасть с документом несколькими вхождениями - берётся лучшее
+        void max(long key, double value) {
+            for (int i = slot(key); ; i = (i + 1) & mask) {
+                if (Double.isNaN(values[i])) {
+                    keys[i] = key;
+                    values[i] = value;
+                    size++;
+                    return;
+                }
+                if (keys[i] == key) {
+                    values[i] = Math.max(values[i], value);
+                    return;
+                }
+            }
+        }
+
+        private int slot(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 32) & mask;
+        }
+    }
+
+    // Сколько слов словаря перебирать для начала слова и с какой длины начала искать
+    private static final int MAX_EXPANSIONS = 64;
+    private static final int MIN_PREFIX = 2;
+    private static final double PREFIX_WEIGHT = 0.6;
+    private static final double LOCATION_WEIGHT = 0.5;
+    private static final int LOCK_STRIPES = 64;
+
+    private static final Logger log = LoggerFactory.getLogger(SearchIndex.class);
+
+    @Autowired
+    PaintingRepository paintingRepository;
+
+    @Autowired
+    ArtistRepository artistRepository;
+
+    @Autowired
+    MuseumRepository museumRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    private final ConcurrentSkipListMap<String, Postings> terms = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<Long, Doc> docs = new ConcurrentHashMap<>();
+    // Запись одного документа (снять старые слова, добавить новые) выполняется под своей блокировкой
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    // Ключи документов, записанных контроллерами во время построения: загрузка их не трогает
+    private final Set<Long> written = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean building = new AtomicBoolean();
+
+    private volatile boolean ready;
+    private volatile boolean failed;
+    private volatile long buildMillis;
+
+    public SearchIndex() {
+        for (int i = 0; i < LOCK_STRIPES; ++i) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Строит индекс по всем трём таблицам, каждую в своём потоке и своей read-only транзакции.
+     * Запуск не ждёт окончания: пока индекс строится, поиск отвечает 503
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        if (!building.compareAndSet(false, true)) {
+            return;
+        }
+        // Записи, отмеченные до этой точки, уже закоммичены и попадут в снимок
+        written.clear();
+        long started = System.nanoTime();
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        CompletableFuture.allOf(
+                CompletableFuture.runAsync(() -> load(readOnly, paintingRepository::streamExport,
+                        p -> putLoaded(Type.PAINTING, p.id(), p.name(), null)), pool),
+                CompletableFuture.runAsync(() -> load(readOnly, artistRepository::streamExport,
+                        a -> putLoaded(Type.ARTIST, a.id(), a.name(), null)), pool),
+                CompletableFuture.runAsync(() -> load(readOnly, museumRepository::streamExport,
+                        m -> putLoaded(Type.MUSEUM, m.id(), m.name(), m.location())), pool)
+        ).whenComplete((v, ex) -> {
+            pool.shutdown();
+            buildMillis = (System.nanoTime() - started) / 1_000_000;
+            if (ex != null) {
+                log.error("Search index build failed, will retry", ex);
+                failed = true;
+            } else {
+                failed = false;
+                ready = true;
+            }
+            building.set(false);
+        });
+    }
+
+    /**
+     * Повторяет неудавшееся построение. Уже загруженное не сбрасывается: повторная загрузка
+     * записи просто заменяет её, а удалённые за это время записи контроллеры уже убрали
+     */
+    @Scheduled(fixedDelayString = "${private.search-index-retry-interval:60000}")
+    public void retryBuild() {
+        if (failed) {
+            build();
+        }
+    }
+
+    private static <T> void load(TransactionTemplate readOnly, Supplier<Stream<T>> rows, Consumer<T> put) {
+        readOnly.executeWithoutResult(status -> {
+            try (Stream<T> stream = rows.get()) {
+                stream.forEach(put);
+            }
+        });
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Добавляет или обновляет запись по сохранённой сущности (картина, художник или музей)
+     */
+    public void put(Object entity) {
+        if (entity instanceof Painting) {
+            Painting p = (Painting) entity;
+            put(Type.PAINTING, p.id, p.name, null);
+        } else if (entity instanceof Artist) {
+            Artist a = (Artist) entity;
+            put(Type.ARTIST, a.id, a.name, null);
+        } else if (entity instanceof Museum) {
+            Museum m = (Museum) entity;
+            put(Type.MUSEUM, m.id, m.name, m.location);
+        }
+    }
+
+    public void put(Type type, long id, String name, String location) {
+        long key = docKey(type, id);
+        synchronized (lock(key)) {
+            if (building.get()) {
+                written.add(key);
+            }
+            replace(key, new Doc(type, id, name, location));
+        }
+    }
+
+    // Строка из снимка при построении: запись контроллера, сделанная за это время, новее неё
+    private void putLoaded(Type type, long id, String name, String location) {
+        long key = docKey(type, id);
+        synchronized (lock(key)) {
+            if (!written.contains(key)) {
+                replace(key, new Doc(type, id, name, location));
+            }
+        }
+    }
+
+    // Вызывается под блокировкой документа
+    private void replace(long key, Doc doc) {
+        Doc old = docs.put(key, doc);
+        if (old != null) {
+            unindex(key, old);
+        }
+        index(key, doc);
+    }
+
+    public void remove(Type type, long id) {
+        long key = docKey(type, id);
+        synchronized (lock(key)) {
+            if (building.get()) {
+                written.add(key);
+            }
+            Doc old = docs.remove(key);
+            if (old != null) {
+                unindex(key, old);
+            }
+        }
+    }
+
+    public void remove(Type type, Collection<Long> ids) {
+        for (Long id : ids) {
+            remove(type, id);
+        }
+    }
+
+    /**
+     * Поиск записей, содержащих все слова запроса. Слово совпадает целиком или как начало слова;
+     * редкие слова весят больше частых, совпадение в названии - больше, чем в городе
+     *
+     * @param query - строка запроса
+     * @param type  - только записи этого вида, null - все
+     * @param limit - сколько лучших записей вернуть
+     * @return - записи по убыванию оценки
+     */
+    public List<Hit> search(String query, Type type, int limit) {
+        List<String> tokens = new ArrayList<>(tokenize(query));
+        if (tokens.isEmpty()) {
+            return new ArrayList<>();
+        }
+        // Снимки списков берутся один раз: по ним и считается оценка, и выбирается размер таблицы оценок.
+        // Свежий снимок мог бы оказаться длиннее и переполнить таблицу при одновременной записи
+        Map<String, List<Map.Entry<String, View>>> expansions = new HashMap<>();
+        Map<String, Long> sizes = new HashMap<>();
+        for (String t : tokens) {
+            List<Map.Entry<String, View>> e = expand(t);
+            long total = 0;
+            for (Map.Entry<String, View> me : e) {
+                total += me.getValue().size();
+            }
+            expansions.put(t, e);
+            sizes.put(t, total);
+        }
+        // Сначала самое редкое слово: следующие только сужают уже найденное
+        tokens.sort(Comparator.comparing(sizes::get));
+
+        double n = Math.max(1, docs.size());
+        Scores scores = null;
+        for (String t : tokens) {
+            Scores tokenScores = new Scores(scores != null ? scores.size() : sizes.get(t).intValue());
+            for (Map.Entry<String, View> me : expansions.get(t)) {
+                View v = me.getValue();
+                if (v.size() == 0) {
+                    continue;
+                }
+                double base = (me.getKey().equals(t) ? 1.0 : PREFIX_WEIGHT) * Math.log(1.0 + n / v.size());
+                for (int i = 0; i < v.size(); ++i) {
+                    long posting = v.keys()[i];
+                    long doc = posting >>> 1;
+                    if (type != null && (doc & 3) != type.ordinal()) {
+                        continue;
+                    }
+                    double prev = 0;
+                    if (scores != null) {
+                        prev = scores.get(doc);
+                        if (Double.isNaN(prev)) {
+                            continue;
+                        }
+                    }
+                    double s = (posting & 1) == 0 ? base : base * LOCATION_WEIGHT;
+                    tokenScores.max(doc, prev + s);
+                }
+            }
+            scores = tokenScores;
+            if (scores.size() == 0) {
+                break;
+            }
+        }
+        return top(scores, limit);
+    }
+
+    // Лучшие limit записей; при равной оценке выше запись с меньшим id. Порядок определяется
+    // только ключом и оценкой, поэтому сами документы читаются лишь для кандидатов в первые limit
+    private List<Hit> top(Scores scores, int limit) {
+        PriorityQueue<long[]> best = new PriorityQueue<>(limit + 1, (x, y) -> better(y, x));
+        for (int i = 0; i < scores.keys.length; ++i) {
+            double score = scores.values[i];
+            if (Double.isNaN(score)) {
+                continue;
+            }
+            long[] candidate = {scores.keys[i], Double.doubleToLongBits(score)};
+            if (best.size() == limit && better(best.peek(), candidate) > 0) {
+                continue;
+            }
+            best.add(candidate);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        List<long[]> ordered = new ArrayList<>(best);
+        ordered.sort(SearchIndex::better);
+        List<Hit> result = new ArrayList<>(ordered.size());
+        for (long[] c : ordered) {
+            Doc d = docs.get(c[0]);
+            if (d != null) {
+                result.add(new Hit(d.type.name().toLowerCase(Locale.ROOT), d.id, d.name, d.location,
+                        Double.longBitsToDouble(c[1])));
+            }
+        }
+        return result;
+    }
+
+    // Отрицательно, если x лучше y: {ключ документа, биты оценки}
+    private static int better(long[] x, long[] y) {
+        int c = Double.compare(Double.longBitsToDouble(y[1]), Double.longBitsToDouble(x[1]));
+        return c != 0 ? c : Long.compare(x[0], y[0]);
+    }
+
+    /**
+     * Подсказки при наборе: последнее слово запроса дополняется самыми частыми словами словаря
+     *
+     * @param query - набранный текст
+     * @param limit - сколько подсказок вернуть
+     * @return - варианты запроса целиком
+     */
+    public List<String> suggest(String query, int limit) {
+        List<String> tokens = new ArrayList<>(tokenize(query));
+        if (tokens.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String last = tokens.remove(tokens.size() - 1);
+        String head = tokens.isEmpty() ? "" : String.join(" ", tokens) + " ";
+        List<Map.Entry<String, Integer>> found = new ArrayList<>();
+        int seen = 0;
+        for (Map.Entry<String, Postings> e : terms.subMap(last, true, last + Character.MAX_VALUE, false).entrySet()) {
+            int size = e.getValue().view().size();
+            if (size > 0) {
+                found.add(Map.entry(e.getKey(), size));
+            }
+            if (++seen == MAX_EXPANSIONS * 16) {
+                break;
+            }
+        }
+        found.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, found.size()); ++i) {
+            result.add(head + found.get(i).getKey());
+        }
+        return result;
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ready", ready);
+        stats.put("failed", failed);
+        stats.put("building", building.get());
+        stats.put("buildMillis", buildMillis);
+        stats.put("documents", docs.size());
+        stats.put("terms", terms.size());
+        return stats;
+    }
+
+    /**
+     * Разбивает текст на слова: буквы и цифры в нижнем регистре, ё приравнена к е. Повторы убираются
+     */
+    static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i <= text.length(); ++i) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                c = Character.toLowerCase(c);
+                sb.append(c == 'ё' ? 'е' : c);
+            } else if (sb.length() > 0) {
+                tokens.add(sb.toString());
+                sb.setLength(0);
+            }
+        }
+        return tokens;
+    }
+
+    // Слово целиком и, если оно не слишком короткое, слова, которые с него начинаются, - со снимками списков
+    private List<Map.Entry<String, View>> expand(String token) {
+        List<Map.Entry<String, View>> result = new ArrayList<>();
+        if (token.length() < MIN_PREFIX) {
+            Postings p = terms.get(token);
+            if (p != null) {
+                result.add(Map.entry(token, p.view()));
+            }
+            return result;
+        }
+        for (Map.Entry<String, Postings> e : terms.subMap(token, true, token + Character.MAX_VALUE, false)
+                .entrySet()) {
+            result.add(Map.entry(e.getKey(), e.getValue().view()));
+            if (result.size() == MAX_EXPANSIONS) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    private void index(long key, Doc doc) {
+        for (String t : tokenize(doc.name)) {
+            terms.computeIfAbsent(t, k -> new Postings()).add(key << 1);
+        }
+        for (String t : tokenize(doc.location)) {
+            terms.computeIfAbsent(t, k -> new Postings()).add(key << 1 | 1);
+        }
+    }
+
+    // Пустые списки вхождений остаются в словаре: иначе пришлось бы согласовывать их удаление с добавлением
+    private void unindex(long key, Doc doc) {
+        for (String t : tokenize(doc.name)) {
+            Postings p = terms.get(t);
+            if (p != null) {
+                p.remove(key << 1);
+            }
+        }
+        for (String t : tokenize(doc.location)) {
+            Postings p = terms.get(t);
+            if (p != null) {
+                p.remove(key << 1 | 1);
+            }
+        }
+    }
+
+    private static long docKey(Type type, long id) {
+        return id << 2 | type.ordinal();
+    }
+
+    private Object lock(long key) {
+        return locks[(int) Math.floorMod(key, (long) LOCK_STRIPES)];
+    }
+}
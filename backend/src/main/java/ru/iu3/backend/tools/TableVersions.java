@@ -0,0 +1,82 @@
+package ru.iu3.backend.tools;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import ru.iu3.backend.models.Artist;
+import ru.iu3.backend.models.Country;
+import ru.iu3.backend.models.Museum;
+import ru.iu3.backend.models.Painting;
+import ru.iu3.backend.models.User;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Номера изменений таблиц для условных GET (ETag / If-None-Match).
+ * Контроллеры увеличивают номер таблицы на каждой записи через API; ETag списка строится
+ * из номеров всех таблиц, из которых собран ответ, ETag записи - из её колонки version.
+ * Номера живут в памяти, поэтому в ETag списка входит метка запуска: после перезапуска
+ * старые ETag не совпадут.
+ */
+@Component
+public class TableVersions {
+
+    private static final String NO_CACHE = CacheControl.noCache().cachePrivate().getHeaderValue();
+
+    private final String instance = Long.toString(System.currentTimeMillis(), 36);
+    private final Map<Class<?>, AtomicLong> versions = new LinkedHashMap<>();
+
+    public TableVersions() {
+        for (Class<?> c : new Class<?>[]{Painting.class, Museum.class, Artist.class, Country.class, User.class}) {
+            versions.put(c, new AtomicLong());
+        }
+    }
+
+    public long get(Class<?> table) {
+        return versions.get(table).get();
+    }
+
+    public void bump(Class<?> table) {
+        versions.get(table).incrementAndGet();
+    }
+
+    /**
+     * ETag списка: метка запуска и номера изменений перечисленных таблиц
+     */
+    public String tag(Class<?>... tables) {
+        StringBuilder sb = new StringBuilder(instance);
+        for (Class<?> t : tables) {
+            sb.append('-').append(get(t));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Проверяет If-None-Match для списка. Если ETag совпал, ответ 304 уже подготовлен
+     * и контроллер должен вернуть null, не выполняя запрос
+     *
+     * @param tables - таблицы, из которых собирается ответ
+     */
+    public boolean notModified(ServletWebRequest request, Class<?>... tables) {
+        request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, NO_CACHE);
+        return request.checkNotModified(tag(tables));
+    }
+
+    /**
+     * Проверяет If-None-Match для одной записи по её версии. Если записи нет, ETag
+     * не выставляется и контроллер отвечает как обычно
+     *
+     * @param version - версия записи (см. findVersionTag в репозиториях)
+     */
+    public boolean entityNotModified(ServletWebRequest request, Class<?> entity, long id, Optional<String> version) {
+        if (version.isEmpty()) {
+            return false;
+        }
+        request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, NO_CACHE);
+        return request.checkNotModified(entity.getSimpleName().toLowerCase() + "-" + id + "-" + version.get());
+    }
+}
@@ -6,6 +6,12 @@ import java.security.MessageDigest;
 
 public class Utils {
 
+    /**
+     * Старый способ хэширования пароля, оставлен для сравнения в бенчмарках
+     *
+     * @deprecated - используйте {@link PasswordHasher}, он понимает и этот формат
+     */
+    @Deprecated
     public static String computeHash(String pwd, String salt) {
         MessageDigest digest;
         byte[] w = Hex.decode(new String(Hex.encode(pwd.getBytes())) + salt);
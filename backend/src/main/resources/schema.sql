@@ -0,0 +1,26 @@
+-- Выполняется до инициализации Hibernate (spring.sql.init.mode=always).
+-- Последовательности id для пакетной вставки: шаг должен совпадать с allocationSize в моделях.
+-- В старой схеме это последовательности serial-колонок, они продолжают нумерацию.
+create sequence if not exists paintings_id_seq;
+alter sequence paintings_id_seq increment by 50;
+create sequence if not exists artists_id_seq;
+alter sequence artists_id_seq increment by 50;
+create sequence if not exists museums_id_seq;
+alter sequence museums_id_seq increment by 50;
+-- Колонки версий для ETag: в существующих таблицах добавляются со значением 0,
+-- новые таблицы создаст Hibernate.
+alter table if exists countries add column if not exists version bigint not null default 0;
+alter table if exists artists add column if not exists version bigint not null default 0;
+alter table if exists museums add column if not exists version bigint not null default 0;
+alter table if exists paintings add column if not exists version bigint not null default 0;
+alter table if exists users add column if not exists version bigint not null default 0;
+-- Отозванные подписанные токены (RevocationList): по подписи токена и все токены пользователя,
+-- выданные до отметки времени. Время - миллисекунды от начала эпохи.
+create table if not exists revoked_tokens (
+    signature varchar(64) primary key,
+    expires_at bigint not null
+);
+create table if not exists revoked_users (
+    userid bigint primary key,
+    issued_before bigint not null
+);
@@ -3,7 +3,14 @@ package ru.iu3.backend;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+// Та же встроенная H2, что у бенчмарков (EmbeddedBackend), чтобы тест не требовал Postgres
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:contextLoads;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+		"spring.datasource.username=sa",
+		"spring.datasource.password=",
+		"spring.datasource.driver-class-name=org.h2.Driver",
+		"spring.jpa.hibernate.ddl-auto=create",
+		"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"})
 class BackendApplicationTests {
 
 	@Test
@@ -0,0 +1,89 @@
+package ru.iu3.backend.auth;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.iu3.backend.models.User;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Подписанные токены без БД: подпись, отзыв и другие написания той же подписи в base64url
+ */
+class SignedTokenServiceTest {
+    private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+    private SignedTokenService service;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        RevocationList revocationList = new RevocationList();
+        revocationList.jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+        ReflectionTestUtils.setField(revocationList, "bits", 1024);
+        revocationList.init();
+
+        service = new SignedTokenService();
+        service.revocationList = revocationList;
+        ReflectionTestUtils.setField(service, "tokenMode", "signed");
+        ReflectionTestUtils.setField(service, "lifetime", 60);
+        service.init();
+
+        user = new User();
+        user.id = 42L;
+        user.login = "bench";
+    }
+
+    @Test
+    void issuedTokenVerifies() {
+        SignedTokenService.Claims c = service.verify(service.issue(user));
+        assertEquals(42L, c.userId);
+        assertEquals("bench", c.login);
+    }
+
+    @Test
+    void tamperedSignatureIsRejected() {
+        String token = service.issue(user);
+        char first = token.charAt(token.indexOf('.') + 1);
+        String tampered = token.substring(0, token.indexOf('.') + 1) + (first == 'A' ? 'B' : 'A')
+                + token.substring(token.indexOf('.') + 2);
+        assertThrows(BadCredentialsException.class, () -> service.verify(tampered));
+    }
+
+    @Test
+    void revokedTokenIsRejectedInAnySpelling() {
+        String token = service.issue(user);
+        assertTrue(service.revoke(token));
+        assertThrows(BadCredentialsException.class, () -> service.verify(token));
+
+        // HMAC-SHA256 - 32 байта, 43 символа base64url: у последнего символа два младших бита не используются
+        assertThrows(BadCredentialsException.class, () -> service.verify(token + "="));
+        assertThrows(BadCredentialsException.class, () -> service.verify(withLastBitFlipped(token)));
+        assertFalse(service.revoke(token + "="));
+    }
+
+    @Test
+    void nonCanonicalSpellingOfValidTokenIsRejected() {
+        String token = service.issue(user);
+        assertThrows(BadCredentialsException.class, () -> service.verify(token + "="));
+        assertThrows(BadCredentialsException.class, () -> service.verify(withLastBitFlipped(token)));
+    }
+
+    @Test
+    void revokeUserRejectsEarlierTokens() {
+        String token = service.issue(user);
+        service.revokeUser(user.id);
+        assertThrows(BadCredentialsException.class, () -> service.verify(token));
+    }
+
+    private static String withLastBitFlipped(String token) {
+        char last = token.charAt(token.length() - 1);
+        return token.substring(0, token.length() - 1) + ALPHABET.charAt(ALPHABET.indexOf(last) ^ 1);
+    }
+}
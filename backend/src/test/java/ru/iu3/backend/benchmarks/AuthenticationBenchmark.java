@@ -0,0 +1,85 @@
+package ru.iu3.backend.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import ru.iu3.backend.auth.AuthenticationProvider;
+import ru.iu3.backend.auth.SessionCache;
+import ru.iu3.backend.auth.SessionStore;
+import ru.iu3.backend.auth.SignedTokenService;
+import ru.iu3.backend.models.User;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка токена на каждом запросе: AuthenticationProvider.authenticate, внутри которого retrieveUser,
+ * в обоих режимах private.token-mode. В режиме session authenticate берёт сессию из SessionCache,
+ * а authenticateUncached перед проверкой выбрасывает её из кэша и читает из таблицы sessions по хэшу токена.
+ * В режиме signed кэша нет, обе операции проверяют подпись
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthenticationBenchmark {
+
+    @Param({"session", "signed"})
+    public String tokenMode;
+
+    private ConfigurableApplicationContext ctx;
+    private AuthenticationProvider provider;
+    private SessionCache sessionCache;
+    private String token;
+
+    @Setup
+    public void setup() {
+        ctx = EmbeddedBackend.start("auth" + tokenMode, "--private.token-mode=" + tokenMode);
+        EmbeddedBackend.seed(ctx, 1, 1, 1, 1, 100);
+        provider = ctx.getBean(AuthenticationProvider.class);
+        sessionCache = ctx.getBean(SessionCache.class);
+        User user = EmbeddedBackend.firstEntities(ctx, User.class, "login", 1).get(0);
+        SignedTokenService signedTokenService = ctx.getBean(SignedTokenService.class);
+        token = signedTokenService.isEnabled()
+                ? signedTokenService.issue(user)
+                : ctx.getBean(SessionStore.class).open(user);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ctx.close();
+    }
+
+    @Benchmark
+    public Authentication authenticate() {
+        return provider.authenticate(new UsernamePasswordAuthenticationToken(token, token));
+    }
+
+    @Benchmark
+    public Authentication authenticateUncached() {
+        sessionCache.invalidate(token);
+        return provider.authenticate(new UsernamePasswordAuthenticationToken(token, token));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AuthenticationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,130 @@
+package ru.iu3.backend.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.iu3.backend.models.Artist;
+import ru.iu3.backend.models.Museum;
+import ru.iu3.backend.models.Painting;
+import ru.iu3.backend.repositories.ArtistRepository;
+import ru.iu3.backend.repositories.MuseumRepository;
+import ru.iu3.backend.repositories.PaintingRepository;
+import ru.iu3.backend.tools.BulkImporter;
+import ru.iu3.backend.tools.NdjsonExporter;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Скорость загрузки картин, строк в секунду: BulkImporter (CSV и NDJSON)
+ * против сохранения по одной записи, как при POST /paintings
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkImportBenchmark {
+    private static final int ROWS = 5000;
+
+    private ConfigurableApplicationContext ctx;
+    private BulkImporter bulkImporter;
+    private PaintingRepository paintingRepository;
+    private List<Long> artists;
+    private List<Long> museums;
+    private byte[] csv;
+    private byte[] ndjson;
+
+    @Setup
+    public void setup() {
+        ctx = EmbeddedBackend.start("bulkimport");
+        EmbeddedBackend.seed(ctx, 10, 100, 50, 0, 0);
+        bulkImporter = ctx.getBean(BulkImporter.class);
+        paintingRepository = ctx.getBean(PaintingRepository.class);
+        artists = ctx.getBean(ArtistRepository.class).findAll().stream().map(a -> a.id).toList();
+        museums = ctx.getBean(MuseumRepository.class).findAll().stream().map(m -> m.id).toList();
+
+        StringBuilder c = new StringBuilder("name,year,artistId,museumId\n");
+        StringBuilder n = new StringBuilder();
+        for (int i = 0; i < ROWS; ++i) {
+            long artist = artists.get(i % artists.size());
+            long museum = museums.get(i % museums.size());
+            c.append("\"painting, ").append(i).append("\",").append(1500 + i % 500).append(',')
+                    .append(artist).append(',').append(museum).append('\n');
+            n.append("{\"name\":\"painting ").append(i).append("\",\"year\":").append(1500 + i % 500)
+                    .append(",\"artistId\":").append(artist).append(",\"museumId\":").append(museum).append("}\n");
+        }
+        csv = c.toString().getBytes(StandardCharsets.UTF_8);
+        ndjson = n.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ctx.close();
+    }
+
+    private BulkImporter.Report load(byte[] body, String contentType) throws Exception {
+        BulkImporter.Report report = bulkImporter.run(new ByteArrayInputStream(body), contentType, Painting.class,
+                fields -> {
+                    Painting p = new Painting();
+                    p.name = BulkImporter.text(fields, "name", 45);
+                    p.year = BulkImporter.integer(fields, "year");
+                    p.artist = new Artist(BulkImporter.reference(fields, "artistId"));
+                    p.museum = new Museum(BulkImporter.reference(fields, "museumId"));
+                    return p;
+                }, rows -> { }, paintingRepository);
+        if (report.imported != ROWS) {
+            throw new IllegalStateException("imported " + report.imported + " of " + ROWS);
+        }
+        return report;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public BulkImporter.Report importCsv() throws Exception {
+        return load(csv, BulkImporter.CSV);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public BulkImporter.Report importNdjson() throws Exception {
+        return load(ndjson, NdjsonExporter.CONTENT_TYPE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long saveOneByOne() {
+        long last = 0;
+        for (int i = 0; i < ROWS; ++i) {
+            Painting p = new Painting();
+            p.name = "painting " + i;
+            p.year = 1500 + i % 500;
+            p.artist = new Artist(artists.get(i % artists.size()));
+            p.museum = new Museum(museums.get(i % museums.size()));
+            last = paintingRepository.save(p).id;
+        }
+        return last;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BulkImportBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,214 @@
+package ru.iu3.backend.benchmarks;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.ServletWebRequest;
+import ru.iu3.backend.BackendApplication;
+import ru.iu3.backend.models.Artist;
+import ru.iu3.backend.models.Country;
+import ru.iu3.backend.models.Museum;
+import ru.iu3.backend.models.Painting;
+import ru.iu3.backend.models.User;
+import ru.iu3.backend.repositories.ArtistRepository;
+import ru.iu3.backend.repositories.CountryRepository;
+import ru.iu3.backend.repositories.MuseumRepository;
+import ru.iu3.backend.repositories.PaintingRepository;
+import ru.iu3.backend.repositories.UserRepository;
+import ru.iu3.backend.tools.EntityCounters;
+import ru.iu3.backend.tools.PasswordHasher;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Бэкенд на встроенной H2 для бенчмарков: поднимает приложение на свободном порту и заполняет таблицы
+ */
+public class EmbeddedBackend {
+
+    /**
+     * @param settings - дополнительные настройки вида --private.token-mode=signed
+     */
+    public static ConfigurableApplicationContext start(String name, String... settings) {
+        List<String> args = new ArrayList<>(List.of(
+                // Аргументы командной строки, иначе настройки из application.properties возьмут верх
+                "--spring.datasource.url=jdbc:h2:mem:" + name + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.jpa.hibernate.ddl-auto=create",
+                "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                "--server.port=0",
+                "--logging.level.root=WARN",
+                "--logging.level.org.zalando.logbook=OFF"));
+        args.addAll(List.of(settings));
+        return new SpringApplicationBuilder(BackendApplication.class).run(args.toArray(new String[0]));
+    }
+
+    /**
+     * Бэкенд на внешнем Postgres, для запросов, которых нет в H2 (grouping sets, = any(?)).
+     * Таблицы пересоздаются, поэтому база должна быть отдельной, не рабочей
+     *
+     * @param url      - например jdbc:postgresql://localhost:5433/benchmark
+     * @param settings - дополнительные настройки, как в start
+     */
+    public static ConfigurableApplicationContext startPostgres(String url, String... settings) {
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.datasource.url=" + url,
+                "--spring.datasource.username=" + System.getProperty("benchmark.user", "postgres"),
+                "--spring.datasource.password=" + System.getProperty("benchmark.password", "mysecretpassword"),
+                "--spring.jpa.hibernate.ddl-auto=create",
+                "--server.port=0",
+                "--logging.level.root=WARN",
+                "--logging.level.org.zalando.logbook=OFF"));
+        args.addAll(List.of(settings));
+        return new SpringApplicationBuilder(BackendApplication.class).run(args.toArray(new String[0]));
+    }
+
+    /**
+     * Заполняет таблицы: страны, художники, музеи, картины и пользователи, подписанные на музеи
+     */
+    public static void seed(ConfigurableApplicationContext ctx, int countries, int artists, int museums,
+                            int paintings, int users) {
+        CountryRepository countryRepository = ctx.getBean(CountryRepository.class);
+        ArtistRepository artistRepository = ctx.getBean(ArtistRepository.class);
+        MuseumRepository museumRepository = ctx.getBean(MuseumRepository.class);
+        PaintingRepository paintingRepository = ctx.getBean(PaintingRepository.class);
+        UserRepository userRepository = ctx.getBean(UserRepository.class);
+
+        List<Country> cs = new ArrayList<>();
+        for (int i = 0; i < countries; ++i) {
+            Country c = new Country();
+            c.name = "country " + i;
+            cs.add(c);
+        }
+        cs = countryRepository.saveAll(cs);
+
+        List<Artist> as = new ArrayList<>();
+        for (int i = 0; i < artists; ++i) {
+            Artist a = new Artist();
+            a.name = "artist " + i;
+            a.age = String.valueOf(1800 + i % 200);
+            a.country = cs.get(i % cs.size());
+            as.add(a);
+        }
+        as = artistRepository.saveAll(as);
+
+        List<Museum> ms = new ArrayList<>();
+        for (int i = 0; i < museums; ++i) {
+            Museum m = new Museum();
+            m.name = "museum " + i;
+            m.location = "city " + (i % 50);
+            ms.add(m);
+        }
+        ms = museumRepository.saveAll(ms);
+
+        List<Painting> ps = new ArrayList<>();
+        for (int i = 0; i < paintings; ++i) {
+            Painting p = new Painting();
+            p.name = "painting " + i;
+            p.year = 1500 + i % 500;
+            p.artist = as.get(i % as.size());
+            p.museum = ms.get(i % ms.size());
+            ps.add(p);
+            if (ps.size() == 1000) {
+                paintingRepository.saveAll(ps);
+                ps.clear();
+            }
+        }
+        paintingRepository.saveAll(ps);
+
+        // Без пароля сессия не превращается в UserDetails (см. AuthenticationProvider), хэш один на всех
+        PasswordHasher.Hash hash = ctx.getBean(PasswordHasher.class).hash("password");
+        List<User> us = new ArrayList<>();
+        for (int i = 0; i < users; ++i) {
+            User u = new User();
+            u.login = "user" + i;
+            u.email = "user" + i + "@example.com";
+            u.password = hash.password;
+            u.salt = hash.salt;
+            us.add(u);
+        }
+        us = userRepository.saveAll(us);
+
+        // Подписки хранятся на стороне музея (Museum.users владеет связью)
+        final List<User> saved = us;
+        final List<Museum> savedMuseums = ms;
+        new TransactionTemplate(ctx.getBean(PlatformTransactionManager.class))
+                .executeWithoutResult(status -> {
+                    for (int i = 0; i < saved.size(); ++i) {
+                        for (int j = 0; j < 3; ++j) {
+                            Museum m = museumRepository.getById(savedMuseums.get((i + j) % savedMuseums.size()).id);
+                            m.users.add(userRepository.getById(saved.get(i).id));
+                        }
+                    }
+                });
+        ctx.getBean(EntityCounters.class).reconcileAll();
+    }
+
+    /**
+     * Первые записи в порядке (key, id) сущностями, как их загружает Hibernate. Контроллеры читают
+     * проекции, поэтому такие запросы есть только здесь: для id и входа в бенчмарках
+     *
+     * @param key - поле порядка, name или login
+     */
+    public static <T> List<T> firstEntities(ConfigurableApplicationContext ctx, Class<T> type, String key, int limit) {
+        return entityQuery(ctx, type, key).setMaxResults(limit).getResultList();
+    }
+
+    /**
+     * Страница сущностей без count(*), для сравнения с проекциями findAllViews.
+     * Вызывать внутри транзакции: связи сущностей загружаются лениво при сериализации
+     */
+    public static <T> Slice<T> entitySlice(ConfigurableApplicationContext ctx, Class<T> type, String key,
+                                           Pageable pageable) {
+        List<T> rows = entityQuery(ctx, type, key)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize() + 1)
+                .getResultList();
+        boolean hasNext = rows.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? rows.subList(0, pageable.getPageSize()) : rows, pageable, hasNext);
+    }
+
+    private static <T> TypedQuery<T> entityQuery(ConfigurableApplicationContext ctx, Class<T> type, String key) {
+        EntityManager em = SharedEntityManagerCreator.createSharedEntityManager(
+                ctx.getBean(EntityManagerFactory.class));
+        return em.createQuery("select e from " + type.getSimpleName() + " e order by e." + key + ", e.id", type);
+    }
+
+    /**
+     * GET-запрос без заголовков для прямого вызова методов контроллеров: If-None-Match нет,
+     * поэтому ответ всегда строится полностью
+     */
+    public static ServletWebRequest plainRequest() {
+        return new ServletWebRequest(stub(HttpServletRequest.class), stub(HttpServletResponse.class));
+    }
+
+    private static <T> T stub(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getMethod":
+                    return "GET";
+                case "getStatus":
+                    return 200;
+                case "getHeaders":
+                    return Collections.emptyEnumeration();
+                default:
+                    Class<?> r = method.getReturnType();
+                    return r == boolean.class ? Boolean.FALSE : r == int.class ? Integer.valueOf(0) : null;
+            }
+        }));
+    }
+}
@@ -0,0 +1,361 @@
+package ru.iu3.backend.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.iu3.backend.models.User;
+import ru.iu3.backend.repositories.ArtistRepository;
+import ru.iu3.backend.repositories.PaintingRepository;
+import ru.iu3.backend.repositories.UserRepository;
+import ru.iu3.backend.tools.LatencyHistogram;
+import ru.iu3.backend.tools.PasswordHasher;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Нагрузочный прогон по HTTP. Поднимает бэкенд на встроенной H2 (или на отдельной базе Postgres,
+ * -Dload.postgres=jdbc:postgresql://...), заполняет таблицы и подаёт смесь запросов к /auth и /api/v1
+ * с постоянной частотой load.rate в секунду, не дожидаясь ответов на предыдущие (открытая модель).
+ * Задержка считается от запланированного момента отправки, так что очередь перед сервером тоже попадает
+ * в процентили. Запросы, не отправленные из-за перегрузки (ответа ждут уже load.max-in-flight запросов),
+ * считаются ошибкой overload с задержкой load.timeout: иначе самые медленные моменты прогона выпали бы
+ * из процентилей. По каждой операции печатаются процентили и доля ошибок, отчёт в JSON пишется в load.report.
+ * Если p99 операции больше load.max-p99 мс (для отдельной операции - load.max-p99.имя) или доля ошибок
+ * больше load.max-error-rate, прогон завершается с кодом 1.
+ * Запуск: main() этого класса или mvn -P load-test verify
+ */
+public class LoadGenerator {
+    private static final String PASSWORD = "load-test-password";
+    private static final int PAGE = 20;
+    private static final int MUSEUMS = 200;
+
+    /**
+     * Операция смеси: доля в общем потоке, построение запроса и разбор успешного ответа
+     */
+    private record Operation(String name, int weight, Function<ThreadLocalRandom, HttpRequest> request,
+                             Consumer<String> onSuccess) {
+    }
+
+    /**
+     * Итоги операции: задержки всех отправленных запросов, попытки и ошибки по причинам
+     */
+    private static class Stats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder attempts = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final Map<String, LongAdder> reasons = new ConcurrentHashMap<>();
+
+        void error(String reason) {
+            errors.increment();
+            reasons.computeIfAbsent(reason, k -> new LongAdder()).increment();
+        }
+    }
+
+    private final double rate = setting("load.rate", 200);
+    private final int duration = (int) setting("load.duration", 60);
+    private final int warmup = (int) setting("load.warmup", 10);
+    private final int maxInFlight = (int) setting("load.max-in-flight", 2000);
+    private final Duration timeout = Duration.ofMillis((long) setting("load.timeout", 5000));
+    private final double maxP99 = setting("load.max-p99", 250);
+    private final double maxErrorRate = setting("load.max-error-rate", 0.01);
+    private final int users = (int) setting("load.users", 100);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(timeout)
+            .executor(executor)
+            .build();
+
+    private String base;
+    private List<Long> paintingIds;
+    private List<Long> artistIds;
+    private final List<String> tokens = new ArrayList<>();
+    // Картины, созданные во время прогона: их и удаляет пачками bulkDelete
+    private final ConcurrentLinkedQueue<Long> created = new ConcurrentLinkedQueue<>();
+    private final AtomicLong names = new AtomicLong();
+
+    private final List<Operation> operations = new ArrayList<>();
+    private final Map<String, Stats> stats = new LinkedHashMap<>();
+
+    public static void main(String[] args) throws Exception {
+        String postgres = System.getProperty("load.postgres");
+        String[] settings = {
+                // Все входы идут с одного адреса, ограничитель попыток входа здесь не проверяется
+                "--private.login-limit.login.capacity=1000000",
+                "--private.login-limit.login.per-minute=1000000",
+                "--private.login-limit.address.capacity=1000000",
+                "--private.login-limit.address.per-minute=1000000"};
+        ConfigurableApplicationContext ctx = postgres != null
+                ? EmbeddedBackend.startPostgres(postgres, settings)
+                : EmbeddedBackend.start("load", settings);
+        boolean passed;
+        LoadGenerator generator = new LoadGenerator();
+        try {
+            generator.prepare(ctx);
+            generator.run();
+            passed = generator.report();
+        } finally {
+            generator.executor.shutdownNow();
+            ctx.close();
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private void prepare(ConfigurableApplicationContext ctx) throws IOException, InterruptedException {
+        EmbeddedBackend.seed(ctx, 50, 500, MUSEUMS, 20000, users);
+        base = "http://localhost:" + ((ServletWebServerApplicationContext) ctx).getWebServer().getPort();
+
+        // Задаём заполненным пользователям свой пароль, чтобы можно было войти
+        UserRepository userRepository = ctx.getBean(UserRepository.class);
+        PasswordHasher hasher = ctx.getBean(PasswordHasher.class);
+        List<User> us = EmbeddedBackend.firstEntities(ctx, User.class, "login", users);
+        for (User u : us) {
+            PasswordHasher.Hash h = hasher.hash(PASSWORD);
+            u.password = h.password;
+            u.salt = h.salt;
+        }
+        userRepository.saveAll(us);
+        paintingIds = ctx.getBean(PaintingRepository.class).findAll().stream().map(p -> p.id).toList();
+        artistIds = ctx.getBean(ArtistRepository.class).findAll().stream().map(a -> a.id).toList();
+
+        for (int i = 0; i < users; ++i) {
+            HttpResponse<String> r = client.send(login(i), HttpResponse.BodyHandlers.ofString());
+            if (r.statusCode() != 200) {
+                throw new IllegalStateException("Вход user" + i + " не удался: " + r.statusCode());
+            }
+            tokens.add(mapper.readTree(r.body()).get("token").asText());
+        }
+
+        int paintingPages = paintingIds.size() / PAGE;
+        int artistPages = artistIds.size() / PAGE;
+        operations.add(new Operation("login", 5, r -> login(r.nextInt(users)), null));
+        operations.add(new Operation("paintingsPage", 30,
+                r -> get(r, "/api/v1/paintings?page=" + r.nextInt(paintingPages) + "&limit=" + PAGE), null));
+        operations.add(new Operation("artistsPage", 10,
+                r -> get(r, "/api/v1/artists?page=" + r.nextInt(artistPages) + "&limit=" + PAGE), null));
+        operations.add(new Operation("museumsPage", 10,
+                r -> get(r, "/api/v1/museums?page=" + r.nextInt(MUSEUMS / PAGE) + "&limit=" + PAGE), null));
+        operations.add(new Operation("painting", 25,
+                r -> get(r, "/api/v1/paintings/" + paintingIds.get(r.nextInt(paintingIds.size()))), null));
+        operations.add(new Operation("artist", 10,
+                r -> get(r, "/api/v1/artists/" + artistIds.get(r.nextInt(artistIds.size()))), null));
+        operations.add(new Operation("createPainting", 6,
+                r -> post(r, "/api/v1/paintings",
+                        "{\"name\":\"load " + names.incrementAndGet() + "\",\"year\":" + (1500 + r.nextInt(500)) + "}"),
+                body -> created.add(id(body))));
+        operations.add(new Operation("bulkDelete", 4, this::bulkDelete, null));
+        for (Operation o : operations) {
+            stats.put(o.name, new Stats());
+        }
+    }
+
+    /**
+     * Подаёт запросы по расписанию: i-й отправляется в момент start + i / rate. Если генератор отстал,
+     * запросы уходят сразу, но задержка всё равно считается от запланированного момента
+     */
+    private void run() throws InterruptedException {
+        int total = 0;
+        int[] cumulative = new int[operations.size()];
+        for (int i = 0; i < cumulative.length; ++i) {
+            total += operations.get(i).weight;
+            cumulative[i] = total;
+        }
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        long period = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmup);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(duration);
+        System.out.printf("Прогон: %.0f запросов в секунду, разогрев %d с, замер %d с%n", rate, warmup, duration);
+
+        for (long i = 0; ; ++i) {
+            long scheduled = start + i * period;
+            if (scheduled >= end) {
+                break;
+            }
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            ThreadLocalRandom r = ThreadLocalRandom.current();
+            int pick = r.nextInt(total);
+            int k = 0;
+            while (cumulative[k] <= pick) {
+                ++k;
+            }
+            Operation o = operations.get(k);
+            Stats s = scheduled >= measureFrom ? stats.get(o.name) : null;
+            if (s != null) {
+                s.attempts.increment();
+            }
+            if (!inFlight.tryAcquire()) {
+                // Сервер не успевает настолько, что ответа ждут уже maxInFlight запросов. Такой запрос
+                // ждал бы не меньше остальных, поэтому в процентили он идёт с задержкой timeout
+                if (s != null) {
+                    s.latency.record(timeout.toNanos());
+                    s.error("overload");
+                }
+                continue;
+            }
+            client.sendAsync(o.request.apply(r), HttpResponse.BodyHandlers.ofString())
+                    .whenComplete((response, ex) -> {
+                        inFlight.release();
+                        if (s != null) {
+                            s.latency.record(System.nanoTime() - scheduled);
+                        }
+                        if (ex != null) {
+                            if (s != null) {
+                                s.error(ex.getCause() instanceof HttpTimeoutException ? "timeout"
+                                        : ex.getCause() == null ? ex.getClass().getSimpleName()
+                                        : ex.getCause().getClass().getSimpleName());
+                            }
+                        } else if (response.statusCode() >= 400) {
+                            if (s != null) {
+                                s.error(String.valueOf(response.statusCode()));
+                            }
+                        } else if (o.onSuccess != null) {
+                            o.onSuccess.accept(response.body());
+                        }
+                    });
+        }
+        // Ждём ответов на уже отправленные запросы
+        if (!inFlight.tryAcquire(maxInFlight, timeout.toMillis() * 2, TimeUnit.MILLISECONDS)) {
+            System.out.println("Не дождались ответа на " + (maxInFlight - inFlight.availablePermits()) + " запросов");
+        }
+    }
+
+    /**
+     * Печатает таблицу по операциям, пишет отчёт в JSON и проверяет пороги
+     *
+     * @return - true, если пороги не превышены
+     */
+    private boolean report() throws IOException {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        List<String> violations = new ArrayList<>();
+        System.out.printf("%-16s %8s %8s %8s %9s %9s %9s %9s %9s%n",
+                "operation", "count", "rps", "errors", "p50", "p90", "p99", "p99.9", "max");
+        for (Map.Entry<String, Stats> e : stats.entrySet()) {
+            Stats s = e.getValue();
+            LatencyHistogram.Snapshot h = s.latency.snapshot();
+            long attempts = s.attempts.sum();
+            double errorRate = attempts == 0 ? 0 : (double) s.errors.sum() / attempts;
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("operation", e.getKey());
+            row.put("count", attempts);
+            row.put("rps", (double) attempts / duration);
+            row.put("errorRate", errorRate);
+            Map<String, Long> reasons = new LinkedHashMap<>();
+            s.reasons.forEach((k, v) -> reasons.put(k, v.sum()));
+            row.put("errors", reasons);
+            row.put("p50", h.percentileMillis(0.5));
+            row.put("p90", h.percentileMillis(0.9));
+            row.put("p99", h.percentileMillis(0.99));
+            row.put("p999", h.percentileMillis(0.999));
+            row.put("max", h.percentileMillis(1));
+            rows.add(row);
+            System.out.printf("%-16s %8d %8.1f %7.2f%% %9.2f %9.2f %9.2f %9.2f %9.2f %s%n", e.getKey(), attempts,
+                    row.get("rps"), errorRate * 100, row.get("p50"), row.get("p90"), row.get("p99"),
+                    row.get("p999"), row.get("max"), reasons.isEmpty() ? "" : reasons);
+
+            double limit = setting("load.max-p99." + e.getKey(), maxP99);
+            if (h.count > 0 && h.percentileMillis(0.99) > limit) {
+                violations.add(String.format("%s: p99 %.2f мс больше %.2f мс", e.getKey(),
+                        h.percentileMillis(0.99), limit));
+            }
+            if (errorRate > maxErrorRate) {
+                violations.add(String.format("%s: доля ошибок %.4f больше %.4f", e.getKey(), errorRate, maxErrorRate));
+            }
+        }
+        violations.forEach(v -> System.out.println("Порог превышен - " + v));
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("rate", rate);
+        report.put("duration", duration);
+        report.put("maxP99", maxP99);
+        report.put("maxErrorRate", maxErrorRate);
+        report.put("operations", rows);
+        report.put("violations", violations);
+        File file = new File(System.getProperty("load.report", "target/load-report.json"));
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        mapper.writerWithDefaultPrettyPrinter().writeValue(file, report);
+        System.out.println("Отчёт: " + file.getAbsolutePath());
+        return violations.isEmpty();
+    }
+
+    private HttpRequest login(int user) {
+        return HttpRequest.newBuilder(URI.create(base + "/auth/login"))
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"login\":\"user" + user + "\",\"password\":\"" + PASSWORD + "\"}"))
+                .build();
+    }
+
+    private HttpRequest get(ThreadLocalRandom r, String path) {
+        return authorized(r, path).GET().build();
+    }
+
+    private HttpRequest post(ThreadLocalRandom r, String path, String json) {
+        return authorized(r, path)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private HttpRequest.Builder authorized(ThreadLocalRandom r, String path) {
+        return HttpRequest.newBuilder(URI.create(base + path))
+                .timeout(timeout)
+                .header("Authorization", "Bearer " + tokens.get(r.nextInt(tokens.size())));
+    }
+
+    // Удаляет до 10 картин, созданных прогоном; если их пока нет, пачка пустая
+    private HttpRequest bulkDelete(ThreadLocalRandom r) {
+        StringBuilder json = new StringBuilder("[");
+        Long id;
+        for (int i = 0; i < 10 && (id = created.poll()) != null; ++i) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":").append(id).append('}');
+        }
+        return post(r, "/api/v1/deletepaintings", json.append(']').toString());
+    }
+
+    private long id(String body) {
+        try {
+            JsonNode node = mapper.readTree(body);
+            return node.get("id").asLong();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static double setting(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+}
@@ -0,0 +1,144 @@
+package ru.iu3.backend.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.iu3.backend.models.Artist;
+import ru.iu3.backend.models.Country;
+import ru.iu3.backend.models.Museum;
+import ru.iu3.backend.models.Painting;
+import ru.iu3.backend.models.User;
+import ru.iu3.backend.models.UserSession;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сериализация в JSON каждой модели из ru.iu3.backend.models, без БД и контекста Spring.
+ * ObjectMapper собирается так же, как его собирает Spring Boot (Jackson2ObjectMapperBuilder),
+ * связи заполнены, чтобы @JsonIgnore и вложенные объекты тоже попадали в замер
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelSerializationBenchmark {
+    private ObjectMapper mapper;
+    private Country country;
+    private Artist artist;
+    private Museum museum;
+    private Painting painting;
+    private User user;
+    private UserSession session;
+
+    @Setup
+    public void setup() {
+        // Spring Boot вдобавок выключает запись дат числами
+        mapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        LocalDateTime now = LocalDateTime.now();
+
+        country = new Country(1L);
+        country.name = "Netherlands";
+
+        artist = new Artist(2L);
+        artist.name = "Johannes Vermeer";
+        artist.age = "1632";
+        artist.country = country;
+        country.artistList.add(artist);
+
+        museum = new Museum(3L);
+        museum.name = "Rijksmuseum";
+        museum.location = "Amsterdam";
+
+        painting = new Painting(4L);
+        painting.name = "The Milkmaid";
+        painting.year = 1658;
+        painting.artist = artist;
+        painting.museum = museum;
+        museum.paintings.add(painting);
+
+        user = new User(5L);
+        user.login = "user0";
+        user.email = "user0@example.com";
+        user.password = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+        user.salt = "0123456789abcdef";
+        user.token = "0f8fad5b-d9cb-469f-a165-70867728950e";
+        user.activity = now;
+        for (int i = 0; i < 3; ++i) {
+            Museum m = new Museum(10L + i);
+            m.name = "museum " + i;
+            m.location = "city " + i;
+            user.addMuseum(m);
+        }
+
+        session = new UserSession(6L);
+        session.tokenHash = user.password;
+        session.user = user;
+        session.created = now;
+        session.activity = now;
+    }
+
+    private byte[] json(Object o) {
+        try {
+            return mapper.writeValueAsBytes(o);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Benchmark
+    public byte[] country() {
+        return json(country);
+    }
+
+    @Benchmark
+    public byte[] artist() {
+        return json(artist);
+    }
+
+    @Benchmark
+    public byte[] museum() {
+        return json(museum);
+    }
+
+    @Benchmark
+    public byte[] painting() {
+        return json(painting);
+    }
+
+    @Benchmark
+    public byte[] user() {
+        return json(user);
+    }
+
+    @Benchmark
+    public byte[] userSession() {
+        return json(session);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ModelSerializationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,137 @@
+package ru.iu3.backend.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.iu3.backend.repositories.PaintingFacets;
+import ru.iu3.backend.repositories.PaintingFilter;
+import ru.iu3.backend.repositories.PaintingFilterRepository;
+import ru.iu3.backend.repositories.PaintingView;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Отбор картин по нескольким условиям и подсчёт по группам на таблице в несколько миллионов строк.
+ * Нужен Postgres (grouping sets и = any(?) в H2 нет): адрес отдельной базы задаётся
+ * -Dbenchmark.url=jdbc:postgresql://localhost:5433/benchmark, таблицы в ней пересоздаются.
+ * Строки генерируются одним insert ... select from generate_series, после загрузки - analyze.
+ * Запуск: main() этого класса из IDE или через профиль benchmarks
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PaintingFilterBenchmark {
+    private static final int COUNTRIES = 100;
+    private static final int ARTISTS = 20_000;
+    private static final int MUSEUMS = 500;
+    private static final int PAGE = 50;
+
+    @Param({"3000000"})
+    public int paintings;
+
+    private ConfigurableApplicationContext ctx;
+    private PaintingFilterRepository repository;
+
+    private final PaintingFilter museumAndYears = new PaintingFilter(Set.of(7L), null, null, 1800, 1900);
+    private final PaintingFilter artistsAndYears = new PaintingFilter(null, Set.of(10L, 200L, 3000L, 4000L), null,
+            1700, 1950);
+    private final PaintingFilter country = new PaintingFilter(null, null, Set.of(3L), null, null);
+    private final PaintingFilter countryAndYears = new PaintingFilter(null, null, Set.of(3L, 5L), 1850, 1860);
+    private final PaintingFilter years = new PaintingFilter(null, null, null, 1850, 1851);
+    private final PaintingFilter none = new PaintingFilter(null, null, null, null, null);
+    private PaintingView lastOfFirstPage;
+
+    @Setup
+    public void setup() {
+        ctx = EmbeddedBackend.startPostgres(System.getProperty("benchmark.url",
+                "jdbc:postgresql://localhost:5433/benchmark"));
+        JdbcTemplate jdbc = ctx.getBean(JdbcTemplate.class);
+        // Значения разбросаны умножением на простые числа, чтобы соседние id не попадали в одни группы
+        jdbc.update("insert into countries (id, version, name) select g, 0, 'country ' || g "
+                + "from generate_series(1, ?) g", COUNTRIES);
+        jdbc.update("insert into artists (id, version, name, age, country) "
+                + "select g, 0, 'artist ' || g, '1800', 1 + g * 7 % ? from generate_series(1, ?) g",
+                COUNTRIES, ARTISTS);
+        jdbc.update("insert into museums (id, version, name, location) "
+                + "select g, 0, 'museum ' || g, 'city ' || g % 50 from generate_series(1, ?) g", MUSEUMS);
+        jdbc.update("insert into paintings (id, version, name, year, artistid, museumid) "
+                + "select g, 0, 'painting ' || md5(g::text), 1400 + g * 31 % 620, 1 + g::bigint * 7919 % ?, "
+                + "1 + g::bigint * 104729 % ? "
+                + "from generate_series(1, ?) g", ARTISTS, MUSEUMS, paintings);
+        jdbc.execute("analyze");
+        repository = ctx.getBean(PaintingFilterRepository.class);
+        List<PaintingView> first = repository.findViews(country, null, 0, PAGE);
+        lastOfFirstPage = first.get(first.size() - 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ctx.close();
+    }
+
+    @Benchmark
+    public List<PaintingView> museumAndYears() {
+        return repository.findViews(museumAndYears, null, 0, PAGE + 1);
+    }
+
+    @Benchmark
+    public List<PaintingView> artistsAndYears() {
+        return repository.findViews(artistsAndYears, null, 0, PAGE + 1);
+    }
+
+    @Benchmark
+    public List<PaintingView> country() {
+        return repository.findViews(country, null, 0, PAGE + 1);
+    }
+
+    @Benchmark
+    public List<PaintingView> countrySecondPage() {
+        return repository.findViews(country, lastOfFirstPage.name(), lastOfFirstPage.id(), PAGE + 1);
+    }
+
+    @Benchmark
+    public List<PaintingView> years() {
+        return repository.findViews(years, null, 0, PAGE + 1);
+    }
+
+    @Benchmark
+    public PaintingFacets facetsMuseumAndYears() {
+        return repository.countFacets(museumAndYears);
+    }
+
+    @Benchmark
+    public PaintingFacets facetsCountryAndYears() {
+        return repository.countFacets(countryAndYears);
+    }
+
+    @Benchmark
+    public PaintingFacets facetsWholeTable() {
+        // Без условий: полный проход по таблице, верхняя граница времени подсчёта
+        return repository.countFacets(none);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PaintingFilterBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,71 @@
+package ru.iu3.backend.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import ru.iu3.backend.tools.PasswordHasher;
+import ru.iu3.backend.tools.Utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка пароля при входе: старый Utils.computeHash против PasswordHasher (оба формата хэша).
+ * Запуск: main() этого класса из IDE или через профиль benchmarks
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class PasswordHasherBenchmark {
+    private static final String PASSWORD = "correct horse battery staple";
+
+    private PasswordHasher hasher;
+    private String legacySalt;
+    private String legacyHash;
+    private PasswordHasher.Hash currentHash;
+
+    @Setup
+    public void setup() {
+        hasher = new PasswordHasher();
+        legacySalt = hasher.hash("unused").salt;
+        legacyHash = Utils.computeHash(PASSWORD, legacySalt);
+        currentHash = hasher.hash(PASSWORD);
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public boolean legacyComputeHash() {
+        // Так пароль проверялся в LoginController раньше
+        return legacyHash.toLowerCase().equals(Utils.computeHash(PASSWORD, legacySalt).toLowerCase());
+    }
+
+    @Benchmark
+    public boolean hasherVerifyLegacyFormat() {
+        return hasher.verify(PASSWORD, legacyHash, legacySalt);
+    }
+
+    @Benchmark
+    public boolean hasherVerifyCurrentFormat() {
+        return hasher.verify(PASSWORD, currentHash.password, currentHash.salt);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PasswordHasherBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
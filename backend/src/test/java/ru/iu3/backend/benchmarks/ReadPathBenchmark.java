@@ -0,0 +1,190 @@
+package ru.iu3.backend.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.iu3.backend.controllers.UsersController;
+import ru.iu3.backend.models.Artist;
+import ru.iu3.backend.models.Country;
+import ru.iu3.backend.models.Museum;
+import ru.iu3.backend.models.Painting;
+import ru.iu3.backend.models.User;
+import ru.iu3.backend.repositories.ArtistRepository;
+import ru.iu3.backend.repositories.CountryRepository;
+import ru.iu3.backend.repositories.MuseumRepository;
+import ru.iu3.backend.repositories.PaintingRepository;
+import ru.iu3.backend.repositories.UserRepository;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Чтение списков и карточек: сущности JPA против проекций (record) из репозиториев.
+ * Каждая операция включает сериализацию в JSON, сущности читаются внутри транзакции,
+ * как это происходит в контроллере при open-in-view. Аллокации показывает профилировщик gc.
+ * sqlTiming=false отключает замер SQL-запросов (MeteredDataSource): разница - цена обёрток над JDBC.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadPathBenchmark {
+
+    @Param({"true", "false"})
+    public boolean sqlTiming;
+
+    private ConfigurableApplicationContext ctx;
+    private TransactionTemplate tx;
+    private ObjectMapper mapper;
+    private PaintingRepository paintingRepository;
+    private MuseumRepository museumRepository;
+    private ArtistRepository artistRepository;
+    private CountryRepository countryRepository;
+    private UserRepository userRepository;
+    private UsersController usersController;
+    private long paintingId;
+    private long artistId;
+    private long userId;
+
+    private final Pageable byName = PageRequest.of(10, 20, Sort.by(Sort.Direction.ASC, "name"));
+    private final Pageable byLogin = PageRequest.of(10, 20, Sort.by(Sort.Direction.ASC, "login"));
+
+    @Setup
+    public void setup() {
+        ctx = EmbeddedBackend.start("readpath" + sqlTiming, "--private.metrics.sql-timing=" + sqlTiming);
+        EmbeddedBackend.seed(ctx, 50, 500, 200, 20000, 1000);
+        tx = new TransactionTemplate(ctx.getBean(PlatformTransactionManager.class));
+        tx.setReadOnly(true);
+        mapper = ctx.getBean(ObjectMapper.class);
+        paintingRepository = ctx.getBean(PaintingRepository.class);
+        museumRepository = ctx.getBean(MuseumRepository.class);
+        artistRepository = ctx.getBean(ArtistRepository.class);
+        countryRepository = ctx.getBean(CountryRepository.class);
+        userRepository = ctx.getBean(UserRepository.class);
+        usersController = ctx.getBean(UsersController.class);
+        paintingId = EmbeddedBackend.firstEntities(ctx, Painting.class, "name", 1).get(0).id;
+        artistId = EmbeddedBackend.firstEntities(ctx, Artist.class, "name", 1).get(0).id;
+        userId = EmbeddedBackend.firstEntities(ctx, User.class, "login", 1).get(0).id;
+    }
+
+    @TearDown
+    public void tearDown() {
+        ctx.close();
+    }
+
+    private byte[] json(Object o) {
+        try {
+            return mapper.writeValueAsBytes(o);
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Benchmark
+    public byte[] paintingsEntity() {
+        return tx.execute(s -> json(EmbeddedBackend.entitySlice(ctx, Painting.class, "name", byName)));
+    }
+
+    @Benchmark
+    public byte[] paintingsProjection() {
+        return json(paintingRepository.findAllViews(byName));
+    }
+
+    @Benchmark
+    public byte[] paintingEntity() {
+        return tx.execute(s -> json(paintingRepository.findById(paintingId).get()));
+    }
+
+    @Benchmark
+    public byte[] paintingProjection() {
+        return json(paintingRepository.findViewById(paintingId).get());
+    }
+
+    @Benchmark
+    public byte[] museumsEntity() {
+        return tx.execute(s -> json(EmbeddedBackend.entitySlice(ctx, Museum.class, "name", byName)));
+    }
+
+    @Benchmark
+    public byte[] museumsProjection() {
+        return json(museumRepository.findAllViews(byName));
+    }
+
+    @Benchmark
+    public byte[] artistsEntity() {
+        return tx.execute(s -> json(EmbeddedBackend.entitySlice(ctx, Artist.class, "name", byName)));
+    }
+
+    @Benchmark
+    public byte[] artistsProjection() {
+        return json(artistRepository.findAllViews(byName));
+    }
+
+    @Benchmark
+    public byte[] artistEntity() {
+        return tx.execute(s -> json(artistRepository.findById(artistId).get()));
+    }
+
+    @Benchmark
+    public byte[] artistProjection() {
+        return json(artistRepository.findViewById(artistId).get());
+    }
+
+    @Benchmark
+    public byte[] countriesEntity() {
+        return tx.execute(s -> json(EmbeddedBackend.entitySlice(ctx, Country.class, "name", byName)));
+    }
+
+    @Benchmark
+    public byte[] countriesProjection() {
+        return json(countryRepository.findAllViews(byName));
+    }
+
+    @Benchmark
+    public byte[] usersEntity() {
+        return tx.execute(s -> json(EmbeddedBackend.entitySlice(ctx, User.class, "login", byLogin)));
+    }
+
+    @Benchmark
+    public byte[] usersProjection() {
+        return json(usersController.getUsersSlice(10, 20, EmbeddedBackend.plainRequest()));
+    }
+
+    @Benchmark
+    public byte[] userEntity() {
+        return tx.execute(s -> json(userRepository.findById(userId).get()));
+    }
+
+    @Benchmark
+    public byte[] userProjection() throws Exception {
+        return json(usersController.getUser(userId, EmbeddedBackend.plainRequest()).getBody());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ReadPathBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
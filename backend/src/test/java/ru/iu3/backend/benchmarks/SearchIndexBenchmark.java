@@ -0,0 +1,126 @@
+package ru.iu3.backend.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import ru.iu3.backend.tools.SearchIndex;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Задержка поиска по SearchIndex на миллионе записей (700 тыс. картин, 200 тыс. художников, 100 тыс. музеев).
+ * Названия собираются из небольшого словаря, так что частые слова встречаются в десятках тысяч записей -
+ * это худший случай для пересечения списков вхождений.
+ * Запуск: main() этого класса из IDE или через профиль benchmarks
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class SearchIndexBenchmark {
+    private static final int PAINTINGS = 700_000;
+    private static final int ARTISTS = 200_000;
+    private static final int MUSEUMS = 100_000;
+
+    private static final String[] SUBJECTS = {
+            "портрет", "пейзаж", "натюрморт", "автопортрет", "этюд", "вид", "сцена", "композиция",
+            "девушка", "старик", "дама", "всадник", "рыбак", "крестьянка", "мадонна", "святой"
+    };
+    private static final String[] DETAILS = {
+            "море", "лес", "река", "город", "сад", "поле", "гора", "озеро", "мост", "храм",
+            "утро", "вечер", "ночь", "зима", "осень", "весна", "лето", "буря", "закат", "туман"
+    };
+    private static final String[] FIRST_NAMES = {
+            "иван", "пётр", "анна", "мария", "клод", "винсент", "пабло", "рембрандт", "франсиско", "эдгар"
+    };
+    private static final String[] LAST_NAMES = {
+            "шишкин", "левитан", "репин", "айвазовский", "моне", "гог", "пикассо", "ренуар", "гойя", "дега",
+            "серов", "врубель", "кустодиев", "суриков", "брюллов", "васнецов", "перов", "саврасов"
+    };
+    private static final String[] CITIES = {
+            "москва", "петербург", "париж", "амстердам", "мадрид", "лондон", "нью-йорк", "флоренция", "вена", "казань"
+    };
+
+    private SearchIndex index;
+
+    @Setup
+    public void setup() {
+        index = new SearchIndex();
+        Random random = new Random(42);
+        for (int i = 1; i <= PAINTINGS; ++i) {
+            index.put(SearchIndex.Type.PAINTING, i, pick(random, SUBJECTS) + " " + pick(random, DETAILS)
+                    + " " + i, null);
+        }
+        for (int i = 1; i <= ARTISTS; ++i) {
+            index.put(SearchIndex.Type.ARTIST, i, pick(random, FIRST_NAMES) + " " + pick(random, LAST_NAMES)
+                    + " " + i, null);
+        }
+        for (int i = 1; i <= MUSEUMS; ++i) {
+            index.put(SearchIndex.Type.MUSEUM, i, "музей " + pick(random, LAST_NAMES) + " " + i,
+                    pick(random, CITIES));
+        }
+    }
+
+    private static String pick(Random random, String[] words) {
+        return words[random.nextInt(words.length)];
+    }
+
+    @Benchmark
+    public List<SearchIndex.Hit> rareWord() {
+        return index.search("123456", null, 20);
+    }
+
+    @Benchmark
+    public List<SearchIndex.Hit> frequentWord() {
+        return index.search("море", null, 20);
+    }
+
+    @Benchmark
+    public List<SearchIndex.Hit> twoWords() {
+        return index.search("пейзаж закат", null, 20);
+    }
+
+    @Benchmark
+    public List<SearchIndex.Hit> prefix() {
+        // Как при наборе: "авто" раскрывается в "автопортрет"
+        return index.search("авто", null, 20);
+    }
+
+    @Benchmark
+    public List<SearchIndex.Hit> museumsByCity() {
+        return index.search("амстердам", SearchIndex.Type.MUSEUM, 20);
+    }
+
+    @Benchmark
+    public List<String> suggest() {
+        return index.suggest("портрет мо", 10);
+    }
+
+    @Benchmark
+    public void update() {
+        // Переименование картины: снять старые слова и проиндексировать новые
+        int id = ThreadLocalRandom.current().nextInt(1, PAINTINGS + 1);
+        index.put(SearchIndex.Type.PAINTING, id, "этюд туман " + id, null);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SearchIndexBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
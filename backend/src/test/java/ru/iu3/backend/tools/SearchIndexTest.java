@@ -0,0 +1,200 @@
+package ru.iu3.backend.tools;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.iu3.backend.repositories.ArtistRepository;
+import ru.iu3.backend.repositories.ArtistView;
+import ru.iu3.backend.repositories.MuseumRepository;
+import ru.iu3.backend.repositories.MuseumView;
+import ru.iu3.backend.repositories.PaintingExport;
+import ru.iu3.backend.repositories.PaintingRepository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Поисковый индекс без БД: разбор на слова, поиск по началу слова, удаление из списков вхождений,
+ * порядок результатов, поиск и построение индекса при одновременной записи и при ошибке чтения
+ */
+class SearchIndexTest {
+
+    @Test
+    void tokenizeLowercasesSplitsAndDeduplicates() {
+        assertEquals(List.of("елки", "палки", "1905", "г"),
+                new ArrayList<>(SearchIndex.tokenize("Ёлки-палки, 1905 г.")));
+        assertEquals(List.of("night"), new ArrayList<>(SearchIndex.tokenize("Night NIGHT night")));
+        assertTrue(SearchIndex.tokenize(null).isEmpty());
+        assertTrue(SearchIndex.tokenize(" ,.- ").isEmpty());
+    }
+
+    @Test
+    void wordMatchesAsPrefixButExactMatchRanksHigher() {
+        SearchIndex index = new SearchIndex();
+        index.put(SearchIndex.Type.PAINTING, 1, "Starry", null);
+        index.put(SearchIndex.Type.PAINTING, 2, "Star", null);
+        index.put(SearchIndex.Type.PAINTING, 3, "Stone", null);
+
+        assertEquals(List.of(2L, 1L), ids(index.search("star", null, 10)));
+        // Все три слова - только начала, оценки равны, порядок по id
+        assertEquals(List.of(1L, 2L, 3L), ids(index.search("st", null, 10)));
+        // Одна буква не разворачивается в начало слова
+        assertTrue(index.search("s", null, 10).isEmpty());
+    }
+
+    @Test
+    void allWordsMustMatch() {
+        SearchIndex index = new SearchIndex();
+        index.put(SearchIndex.Type.PAINTING, 1, "Starry Night", null);
+        index.put(SearchIndex.Type.PAINTING, 2, "Night Watch", null);
+
+        assertEquals(List.of(1L), ids(index.search("night starry", null, 10)));
+        // Началом слова ищется каждое слово запроса, а не только последнее
+        assertEquals(List.of(1L), ids(index.search("sta nig", null, 10)));
+        assertEquals(List.of(1L, 2L), ids(index.search("night", null, 10)));
+        assertTrue(index.search("night sunflowers", null, 10).isEmpty());
+    }
+
+    @Test
+    void nameOutranksLocationAndTiesGoToSmallerId() {
+        SearchIndex index = new SearchIndex();
+        index.put(SearchIndex.Type.MUSEUM, 7, "London Gallery", "Paris");
+        index.put(SearchIndex.Type.MUSEUM, 8, "Paris Museum", "London");
+        index.put(SearchIndex.Type.PAINTING, 5, "Sunflowers", null);
+        index.put(SearchIndex.Type.PAINTING, 3, "Sunflowers", null);
+
+        assertEquals(List.of(8L, 7L), ids(index.search("paris", null, 10)));
+        assertEquals(List.of(3L, 5L), ids(index.search("sunflowers", null, 10)));
+        assertEquals(List.of(3L), ids(index.search("sunflowers", null, 1)));
+        assertTrue(index.search("paris", SearchIndex.Type.PAINTING, 10).isEmpty());
+    }
+
+    @Test
+    void removeAndRenameKeepOtherPostings() {
+        SearchIndex index = new SearchIndex();
+        for (long id = 1; id <= 4; ++id) {
+            index.put(SearchIndex.Type.PAINTING, id, "Water Lilies", null);
+        }
+        // Первый элемент списка заменяется последним, остальные должны остаться на месте
+        index.remove(SearchIndex.Type.PAINTING, 1);
+        assertEquals(List.of(2L, 3L, 4L), ids(index.search("lilies", null, 10)));
+        index.remove(SearchIndex.Type.PAINTING, List.of(4L, 42L));
+        assertEquals(List.of(2L, 3L), ids(index.search("lilies", null, 10)));
+
+        index.put(SearchIndex.Type.PAINTING, 2, "Rose", null);
+        assertEquals(List.of(3L), ids(index.search("lilies", null, 10)));
+        assertEquals(List.of(2L), ids(index.search("rose", null, 10)));
+    }
+
+    @Test
+    void suggestCompletesLastWordByFrequency() {
+        SearchIndex index = new SearchIndex();
+        index.put(SearchIndex.Type.PAINTING, 1, "Starry Night", null);
+        index.put(SearchIndex.Type.PAINTING, 2, "Night Star", null);
+        index.put(SearchIndex.Type.PAINTING, 3, "Star", null);
+
+        assertEquals(List.of("night star", "night starry"), index.suggest("Night sta", 10));
+        assertEquals(List.of("night star"), index.suggest("Night sta", 1));
+    }
+
+    @Test
+    void searchFinishesWhilePostingsGrow() {
+        SearchIndex index = new SearchIndex();
+        index.put(SearchIndex.Type.PAINTING, 0, "Star", null);
+        Thread writer = new Thread(() -> {
+            for (long id = 1; id <= 20_000; ++id) {
+                index.put(SearchIndex.Type.PAINTING, id, "Star " + id, null);
+            }
+        });
+        writer.start();
+        // Таблица оценок рассчитана на снятые списки: растущий список не должен её переполнить
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            while (writer.isAlive()) {
+                assertFalse(index.search("star", null, 10).isEmpty());
+            }
+            writer.join();
+        });
+        assertEquals(10, index.search("star", null, 10).size());
+    }
+
+    @Test
+    void buildDoesNotOverwriteWritesMadeWhileLoading() throws InterruptedException {
+        SearchIndex index = indexWithRepositories();
+        Mockito.when(index.paintingRepository.streamExport()).thenAnswer(invocation -> {
+            // Контроллеры успели изменить и удалить записи, а снимок таблицы старше
+            index.put(SearchIndex.Type.PAINTING, 1, "Renamed", null);
+            index.remove(SearchIndex.Type.PAINTING, 2);
+            return Stream.of(new PaintingExport(1, "Original", 1900, null, null),
+                    new PaintingExport(2, "Deleted", 1900, null, null),
+                    new PaintingExport(3, "Untouched", 1900, null, null));
+        });
+
+        index.build();
+        awaitBuild(index);
+
+        assertTrue(index.isReady());
+        assertEquals(List.of(1L), ids(index.search("renamed", null, 10)));
+        assertTrue(index.search("original", null, 10).isEmpty());
+        assertTrue(index.search("deleted", null, 10).isEmpty());
+        assertEquals(List.of(3L), ids(index.search("untouched", null, 10)));
+        assertEquals(List.of(10L), ids(index.search("gallery", null, 10)));
+    }
+
+    @Test
+    void failedBuildStaysNotReadyUntilRetrySucceeds() throws InterruptedException {
+        SearchIndex index = indexWithRepositories();
+        Mockito.when(index.paintingRepository.streamExport())
+                .thenThrow(new IllegalStateException("connection reset"))
+                .thenReturn(Stream.of(new PaintingExport(1, "Original", 1900, null, null)));
+
+        index.build();
+        awaitBuild(index);
+        assertFalse(index.isReady());
+        assertEquals(Boolean.TRUE, index.getStatistics().get("failed"));
+
+        index.retryBuild();
+        awaitBuild(index);
+        assertTrue(index.isReady());
+        assertEquals(List.of(1L), ids(index.search("original", null, 10)));
+    }
+
+    private static SearchIndex indexWithRepositories() {
+        SearchIndex index = new SearchIndex();
+        index.paintingRepository = Mockito.mock(PaintingRepository.class);
+        index.artistRepository = Mockito.mock(ArtistRepository.class);
+        index.museumRepository = Mockito.mock(MuseumRepository.class);
+        index.transactionManager = Mockito.mock(PlatformTransactionManager.class);
+        Mockito.when(index.artistRepository.streamExport())
+                .thenAnswer(invocation -> Stream.of(new ArtistView(20, "Monet", "86", null)));
+        Mockito.when(index.museumRepository.streamExport())
+                .thenAnswer(invocation -> Stream.of(new MuseumView(10, "Gallery", "Paris")));
+        return index;
+    }
+
+    // Построение идёт в своих потоках, build() лишь запускает его
+    private static void awaitBuild(SearchIndex index) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            if (Boolean.FALSE.equals(index.getStatistics().get("building"))) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("index build did not finish");
+    }
+
+    private static List<Long> ids(List<SearchIndex.Hit> hits) {
+        List<Long> ids = new ArrayList<>();
+        for (SearchIndex.Hit h : hits) {
+            ids.add(h.id());
+        }
+        return ids;
+    }
+}